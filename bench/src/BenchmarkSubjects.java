@@ -0,0 +1,103 @@
+/**
+ * BenchmarkSubjects.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import benchmarks.Subjects;
+
+/**
+ * Implements the subjects of the benchmarks with the classes of TextBuddy. See
+ * benchmarks.Subjects for why the benchmarks cannot use these classes directly.
+ */
+public class BenchmarkSubjects {
+
+    public static class LinesListSubject implements Subjects.LinesList {
+        private final LinesList linesList_ = new LinesList();
+
+        @Override
+        public void clear() {
+            this.linesList_.clear();
+        }
+
+        @Override
+        public int add(String text) {
+            return this.linesList_.add(text);
+        }
+
+        @Override
+        public String remove(int index) {
+            return this.linesList_.remove(index);
+        }
+
+        @Override
+        public int count() {
+            return this.linesList_.count();
+        }
+
+        @Override
+        public Object search(String query) {
+            return this.linesList_.search(query);
+        }
+
+        @Override
+        public Object searchUncached(String query) {
+            // Starting a new generation only marks the cached results as stale
+            this.linesList_.getQueryCache().invalidateAll();
+            return this.linesList_.search(query);
+        }
+
+        @Override
+        public void sort() {
+            this.linesList_.sort();
+        }
+    }
+
+    public static class LineSubject implements Subjects.Line {
+        private final Tokenizer tokenizer_ = new Tokenizer();
+
+        @Override
+        public int construct(String content, int id) {
+            Line line = new Line(content, id);
+            Tokenizer tokenizer = this.tokenizer_.reset(line.getContent());
+            int words = 0;
+            while (tokenizer.next()) {
+                words++;
+            }
+            return words;
+        }
+    }
+
+    public static class TextFileSubject implements Subjects.TextFile {
+        private TextFile textFile_;
+
+        @Override
+        public void open(String path, boolean isReadOnly) throws Exception {
+            this.textFile_ = new TextFile(path, false, isReadOnly);
+        }
+
+        @Override
+        public void setFsyncPolicy(String policy) {
+            this.textFile_.setFsyncPolicy(FsyncPolicy.parse(policy));
+        }
+
+        @Override
+        public int addLine(String line) {
+            return this.textFile_.addLine(line);
+        }
+
+        @Override
+        public String removeLine(int index) {
+            return this.textFile_.removeLine(index);
+        }
+
+        @Override
+        public void save() throws Exception {
+            this.textFile_.save();
+        }
+
+        @Override
+        public void close() throws Exception {
+            this.textFile_.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * BenchmarkRunner.java
+ * Copyright (c) 2016 Mai Anh Vu
+ *
+ * Runs the JMH benchmarks of TextBuddy. Arguments are the usual JMH command line
+ * options, for example:
+ *      java benchmarks.BenchmarkRunner LinesListBenchmark -p size=1000000 -p corpus=log
+ *      java -Dtextbuddy.corpus=/var/log/syslog benchmarks.BenchmarkRunner -p corpus=file
+ */
+package benchmarks;
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Corpus.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the lines the benchmarks operate on. Every corpus is deterministic, so
+ * results are comparable across runs:
+ *      synthetic   random lowercase words drawn uniformly, so every word is rare
+ *      text        English-like sentences with Zipf-distributed word frequencies
+ *      log         log lines sharing long timestamp and host prefixes
+ *      file        the lines of the file named by -Dtextbuddy.corpus, repeated as needed
+ */
+public class Corpus {
+
+    /**
+     * Constants
+     */
+    private static final long SEED = 0x5EEDL;
+    private static final String PROPERTY_CORPUS_FILE = "textbuddy.corpus";
+    private static final Error ERROR_CORPUS_UNKNOWN = new Error("Unknown corpus");
+    private static final Error ERROR_CORPUS_FILE_MISSING =
+            new Error("Set -D" + PROPERTY_CORPUS_FILE + " to the path of a non-empty text file");
+
+    private static final String[] WORDS_COMMON = (
+            "the of and to a in is you that it he was for on are as with his they i at be this have "
+            + "from or one had by word but not what all were we when your can said there use an each "
+            + "which she do how their if will up other about out many then them these so some her would "
+            + "make like him into time has look two more write go see number no way could people my than "
+            + "first water been call who oil its now find long down day did get come made may part over "
+            + "new sound take only little work know place year live me back give most very after thing "
+            + "our just name good sentence man think say great where help through much before line right "
+            + "too mean old any same tell boy follow came want show also around form three small set put "
+            + "end does another well large must big even such because turn here why ask went men read need "
+            + "land different home us move try kind hand picture again change off play spell air away animal "
+            + "house point page letter mother answer found study still learn should america world connection "
+            + "reset timeout error warning request response server client socket thread retry failed").split(" ");
+    private static final String[] LEVELS_LOG = new String[]{"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+
+    /**
+     * Generates the specified number of lines of a corpus.
+     * @param name the name of the corpus
+     * @param count the number of lines
+     * @return the lines of the corpus
+     * @throws IOException exception thrown when the corpus file cannot be read
+     */
+    public static List<String> lines(String name, int count) throws IOException {
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>(count);
+        switch (name) {
+            case "synthetic":
+                for (int i = 0; i < count; i++) {
+                    lines.add(syntheticLine(random));
+                }
+                return lines;
+            case "text":
+                double[] cumulative = zipfCumulative(WORDS_COMMON.length);
+                for (int i = 0; i < count; i++) {
+                    lines.add(textLine(random, cumulative));
+                }
+                return lines;
+            case "log":
+                for (int i = 0; i < count; i++) {
+                    lines.add(logLine(random, i));
+                }
+                return lines;
+            case "file":
+                return fileLines(count);
+            default:
+                throw ERROR_CORPUS_UNKNOWN;
+        }
+    }
+
+    private static String syntheticLine(Random random) {
+        StringBuilder line = new StringBuilder();
+        for (int w = 0; w < 8; w++) {
+            if (w > 0) {
+                line.append(' ');
+            }
+            int length = 3 + random.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return line.toString();
+    }
+
+    private static String textLine(Random random, double[] cumulative) {
+        StringBuilder line = new StringBuilder();
+        int length = 5 + random.nextInt(11);
+        for (int w = 0; w < length; w++) {
+            String word = WORDS_COMMON[sample(random, cumulative)];
+            if (w == 0) {
+                line.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                line.append(' ').append(word);
+            }
+        }
+        return line.append('.').toString();
+    }
+
+    private static String logLine(Random random, int index) {
+        long seconds = 1456099200L + index / 50;
+        return String.format("2016-02-22 %02d:%02d:%02d.%03d host-%02d %-5s [worker-%d] request %d %s in %d ms",
+                (seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60, random.nextInt(1000),
+                random.nextInt(16), LEVELS_LOG[random.nextInt(LEVELS_LOG.length)], random.nextInt(8),
+                random.nextInt(1000000), random.nextInt(10) == 0 ? "failed" : "completed", random.nextInt(500));
+    }
+
+    private static List<String> fileLines(int count) throws IOException {
+        String path = System.getProperty(PROPERTY_CORPUS_FILE);
+        if (path == null) {
+            throw ERROR_CORPUS_FILE_MISSING;
+        }
+
+        List<String> source = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null && source.size() < count) {
+                source.add(line);
+            }
+        }
+        if (source.isEmpty()) {
+            throw ERROR_CORPUS_FILE_MISSING;
+        }
+
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(source.get(i % source.size()));
+        }
+        return lines;
+    }
+
+    private static double[] zipfCumulative(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(Random random, double[] cumulative) {
+        double target = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * LineBenchmark.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of a Line and the tokenizing of its content into
+ * words, done once for every line loaded or added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark {
+
+    private static final int COUNT_LINES = 4096;
+
+    @Param({"synthetic", "text", "log"})
+    public String corpus;
+
+    private Subjects.Line line_;
+    private List<String> lines_;
+    private int next_;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.line_ = Subjects.create(Subjects.Line.class);
+        this.lines_ = Corpus.lines(this.corpus, COUNT_LINES);
+        this.next_ = 0;
+    }
+
+    @Benchmark
+    public int construct() {
+        this.next_ = (this.next_ + 1) % COUNT_LINES;
+        return this.line_.construct(this.lines_.get(this.next_), this.next_);
+    }
+}
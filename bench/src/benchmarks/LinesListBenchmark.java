@@ -0,0 +1,104 @@
+/**
+ * LinesListBenchmark.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the core operations of a LinesList holding a given number of lines.
+ * Removals put the removed line back at the end so that the list keeps its size
+ * across invocations; append() gives the cost of that second half. Searches bypass
+ * the query cache, except in searchCached(), which repeats the same query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LinesListBenchmark {
+
+    private static final String STRING_WORD_MISSING = "zzzzzzzzzz";
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"synthetic", "text", "log"})
+    public String corpus;
+
+    private Subjects.LinesList linesList_;
+    private List<String> lines_;
+    private String wordPresent_;
+    private int next_;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.linesList_ = Subjects.create(Subjects.LinesList.class);
+        this.lines_ = Corpus.lines(this.corpus, this.size);
+        this.wordPresent_ = this.lines_.get(this.size / 2).split(" ")[1];
+        this.next_ = 0;
+    }
+
+    @Setup(Level.Iteration)
+    public void fillList() {
+        this.linesList_.clear();
+        for (String line : this.lines_) {
+            this.linesList_.add(line);
+        }
+    }
+
+    @Benchmark
+    public int append() {
+        this.next_ = (this.next_ + 1) % this.size;
+        return this.linesList_.add(this.lines_.get(this.next_));
+    }
+
+    @Benchmark
+    public int removeHead() {
+        return this.removeAndAppend(0);
+    }
+
+    @Benchmark
+    public int removeMiddle() {
+        return this.removeAndAppend(this.linesList_.count() / 2);
+    }
+
+    @Benchmark
+    public int removeTail() {
+        return this.removeAndAppend(this.linesList_.count() - 1);
+    }
+
+    @Benchmark
+    public Object searchHit() {
+        return this.linesList_.searchUncached(this.wordPresent_);
+    }
+
+    @Benchmark
+    public Object searchMiss() {
+        return this.linesList_.searchUncached(STRING_WORD_MISSING);
+    }
+
+    @Benchmark
+    public Object searchCached() {
+        return this.linesList_.search(this.wordPresent_);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public Subjects.LinesList sort() {
+        this.linesList_.sort();
+        return this.linesList_;
+    }
+
+    private int removeAndAppend(int index) {
+        return this.linesList_.add(this.linesList_.remove(index));
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Subjects.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+package benchmarks;
+
+/**
+ * The operations of TextBuddy measured by the benchmarks. JMH only generates code for
+ * benchmarks inside a package, while TextBuddy lives in the default package, which
+ * cannot be imported from a package. The benchmarks therefore drive TextBuddy through
+ * these interfaces, implemented by the BenchmarkSubjects class in the default package:
+ *      Subjects.LinesList linesList = Subjects.create(Subjects.LinesList.class);
+ * Every benchmark only ever sees one implementation, so the interface calls are
+ * inlined by the JIT and do not show up in the measurements.
+ */
+public final class Subjects {
+
+    /**
+     * Constants
+     */
+    private static final String STRING_CLASS_IMPLEMENTATIONS = "BenchmarkSubjects";
+    private static final String STRING_SUFFIX_IMPLEMENTATION = "Subject";
+
+    public interface LinesList {
+        void clear();
+        int add(String text);
+        String remove(int index);
+        int count();
+        Object search(String query);
+        Object searchUncached(String query);
+        void sort();
+    }
+
+    public interface Line {
+        int construct(String content, int id);
+    }
+
+    public interface TextFile {
+        void open(String path, boolean isReadOnly) throws Exception;
+        void setFsyncPolicy(String policy);
+        int addLine(String line);
+        String removeLine(int index);
+        void save() throws Exception;
+        void close() throws Exception;
+    }
+
+    private Subjects() {
+    }
+
+    /**
+     * Instantiates the implementation of a subject, which is the nested class of
+     * BenchmarkSubjects named after the interface, e.g. LinesListSubject.
+     * @param subject the interface of the subject
+     * @return a new instance implementing the subject
+     */
+    public static <T> T create(Class<T> subject) {
+        try {
+            String name = STRING_CLASS_IMPLEMENTATIONS + "$" + subject.getSimpleName() + STRING_SUFFIX_IMPLEMENTATION;
+            return subject.cast(Class.forName(name).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("TextBuddy is not on the class path", e);
+        }
+    }
+}
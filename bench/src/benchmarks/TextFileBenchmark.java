@@ -0,0 +1,98 @@
+/**
+ * TextFileBenchmark.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a file of a given number of lines into a TextFile, both fully and
+ * in read-only mode, and saving it back after an append or a structural edit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TextFileBenchmark {
+
+    private static final String STRING_LINE_APPENDED = "Lorem ipsum dolor sit amet";
+
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"synthetic", "text", "log"})
+    public String corpus;
+
+    @Param({"never", "save"})
+    public String fsync;
+
+    private File file_;
+    private Subjects.TextFile textFile_;
+
+    @Setup(Level.Trial)
+    public void writeCorpus() throws Exception {
+        this.file_ = File.createTempFile("textbuddy-benchmark", ".txt");
+        this.file_.deleteOnExit();
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_))) {
+            for (String line : Corpus.lines(this.corpus, this.size)) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openFile() throws Exception {
+        this.textFile_ = Subjects.create(Subjects.TextFile.class);
+        this.textFile_.open(this.file_.getPath(), false);
+        this.textFile_.setFsyncPolicy(this.fsync);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeFile() throws Exception {
+        this.textFile_.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() {
+        this.file_.delete();
+    }
+
+    @Benchmark
+    public Subjects.TextFile load() throws Exception {
+        Subjects.TextFile textFile = Subjects.create(Subjects.TextFile.class);
+        textFile.open(this.file_.getPath(), false);
+        return textFile;
+    }
+
+    @Benchmark
+    public Subjects.TextFile loadReadOnly() throws Exception {
+        Subjects.TextFile textFile = Subjects.create(Subjects.TextFile.class);
+        textFile.open(this.file_.getPath(), true);
+        return textFile;
+    }
+
+    @Benchmark
+    public Subjects.TextFile saveAfterAppend() throws Exception {
+        this.textFile_.addLine(STRING_LINE_APPENDED);
+        this.textFile_.save();
+        return this.textFile_;
+    }
+
+    @Benchmark
+    public Subjects.TextFile saveAfterRemove() throws Exception {
+        // Removing a saved line forces the whole file to be rewritten
+        this.textFile_.addLine(this.textFile_.removeLine(0));
+        this.textFile_.save();
+        return this.textFile_;
+    }
+}
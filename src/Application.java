@@ -5,10 +5,7 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * An abstraction of the TextBuddy application that pieces together all the other
@@ -24,8 +21,11 @@ public class Application {
      */
     private static final Error ERROR_LINE_NUMBER_INVALID = new Error("Invalid line number");
     private static final Error ERROR_MISSING_SEARCH_QUERY = new Error("Search query missing");
+    private static final Error ERROR_LINE_RANGE_INVALID = new Error("Invalid line range");
+    private static final Error ERROR_PAGE_NUMBER_INVALID = new Error("Invalid page number");
+    private static final Error ERROR_RESULT_COUNT_INVALID = new Error("Invalid number of results");
 
-    private static final Comparator<Integer> COMPARATOR_LINE_NUMBERS = new LineNumberComparator();
+    private static final int COUNT_LINES_PAGE = 20;
 
     private static final String STRING_PROMPT_COMMAND = "command: ";
 
@@ -33,18 +33,24 @@ public class Application {
     private static final String STRING_ERROR_FILE_SAVE = "Cannot save to file";
     private static final String STRING_ERROR_COMMAND_UNRECOGNISED = "Unrecognised command";
 
+    private static final String STRING_DELIMITER_LINE_RANGE = "-";
+    private static final String STRING_PREFIX_PAGE = "page";
     private static final String STRING_DELIMITER_SEARCH_RESULTS = ", ";
-    private static final String STRING_DELIMITER_SEARCH_QUERIES = "\\s+";
     private static final String STRING_CONNECTIVE_LAST_SEARCH_RESULT = "and ";
+    private static final String STRING_OPTION_SEARCH_TOP = "--top";
+    private static final String STRING_DELIMITER_SEARCH_OPTION = "\\s+";
+    private static final int COUNT_PARTS_SEARCH_TOP = 3;
 
     private static final String STRING_FORMAT_MESSAGE_WELCOME = "Welcome to TextBuddy. %1$s is ready for use";
     private static final String STRING_FORMAT_INFO_SEARCH_NOT_FOUND = "No occurrences of %1$s found in %2$s";
     private static final String STRING_FORMAT_SUCCESS_SEARCH_FOUND = "Found %1$s in %2$s on lines %3$s";
-    private static final String STRING_FORMAT_SUCCESS_SORT = "All lines in %1$s are sorted in alphabetical order";
+    private static final String STRING_FORMAT_SUCCESS_SEARCH_RANKED = "Best matches of %1$s in %2$s on lines %3$s";
+    private static final String STRING_FORMAT_SUCCESS_SORT = "All lines in %1$s are sorted in %2$s";
     private static final String STRING_FORMAT_SUCCESS_CLEAR = "Cleared all lines from %1$s";
     private static final String STRING_FORMAT_SUCCESS_DELETE = "Deleted from %1$s: %2$s";
     private static final String STRING_FORMAT_SUCCESS_ADD = "Added new line to %1$s: %2$s";
     private static final String STRING_FORMAT_SUCCESS_ADD_EMPTY = "Added an empty line to %1$s";
+    private static final String STRING_FORMAT_INFO_PAGE = "Page %1$d of %2$d";
 
     /**
      * Properties
@@ -58,17 +64,38 @@ public class Application {
      * @param filePath path to the file to edit
      */
     public Application(String filePath) {
+        this(filePath, false, FsyncPolicy.ON_SAVE, false);
+    }
+
+    /**
+     * Constructs a TextBuddy application editing the file located at the
+     * path specified, with the read-only flag, the policy for forcing saves to disk,
+     * and whether substring searches are indexed.
+     * @param filePath path to the file to edit
+     * @param isReadOnly whether the file should be memory-mapped and not modified
+     * @param fsyncPolicy when saving should force the file to disk
+     * @param isSubstringIndexed whether a substring index is built after loading
+     */
+    public Application(String filePath, boolean isReadOnly, FsyncPolicy fsyncPolicy, boolean isSubstringIndexed) {
         this.display_ = new Display();
-        this.initializeTextFile(filePath);
+        this.initializeTextFile(filePath, isReadOnly, fsyncPolicy, isSubstringIndexed);
     }
 
     /**
      * Attempts to create a text file with the path specified.
      * @param filePath path to the file to initialize
+     * @param isReadOnly whether the file should be opened in read-only mode
+     * @param fsyncPolicy when saving should force the file to disk
+     * @param isSubstringIndexed whether a substring index is built after loading
      */
-    private void initializeTextFile(String filePath) {
+    private void initializeTextFile(String filePath, boolean isReadOnly, FsyncPolicy fsyncPolicy,
+                                    boolean isSubstringIndexed) {
         try {
-            this.textFile_ = new TextFile(filePath);
+            this.textFile_ = new TextFile(filePath, false, isReadOnly);
+            this.textFile_.setFsyncPolicy(fsyncPolicy);
+            if (isSubstringIndexed) {
+                this.textFile_.enableSubstringIndex();
+            }
         } catch (IOException e) {
             this.display_.error(STRING_ERROR_FILE_READ);
         } catch (Error e) {
@@ -90,7 +117,7 @@ public class Application {
 
     /**
      * Cleans up the application before closing. Normally entails saving the
-     * file one last time.
+     * file one last time, then releasing its journal.
      */
     private void cleanUp() {
         try {
@@ -98,6 +125,12 @@ public class Application {
         } catch (IOException e) {
             this.display_.error(STRING_ERROR_FILE_SAVE);
         }
+
+        try {
+            this.textFile_.close();
+        } catch (IOException e) {
+            this.display_.error(STRING_ERROR_FILE_SAVE);
+        }
     }
 
     /**
@@ -144,7 +177,7 @@ public class Application {
                 executeAdd(command);
                 break;
             case DISPLAY:
-                executeDisplay();
+                executeDisplay(command);
                 break;
             case DELETE:
                 executeDelete(command);
@@ -153,7 +186,7 @@ public class Application {
                 executeClear();
                 break;
             case SORT:
-                executeSort();
+                executeSort(command);
                 break;
             case SEARCH:
                 executeSearch(command);
@@ -183,11 +216,96 @@ public class Application {
     }
 
     /**
-     * Shows a list of lines to the user using the display helper.
+     * Shows a list of lines to the user using the display helper. Without a parameter
+     * all lines are shown, otherwise only a range of lines or a single page:
+     *      display 10-20       lines 10 to 20
+     *      display page 3      lines 41 to 60
+     * @param command a command object containing the optional range or page
+     * @throws Error error thrown when the range or page is invalid
+     */
+    private void executeDisplay(Command command) throws Error {
+        String parameter = command.getParameter();
+        if (parameter == null || parameter.trim().isEmpty()) {
+            this.displayLines(0, this.textFile_.getLinesCount());
+            return;
+        }
+
+        parameter = parameter.trim();
+        if (parameter.toLowerCase().startsWith(STRING_PREFIX_PAGE)) {
+            this.executeDisplayPage(parameter.substring(STRING_PREFIX_PAGE.length()).trim());
+            return;
+        }
+
+        int delimiterIndex = parameter.indexOf(STRING_DELIMITER_LINE_RANGE);
+        if (delimiterIndex < 0) {
+            throw ERROR_LINE_RANGE_INVALID;
+        }
+
+        int from;
+        int to;
+        try {
+            from = Integer.parseInt(parameter.substring(0, delimiterIndex).trim());
+            to = Integer.parseInt(parameter.substring(delimiterIndex + 1).trim());
+        } catch (NumberFormatException e) {
+            throw ERROR_LINE_RANGE_INVALID;
+        }
+
+        // Line numbers count from 1, and ranges running past the end are cut short
+        int count = this.textFile_.getLinesCount();
+        if (from < 1 || from > to || from > count) {
+            throw ERROR_LINE_RANGE_INVALID;
+        }
+        this.displayLines(from - 1, Math.min(to, count));
+    }
+
+    /**
+     * Shows a single page of lines to the user using the display helper.
+     * @param parameter the page number, counting from 1
+     * @throws Error error thrown when the page does not exist
      */
-    private void executeDisplay() {
+    private void executeDisplayPage(String parameter) throws Error {
+        int page;
+        try {
+            page = Integer.parseInt(parameter);
+        } catch (NumberFormatException e) {
+            throw ERROR_PAGE_NUMBER_INVALID;
+        }
+
+        int count = this.textFile_.getLinesCount();
+        int pageCount = Math.max(1, (count + COUNT_LINES_PAGE - 1) / COUNT_LINES_PAGE);
+        if (page < 1 || page > pageCount) {
+            throw ERROR_PAGE_NUMBER_INVALID;
+        }
+
+        int from = (page - 1) * COUNT_LINES_PAGE;
+        this.displayLines(from, Math.min(from + COUNT_LINES_PAGE, count));
+        this.display_.info(String.format(STRING_FORMAT_INFO_PAGE, page, pageCount));
+    }
+
+    /**
+     * Shows the lines between the two indices as a numbered list. Unless the file has
+     * been modified since it was saved, the lines are copied from the file on disk
+     * instead of being encoded from memory.
+     * @param from the index of the first line, inclusive
+     * @param to the index after the last line, exclusive
+     */
+    private void displayLines(int from, int to) {
+        try {
+            FileLines pristineLines = this.textFile_.getPristineLines();
+            if (pristineLines != null) {
+                this.display_.orderedList(pristineLines, from, to, from + 1);
+                return;
+            }
+        } catch (IOException e) {
+            this.display_.error(STRING_ERROR_FILE_READ);
+            return;
+        }
+
+        // All the lines are shown through a view rather than copied into a new list
+        boolean isAllLines = from == 0 && to == this.textFile_.getLinesCount();
         this.display_.orderedList(
-                this.textFile_.getAllLines()
+                isAllLines ? this.textFile_.getAllLines() : this.textFile_.getLines(from, to),
+                from + 1
         );
     }
 
@@ -234,17 +352,22 @@ public class Application {
 
     /**
      * Executes the sort instruction, then logs the success afterwards.
+     * @param command a command object containing the optional sort options
+     * @throws Error error thrown when the sort options are invalid
      */
-    private void executeSort() {
-        this.textFile_.sortLines();
+    private void executeSort(Command command) throws Error {
+        SortOrder order = command.getSortOrder();
+        this.textFile_.sortLines(order);
         this.display_.success(
-                String.format(STRING_FORMAT_SUCCESS_SORT, this.textFile_.getFilePath())
+                String.format(STRING_FORMAT_SUCCESS_SORT, this.textFile_.getFilePath(), order.describe())
         );
     }
 
     /**
      * Executes the search instruciton, then print the search result to the user using
-     * the display helper. Also logs any error during execution.
+     * the display helper. Also logs any error during execution. With the --top option,
+     * lines are ranked and only the best ones are shown, best first:
+     *      search --top 10 connection timeout
      * @param command a command object containing the parameter, which serves
      *                as the query for searching
      * @throws Error error thrown when query is missing from the command
@@ -254,39 +377,58 @@ public class Application {
             throw ERROR_MISSING_SEARCH_QUERY;
         }
 
-        // Split the parameter into multiple search queries
-        String[] query = command.getParameter()
-                .trim().split(STRING_DELIMITER_SEARCH_QUERIES);
+        // The whole parameter is the query, which may combine several words
+        // with boolean operators
+        String query = command.getParameter().trim();
+
+        int topCount = 0;
+        String[] parts = query.split(STRING_DELIMITER_SEARCH_OPTION, COUNT_PARTS_SEARCH_TOP);
+        if (parts[0].equals(STRING_OPTION_SEARCH_TOP)) {
+            try {
+                topCount = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            } catch (NumberFormatException e) {
+                throw ERROR_RESULT_COUNT_INVALID;
+            }
+            if (topCount < 1) {
+                throw ERROR_RESULT_COUNT_INVALID;
+            }
+            query = parts.length > 2 ? parts[2] : "";
+        }
 
-        if (query.length == 0) {
+        if (query.isEmpty()) {
             throw ERROR_MISSING_SEARCH_QUERY;
         }
 
-        // Invoke the search method on the text file, which then return a set
-        // of the lines in which the query was successful
-        Set<Integer> searchResults = this.textFile_.searchFor(query[0]);
+        // Invoke the search method on the text file, which then return the
+        // lines in which the query was successful
+        int[] lineNumbers;
+        String successFormat;
+        if (topCount > 0) {
+            lineNumbers = this.textFile_.searchTop(query, topCount);
+            successFormat = STRING_FORMAT_SUCCESS_SEARCH_RANKED;
+        } else {
+            SearchResults searchResults = this.textFile_.searchFor(query);
+            lineNumbers = searchResults == null ? null : searchResults.toArray();
+            successFormat = STRING_FORMAT_SUCCESS_SEARCH_FOUND;
+        }
 
         // In case where there was no results found
-        if (searchResults == null) {
+        if (lineNumbers == null) {
             this.display_.info(
                     String.format(STRING_FORMAT_INFO_SEARCH_NOT_FOUND,
-                            query[0],
+                            query,
                             this.textFile_.getFilePath())
             );
         }
         // When results are found, logs the appropriate information
         else {
 
-            // The line numbers contained in the search results are from
-            // a set and therefore is not guaranteed to be in any order.
-            // We must then sort these numbers first
-            List<Integer> lineNumbers = new ArrayList<>(searchResults);
-            lineNumbers.sort(COMPARATOR_LINE_NUMBERS);
-
+            // The line numbers are already sorted in line order, or from the best line
+            // down when ranked
             // Build a list of the line numbers
             StringBuilder lineNumbersString = new StringBuilder();
 
-            for (int i = 0; i < lineNumbers.size(); i++) {
+            for (int i = 0; i < lineNumbers.length; i++) {
 
                 // This is only for human-readability of the search result,
                 // the actual application does not depend on this
@@ -296,41 +438,32 @@ public class Application {
 
                     // Insert an 'and' word if is the last line number in the list
                     // and that it is not the only entry
-                    if (i == lineNumbers.size() - 1) {
+                    if (i == lineNumbers.length - 1) {
                         lineNumbersString.append(STRING_CONNECTIVE_LAST_SEARCH_RESULT);
                     }
                 }
 
                 // Append with the actual line number readable by human, which is
                 // the line index plus 1.
-                lineNumbersString.append(lineNumbers.get(i) + 1);
+                lineNumbersString.append(lineNumbers[i] + 1);
             }
 
             // Log success message with the line numbers via the display helper
             this.display_.success(
-                    String.format(STRING_FORMAT_SUCCESS_SEARCH_FOUND,
-                            query[0],
+                    String.format(successFormat,
+                            query,
                             this.textFile_.getFilePath(),
                             lineNumbersString)
             );
 
             // Map the result lines to their respective line numbers
-            List<Line> resultLines = lineNumbers.stream().map(
-                    lineNumber -> this.textFile_.getLineAt(lineNumber)
-            ).collect(Collectors.toList());
+            List<String> resultLines = new ArrayList<>(lineNumbers.length);
+            for (int lineNumber : lineNumbers) {
+                resultLines.add(this.textFile_.getLineAt(lineNumber).getContent());
+            }
 
             // Display these lines out to the screen eventually
-            this.display_.lines(resultLines);
-        }
-    }
-
-    /**
-     * Comparator class used to sort lines according to their line number (ascending)
-     */
-    private static class LineNumberComparator implements Comparator<Integer> {
-        @Override
-        public int compare(Integer o1, Integer o2) {
-            return o1 - o2;
+            this.display_.lines(lineNumbers, resultLines);
         }
     }
 }
@@ -0,0 +1,288 @@
+/**
+ * Bm25Ranker.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the lines that best match a set of words, scored with Okapi BM25 from the
+ * statistics of an InvertedIndex. Every word found in a line adds
+ *      idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength))
+ * to the score of the line, where tf is the number of times the word occurs in the
+ * line, so rare words, repeated words and short lines score higher:
+ *      Bm25Ranker ranker = new Bm25Ranker(index);
+ *      int[] ids = ranker.topIds(query.cursor(index, slots), query.scoredWords(), 10, isLiving);
+ *
+ * Only the best lines are kept, and the lines that cannot make it among them are
+ * skipped with MaxScore (Turtle and Flood). The highest score each word can add is
+ * known from its idf and its highest frequency in a line. Words are sorted by that
+ * bound, and once the lines kept score more than the bounds of the weakest words
+ * added together, a line containing only these words cannot enter. Candidates are
+ * then taken from the posting lists of the other words only, and the weakest words
+ * are looked up with advance() just for these candidates, unless the line already
+ * falls short without them.
+ */
+public class Bm25Ranker {
+
+    /**
+     * Constants
+     */
+    private static final double WEIGHT_FREQUENCY = 1.2;
+    private static final double WEIGHT_LENGTH = 0.75;
+    private static final double SCORE_NONE = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Properties
+     */
+    private final InvertedIndex index_;
+    private final double averageLength_;
+
+    /**
+     * Constructs a ranker over the lines of an index.
+     * @param index the index holding the words and the lengths of the lines
+     */
+    public Bm25Ranker(InvertedIndex index) {
+        this.index_ = index;
+        this.averageLength_ = index.lineCount() == 0 ? 0 : (double) index.totalLength() / index.lineCount();
+    }
+
+    /**
+     * Finds the best lines among the matches of a query.
+     * @param matches a cursor over the ids of the lines that may be ranked
+     * @param words the case-folded words scoring the lines
+     * @param count the number of lines to find at most
+     * @param isLiving checks whether the line of an id still exists
+     * @return the ids of the best lines, highest score first, earlier lines first among equal scores
+     */
+    public int[] topIds(IdCursor matches, Collection<String> words, int count, IntPredicate isLiving) {
+        ArrayList<WordScorer> scorers = new ArrayList<>();
+        for (String word : words) {
+            int termId = this.index_.termIdOf(word);
+            if (termId >= 0) {
+                scorers.add(new WordScorer(termId));
+            }
+        }
+        scorers.sort(Comparator.comparingDouble(scorer -> scorer.maxScore_));
+
+        // boundsUpTo[i] is the highest score a line containing only the first i + 1 words can have
+        double[] boundsUpTo = new double[scorers.size()];
+        double bound = 0;
+        for (int i = 0; i < boundsUpTo.length; i++) {
+            bound += scorers.get(i).maxScore_;
+            boundsUpTo[i] = bound;
+        }
+
+        TopLines top = new TopLines(count);
+        if (count == 0) {
+            return top.removeAll();
+        }
+        double[] scores = new double[scorers.size()];
+        int essential = 0;
+        int target = 0;
+        while (true) {
+            int candidate;
+            if (!top.isFull()) {
+                // Until enough lines are kept, any match can enter, even without words
+                candidate = matches.advance(target);
+            } else {
+                if (essential == scorers.size()) {
+                    break;
+                }
+                candidate = Integer.MAX_VALUE;
+                for (int i = essential; i < scorers.size(); i++) {
+                    int id = scorers.get(i).cursor_.advance(target);
+                    if (id != IdCursor.END) {
+                        candidate = Math.min(candidate, id);
+                    }
+                }
+                if (candidate == Integer.MAX_VALUE) {
+                    break;
+                }
+                int match = matches.advance(candidate);
+                if (match != candidate) {
+                    if (match == IdCursor.END) {
+                        break;
+                    }
+                    target = match;
+                    continue;
+                }
+            }
+            if (candidate == IdCursor.END) {
+                break;
+            }
+            target = candidate + 1;
+            if (!isLiving.test(candidate)) {
+                continue;
+            }
+
+            double score = this.score(candidate, scorers, scores, essential, boundsUpTo, top.threshold());
+            if (score != SCORE_NONE && top.offer(candidate, score)) {
+                while (essential < scorers.size() && boundsUpTo[essential] <= top.threshold()) {
+                    essential++;
+                }
+            }
+        }
+        return top.removeAll();
+    }
+
+    /**
+     * Scores a line, adding the essential words first and the others from the strongest
+     * down, and giving up once the line cannot reach the threshold.
+     * @return the score of the line, or SCORE_NONE if it falls short of the threshold
+     */
+    private double score(int id, ArrayList<WordScorer> scorers, double[] scores, int essential,
+                         double[] boundsUpTo, double threshold) {
+        int length = this.index_.lineLength(id);
+        double partialScore = 0;
+        for (int i = scorers.size() - 1; i >= 0; i--) {
+            if (i < essential && partialScore + boundsUpTo[i] < threshold) {
+                return SCORE_NONE;
+            }
+            scores[i] = scorers.get(i).scoreOf(id, length);
+            partialScore += scores[i];
+        }
+
+        // Words are added in the same order for every line, so equal lines score the same
+        double score = 0;
+        for (double wordScore : scores) {
+            score += wordScore;
+        }
+        return score;
+    }
+
+    /**
+     * Scores the lines containing a word, through a cursor over its posting list.
+     */
+    private class WordScorer {
+        private final PostingList.Cursor cursor_;
+        private final double idf_;
+        private final double maxScore_;
+
+        WordScorer(int termId) {
+            InvertedIndex index = Bm25Ranker.this.index_;
+            PostingList postings = index.postingsFor(termId);
+            this.cursor_ = postings.cursor();
+
+            // Removed lines are still in the posting list, but not in the statistics
+            double lineCount = index.lineCount();
+            double termLineCount = index.lineCountOf(termId);
+            this.idf_ = Math.log(1 + (lineCount - termLineCount + 0.5) / (termLineCount + 0.5));
+
+            // The score grows with the frequency and shrinks with the length, and a line
+            // is at least as long as the frequency of any of its words
+            int maxFrequency = postings.maxFrequency();
+            this.maxScore_ = this.scoreOfFrequency(maxFrequency, maxFrequency);
+        }
+
+        double scoreOf(int id, int length) {
+            if (this.cursor_.advance(id) != id) {
+                return 0;
+            }
+            return this.scoreOfFrequency(this.cursor_.loadPositions(), length);
+        }
+
+        private double scoreOfFrequency(int frequency, int length) {
+            double averageLength = Bm25Ranker.this.averageLength_;
+            double lengthRatio = averageLength == 0 ? 1 : length / averageLength;
+            double norm = WEIGHT_FREQUENCY * (1 - WEIGHT_LENGTH + WEIGHT_LENGTH * lengthRatio);
+            return this.idf_ * frequency * (WEIGHT_FREQUENCY + 1) / (frequency + norm);
+        }
+    }
+
+    /**
+     * The best lines found so far, in a binary heap whose root is the worst of them.
+     * A line is worse than another if it scores lower, or scores the same and comes later.
+     */
+    private static class TopLines {
+        private final int[] ids_;
+        private final double[] scores_;
+        private int size_;
+
+        TopLines(int capacity) {
+            this.ids_ = new int[capacity];
+            this.scores_ = new double[capacity];
+            this.size_ = 0;
+        }
+
+        boolean isFull() {
+            return this.size_ == this.ids_.length;
+        }
+
+        /**
+         * Returns the score a line must beat to enter once the heap is full. Lines are
+         * offered in increasing id order, so a line only scoring as much never enters.
+         */
+        double threshold() {
+            return this.isFull() ? this.scores_[0] : SCORE_NONE;
+        }
+
+        /**
+         * Keeps a line if it is among the best lines so far.
+         * @return if the line was kept
+         */
+        boolean offer(int id, double score) {
+            if (!this.isFull()) {
+                int i = this.size_++;
+                while (i > 0 && isWorse(id, score, this.ids_[(i - 1) / 2], this.scores_[(i - 1) / 2])) {
+                    this.ids_[i] = this.ids_[(i - 1) / 2];
+                    this.scores_[i] = this.scores_[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                this.ids_[i] = id;
+                this.scores_[i] = score;
+                return true;
+            }
+            if (score <= this.scores_[0]) {
+                return false;
+            }
+            this.siftDown(id, score);
+            return true;
+        }
+
+        /**
+         * Empties the heap, returning the ids of the lines kept, best first.
+         */
+        int[] removeAll() {
+            int[] ids = new int[this.size_];
+            while (this.size_ > 0) {
+                ids[this.size_ - 1] = this.ids_[0];
+                this.size_--;
+                this.siftDown(this.ids_[this.size_], this.scores_[this.size_]);
+            }
+            return ids;
+        }
+
+        /**
+         * Replaces the worst line with another, and moves it down to its place.
+         */
+        private void siftDown(int id, double score) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size_) {
+                    break;
+                }
+                if (child + 1 < this.size_
+                        && isWorse(this.ids_[child + 1], this.scores_[child + 1], this.ids_[child], this.scores_[child])) {
+                    child++;
+                }
+                if (!isWorse(this.ids_[child], this.scores_[child], id, score)) {
+                    break;
+                }
+                this.ids_[i] = this.ids_[child];
+                this.scores_[i] = this.scores_[child];
+                i = child;
+            }
+            this.ids_[i] = id;
+            this.scores_[i] = score;
+        }
+
+        private static boolean isWorse(int id, double score, int otherId, double otherScore) {
+            return score < otherScore || (score == otherScore && id > otherId);
+        }
+    }
+}
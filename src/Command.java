@@ -131,6 +131,16 @@ public class Command {
         return this.parameter_;
     }
 
+    /**
+     * Returns the order requested by the options of a sort command, such as
+     * "sort -i -k 2". See SortOrder for the options.
+     * @return the order of the lines, alphabetical if there are no options
+     * @throws Error error thrown when the options are invalid
+     */
+    public SortOrder getSortOrder() throws Error {
+        return SortOrder.parse(this.parameter_);
+    }
+
     /**
      * Returns whether the command instruction is unrecognised.
      * @return if instruction is unrecognised
@@ -2,8 +2,20 @@
  * Display.java
  * Copyright (c) 2016 Mai Anh Vu
  */
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
 import java.util.Scanner;
 
@@ -17,13 +29,24 @@ import java.util.Scanner;
  *      }
  * This helper interface contains alias methods to print out messages, and also contains
  * convenient methods to log different levels of output: info, success, and errors.
+ *
+ * Numbered lines printed in bulk (orderedList, lines) do not go through printf. They are
+ * rendered into a reusable buffer and written to the output stream in large chunks.
+ * Lines of a FileLines are never decoded at all: their bytes are copied from the file
+ * next to the line numbers, and lines too long for the buffer are transferred from the
+ * file straight to the output channel.
  */
 public class Display {
 
     /**
      * Constants
      */
-    private static final String STRING_FORMAT_ORDERED_LIST_LINE = "%d. %s";
+    private static final String STRING_SEPARATOR_ORDERED_LIST = ". ";
+    private static final char CHAR_NEW_LINE = '\n';
+    private static final int SIZE_BUFFER_RENDER = 64 << 10;
+    private static final int SIZE_BUFFER_FILE = 256 << 10;
+    private static final byte BYTE_LINE_FEED = '\n';
+    private static final byte BYTE_CARRIAGE_RETURN = '\r';
 
     private static final InputStream STREAM_INPUT_DEFAULT = System.in;
     private static final PrintStream STREAM_OUTPUT_DEFAULT = System.out;
@@ -47,6 +70,13 @@ public class Display {
      */
     private final Scanner inputScanner_;
     private final PrintStream outputPrinter_;
+    private final WritableByteChannel outputChannel_;
+    private final CharsetEncoder renderEncoder_;
+    private final CharBuffer renderChars_;
+    private final ByteBuffer renderBytes_;
+    private final char[] renderDigits_;
+    private ByteBuffer fileWindow_;
+    private long fileWindowStart_;
 
     /**
      * Constructs a display helper that handles I/O operations on the specified
@@ -57,6 +87,18 @@ public class Display {
     public Display(InputStream inputStream, PrintStream outputStream) {
         this.inputScanner_ = new Scanner(inputStream);
         this.outputPrinter_ = outputStream;
+        this.outputChannel_ = outputStream == System.out
+                ? new FileOutputStream(FileDescriptor.out).getChannel()
+                : Channels.newChannel(outputStream);
+        this.renderEncoder_ = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.renderChars_ = CharBuffer.allocate(SIZE_BUFFER_RENDER);
+        this.renderBytes_ = ByteBuffer.allocate(
+                (int) Math.ceil(SIZE_BUFFER_RENDER * this.renderEncoder_.maxBytesPerChar()));
+        this.renderDigits_ = new char[Integer.toString(Integer.MIN_VALUE).length()];
+        this.fileWindow_ = null;
+        this.fileWindowStart_ = 0;
     }
 
     /**
@@ -151,23 +193,230 @@ public class Display {
      * @param lines a list containing the Strings to be printed
      */
     public void orderedList(List<String> lines) {
+        this.orderedList(lines, 1);
+    }
+
+    /**
+     * Prints the list of string as a numbered list, starting from the specified number.
+     * @param lines a list containing the Strings to be printed
+     * @param firstNumber the number of the first String
+     */
+    public void orderedList(List<String> lines, int firstNumber) {
+        int number = firstNumber;
+        for (String line : lines) {
+            this.renderLine(number++, line);
+        }
+        this.flushRendered();
+    }
+
+    /**
+     * Prints the lines of a file between the two indices as a numbered list, starting
+     * from the specified number. The bytes of the lines are written out as they are in
+     * the file, which must use the same charset as the output.
+     * @param lines the lines of a file
+     * @param from the index of the first line, inclusive
+     * @param to the index after the last line, exclusive
+     * @param firstNumber the number of the first line
+     * @throws IOException exception thrown when the file cannot be read
+     */
+    public void orderedList(FileLines lines, int from, int to, int firstNumber) throws IOException {
+        // Anything printed before has to come out before the bytes sent to the channel
+        this.outputPrinter_.flush();
+        this.renderBytes_.clear();
+        if (this.fileWindow_ == null) {
+            this.fileWindow_ = ByteBuffer.allocateDirect(SIZE_BUFFER_FILE);
+        }
+        this.fileWindow_.limit(0);
+
+        FileChannel file = lines.channel();
+        for (int i = from; i < to; i++) {
+            long start = lines.start(i);
+            long end = this.contentEnd(file, start, lines.start(i + 1));
+
+            this.renderNumberBytes(firstNumber + i - from);
+            if (end - start + 1 > this.renderBytes_.remaining()) {
+                this.writeBytesTo(this.outputChannel_);
+            }
+
+            if (end - start + 1 <= this.renderBytes_.remaining()) {
+                this.copyFromFile(file, start, end);
+            } else {
+                // The line does not fit into the buffer, so the file sends it directly
+                long position = start;
+                while (position < end) {
+                    position += file.transferTo(position, end - position, this.outputChannel_);
+                }
+            }
+            this.renderBytes_.put(BYTE_LINE_FEED);
+        }
+        this.writeBytesTo(this.outputChannel_);
+    }
+
+    /**
+     * Prints the lines (the line number followed by content) to the output stream.
+     * @param lineIndices the indices of the lines, counting from 0
+     * @param lines a list containing the content of the lines to be printed
+     */
+    public void lines(int[] lineIndices, List<String> lines) {
         for (int i = 0; i < lines.size(); i++) {
-            this.line(STRING_FORMAT_ORDERED_LIST_LINE,
-                    i + 1,
-                    lines.get(i));
+            this.renderLine(lineIndices[i] + 1, lines.get(i));
+        }
+        this.flushRendered();
+    }
+
+    /**
+     * Renders a numbered line into the buffer, writing out the buffer whenever it is full.
+     * @param number the number of the line
+     * @param line the content of the line
+     */
+    private void renderLine(int number, String line) {
+        this.renderNumber(number);
+        this.render(STRING_SEPARATOR_ORDERED_LIST);
+        this.render(line);
+        if (!this.renderChars_.hasRemaining()) {
+            this.drainRendered(false);
+        }
+        this.renderChars_.put(CHAR_NEW_LINE);
+    }
+
+    private void renderNumber(int number) {
+        // Digits are produced from the last one, and the sign is added in front
+        long value = Math.abs((long) number);
+        int start = this.renderDigits_.length;
+        do {
+            this.renderDigits_[--start] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (number < 0) {
+            this.renderDigits_[--start] = '-';
+        }
+
+        if (this.renderChars_.remaining() < this.renderDigits_.length - start) {
+            this.drainRendered(false);
+        }
+        this.renderChars_.put(this.renderDigits_, start, this.renderDigits_.length - start);
+    }
+
+    private void renderNumberBytes(int number) throws IOException {
+        this.renderNumber(number);
+        this.render(STRING_SEPARATOR_ORDERED_LIST);
+
+        // Digits and the separator are ASCII, so they are copied without encoding
+        this.renderChars_.flip();
+        if (this.renderChars_.remaining() > this.renderBytes_.remaining()) {
+            this.writeBytesTo(this.outputChannel_);
         }
+        while (this.renderChars_.hasRemaining()) {
+            this.renderBytes_.put((byte) this.renderChars_.get());
+        }
+        this.renderChars_.clear();
+    }
+
+    /**
+     * Returns the offset where the content of a line ends, before its terminator.
+     */
+    private long contentEnd(FileChannel file, long start, long end) throws IOException {
+        this.moveFileWindow(file, start);
+        if (end > start && this.fileByteAt(file, end - 1) == BYTE_LINE_FEED) {
+            end--;
+        }
+        if (end > start && this.fileByteAt(file, end - 1) == BYTE_CARRIAGE_RETURN) {
+            end--;
+        }
+        return end;
+    }
+
+    private byte fileByteAt(FileChannel file, long position) throws IOException {
+        this.moveFileWindow(file, position);
+        return this.fileWindow_.get((int) (position - this.fileWindowStart_));
     }
 
     /**
-     * Prints the Line objects (the line number followed by content) to the output stream.
-     * @param lines a list containing the Lines to be printed
+     * Copies the bytes of the file between the two offsets into the render buffer,
+     * reading the file through a window of large blocks.
      */
-    public void lines(List<Line> lines) {
-        for (Line line : lines) {
-            this.line(STRING_FORMAT_ORDERED_LIST_LINE,
-                    line.getDisplayNumber(),
-                    line.getContent());
+    private void copyFromFile(FileChannel file, long start, long end) throws IOException {
+        while (start < end) {
+            this.moveFileWindow(file, start);
+            ByteBuffer bytes = this.fileWindow_.duplicate();
+            bytes.position((int) (start - this.fileWindowStart_));
+            bytes.limit((int) Math.min(bytes.limit(), end - this.fileWindowStart_));
+            start += bytes.remaining();
+            this.renderBytes_.put(bytes);
         }
     }
 
+    /**
+     * Makes sure the byte at the offset is inside the file window, reading the block
+     * of the file starting at that offset if it is not.
+     */
+    private void moveFileWindow(FileChannel file, long position) throws IOException {
+        if (position >= this.fileWindowStart_ && position < this.fileWindowStart_ + this.fileWindow_.limit()) {
+            return;
+        }
+        this.fileWindow_.clear();
+        this.fileWindowStart_ = position;
+        while (this.fileWindow_.hasRemaining()) {
+            if (file.read(this.fileWindow_, position + this.fileWindow_.position()) < 0) {
+                break;
+            }
+        }
+        this.fileWindow_.flip();
+    }
+
+    private void writeBytesTo(WritableByteChannel channel) throws IOException {
+        this.renderBytes_.flip();
+        while (this.renderBytes_.hasRemaining()) {
+            channel.write(this.renderBytes_);
+        }
+        this.renderBytes_.clear();
+    }
+
+    private void render(String string) {
+        int start = 0;
+        while (start < string.length()) {
+            if (!this.renderChars_.hasRemaining()) {
+                this.drainRendered(false);
+            }
+            int end = Math.min(string.length(), start + this.renderChars_.remaining());
+            this.renderChars_.put(string, start, end);
+            start = end;
+        }
+    }
+
+    /**
+     * Writes out everything rendered so far and flushes the output stream.
+     */
+    private void flushRendered() {
+        this.drainRendered(true);
+        this.outputPrinter_.flush();
+    }
+
+    /**
+     * Encodes the rendered characters and writes the bytes to the output stream. Unless
+     * this is the end of the output, a surrogate character cut off at the end of the
+     * buffer is kept until the rest of it is rendered.
+     * @param isEndOfOutput if nothing else is rendered before the output is flushed
+     */
+    private void drainRendered(boolean isEndOfOutput) {
+        this.renderChars_.flip();
+        CoderResult result;
+        do {
+            result = this.renderEncoder_.encode(this.renderChars_, this.renderBytes_, isEndOfOutput);
+            this.writeRenderedBytes();
+        } while (result.isOverflow());
+
+        if (isEndOfOutput) {
+            this.renderEncoder_.flush(this.renderBytes_);
+            this.writeRenderedBytes();
+            this.renderEncoder_.reset();
+        }
+        this.renderChars_.compact();
+    }
+
+    private void writeRenderedBytes() {
+        this.outputPrinter_.write(this.renderBytes_.array(), 0, this.renderBytes_.position());
+        this.renderBytes_.clear();
+    }
+
 }
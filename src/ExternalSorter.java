@@ -0,0 +1,272 @@
+/**
+ * ExternalSorter.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sorts the lines of a file on disk in alphabetical order, using a bounded amount of
+ * memory no matter how large the file is:
+ *      new ExternalSorter(memoryBudget).sort(file);
+ * The file is read in runs that fit into the memory budget. Each run is sorted in
+ * memory and spilled to a temporary file, and the runs are then merged with a loser
+ * tree, straight into a file that replaces the original one. When there are more runs
+ * than can be merged at once, they are merged in several passes.
+ *
+ * Lines are ordered exactly like LinesList.sort() orders them, and blank lines at the
+ * end of the file are dropped like they are when the file is opened.
+ */
+public class ExternalSorter {
+
+    /**
+     * Constants
+     */
+    private static final int COUNT_FAN_IN_DEFAULT = 64;
+    private static final int SIZE_BUFFER_MIN = 8 << 10;
+    private static final int SIZE_LINE_OVERHEAD = 64;
+    private static final String STRING_SUFFIX_RUN = ".run";
+    private static final String STRING_SUFFIX_SORTING = ".sorting";
+
+    /**
+     * Properties
+     */
+    private final long memoryBudget_;
+    private final int fanIn_;
+    private final Charset charset_;
+
+    /**
+     * Constructs a sorter using about the specified amount of memory.
+     * @param memoryBudget the number of bytes that lines held in memory may take
+     */
+    public ExternalSorter(long memoryBudget) {
+        this(memoryBudget, COUNT_FAN_IN_DEFAULT);
+    }
+
+    /**
+     * Constructs a sorter using about the specified amount of memory, and merging at
+     * most the specified number of runs at once.
+     * @param memoryBudget the number of bytes that lines held in memory may take
+     * @param fanIn the maximum number of runs merged together, at least 2
+     */
+    public ExternalSorter(long memoryBudget, int fanIn) {
+        this.memoryBudget_ = memoryBudget;
+        this.fanIn_ = Math.max(2, fanIn);
+        this.charset_ = Charset.defaultCharset();
+    }
+
+    /**
+     * Sorts the lines of the file, replacing it with the sorted file once sorting has
+     * completed. The runs are spilled next to the file.
+     * @param file the file to sort
+     * @throws IOException exception thrown when the file or the runs cannot be read or written
+     */
+    public void sort(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File sortedFile = new File(file.getPath() + STRING_SUFFIX_SORTING);
+        List<File> runs = new ArrayList<>();
+        try {
+            this.spillRuns(file, directory, runs);
+
+            // Merge passes until the remaining runs can all be merged into the output
+            while (runs.size() > this.fanIn_) {
+                List<File> mergedRuns = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += this.fanIn_) {
+                    List<File> group = runs.subList(i, Math.min(runs.size(), i + this.fanIn_));
+                    File mergedRun = File.createTempFile(file.getName(), STRING_SUFFIX_RUN, directory);
+                    mergedRuns.add(mergedRun);
+                    this.merge(group, mergedRun);
+                    deleteAll(group);
+                }
+                runs = mergedRuns;
+            }
+            this.merge(runs, sortedFile);
+
+            try {
+                Files.move(sortedFile.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(sortedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            deleteAll(runs);
+            sortedFile.delete();
+        }
+    }
+
+    /**
+     * Reads the file in runs that fit into the memory budget, and writes every run
+     * sorted into its own temporary file.
+     */
+    private void spillRuns(File file, File directory, List<File> runs) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), this.charset_), this.bufferSize(1))) {
+            ArrayList<String> lines = new ArrayList<>();
+            ArrayList<String> blankLines = new ArrayList<>();
+            long runSize = 0;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Blank lines only count once a line with content follows them
+                if (line.trim().isEmpty()) {
+                    blankLines.add(line);
+                    continue;
+                }
+                blankLines.add(line);
+                for (String pendingLine : blankLines) {
+                    lines.add(pendingLine);
+                    runSize += SIZE_LINE_OVERHEAD + 2L * pendingLine.length();
+                }
+                blankLines.clear();
+
+                if (runSize >= this.memoryBudget_) {
+                    runs.add(this.spill(lines, file, directory));
+                    lines.clear();
+                    runSize = 0;
+                }
+            }
+
+            if (!lines.isEmpty() || runs.isEmpty()) {
+                runs.add(this.spill(lines, file, directory));
+            }
+        }
+    }
+
+    private File spill(ArrayList<String> lines, File file, File directory) throws IOException {
+        lines.sort(null);
+        File run = File.createTempFile(file.getName(), STRING_SUFFIX_RUN, directory);
+        try (BufferedWriter writer = this.openWriter(run, 1)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Merges sorted runs into a single sorted file.
+     */
+    private void merge(List<File> runs, File output) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        try (BufferedWriter writer = this.openWriter(output, runs.size() + 1)) {
+            for (File run : runs) {
+                readers.add(new BufferedReader(new InputStreamReader(new FileInputStream(run), this.charset_),
+                        this.bufferSize(runs.size() + 1)));
+            }
+
+            LoserTree tree = new LoserTree(readers);
+            String line;
+            while ((line = tree.next()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private BufferedWriter openWriter(File file, int buffersSharingBudget) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), this.charset_),
+                this.bufferSize(buffersSharingBudget));
+    }
+
+    /**
+     * Returns the size of a buffer, when the specified number of buffers share a part
+     * of the memory budget.
+     */
+    private int bufferSize(int bufferCount) {
+        long size = this.memoryBudget_ / 4 / bufferCount;
+        return (int) Math.max(SIZE_BUFFER_MIN, Math.min(size, Integer.MAX_VALUE / 2));
+    }
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tournament tree over the next line of every run, where each internal node holds
+     * the run that lost the match played there. Taking the smallest line and refilling
+     * its run only replays the matches on the path from that run to the root, so each
+     * line costs log2(k) comparisons for k runs.
+     */
+    private static class LoserTree {
+        private final List<BufferedReader> readers_;
+        private final String[] heads_;
+        private final int[] losers_;
+        private final int count_;
+
+        LoserTree(List<BufferedReader> readers) throws IOException {
+            this.readers_ = readers;
+            this.count_ = readers.size();
+            this.heads_ = new String[this.count_];
+            this.losers_ = new int[Math.max(1, this.count_)];
+
+            // Every node starts out holding a virtual run that beats all the others,
+            // so that replaying each real run pushes the virtual ones out of the tree
+            for (int i = 0; i < this.losers_.length; i++) {
+                this.losers_[i] = this.count_;
+            }
+            for (int run = this.count_ - 1; run >= 0; run--) {
+                this.heads_[run] = readers.get(run).readLine();
+                this.replay(run);
+            }
+        }
+
+        /**
+         * Returns the smallest line left in all the runs, and advances its run.
+         * @return the next line in order, or null if all runs are exhausted
+         */
+        String next() throws IOException {
+            if (this.count_ == 0) {
+                return null;
+            }
+            int winner = this.losers_[0];
+            String line = this.heads_[winner];
+            if (line != null) {
+                this.heads_[winner] = this.readers_.get(winner).readLine();
+                this.replay(winner);
+            }
+            return line;
+        }
+
+        private void replay(int run) {
+            int winner = run;
+            for (int node = (run + this.count_) / 2; node > 0; node /= 2) {
+                if (this.beats(this.losers_[node], winner)) {
+                    int loser = winner;
+                    winner = this.losers_[node];
+                    this.losers_[node] = loser;
+                }
+            }
+            this.losers_[0] = winner;
+        }
+
+        /**
+         * Checks whether the first run's line comes before the second's. Exhausted runs
+         * lose to every other run, and ties go to the earlier run to keep the sort stable.
+         */
+        private boolean beats(int first, int second) {
+            if (first == this.count_ || second == this.count_) {
+                return first == this.count_;
+            }
+            String firstHead = this.heads_[first];
+            String secondHead = this.heads_[second];
+            if (firstHead == null || secondHead == null) {
+                return secondHead == null && firstHead != null;
+            }
+            int comparison = firstHead.compareTo(secondHead);
+            return comparison < 0 || (comparison == 0 && first < second);
+        }
+    }
+}
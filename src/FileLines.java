@@ -0,0 +1,144 @@
+/**
+ * FileLines.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The lines of a file exactly as they are stored on disk, located through a table of
+ * the offsets where every line starts. Nothing is decoded: the lines are meant to be
+ * copied or transferred to an output as raw bytes.
+ *      FileLines lines = FileLines.scan(file);
+ *      long start = lines.start(2);
+ *      long end = lines.start(3);       // includes the line terminator of line 3
+ * Lines end at \n, \r or \r\n, like BufferedReader.readLine(), so line numbers agree
+ * with the lines loaded by the FileLoader.
+ */
+public class FileLines implements Closeable {
+
+    /**
+     * Constants
+     */
+    private static final int SIZE_BUFFER_SCAN = 1 << 20;
+    private static final int CAPACITY_OFFSETS_INITIAL = 1024;
+
+    private static final byte BYTE_LINE_FEED = '\n';
+    private static final byte BYTE_CARRIAGE_RETURN = '\r';
+
+    /**
+     * Properties
+     */
+    private final FileChannel channel_;
+    private final long[] lineStarts_;
+    private final int count_;
+
+    private FileLines(FileChannel channel, long[] lineStarts, int count) {
+        this.channel_ = channel;
+        this.lineStarts_ = lineStarts;
+        this.count_ = count;
+    }
+
+    /**
+     * Opens the file and scans it for line terminators.
+     * @param file the file to scan
+     * @return the lines of the file
+     * @throws IOException exception thrown when the file cannot be read
+     */
+    public static FileLines scan(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long[] lineStarts = new long[CAPACITY_OFFSETS_INITIAL];
+            int count = 0;
+
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE_BUFFER_SCAN);
+            long lineStart = 0;
+            boolean isAfterCarriageReturn = false;
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+
+                    // The line feed of \r\n belongs to the line the \r ended
+                    if (isAfterCarriageReturn) {
+                        isAfterCarriageReturn = false;
+                        if (b == BYTE_LINE_FEED) {
+                            lineStart++;
+                            continue;
+                        }
+                    }
+                    if (b == BYTE_LINE_FEED || b == BYTE_CARRIAGE_RETURN) {
+                        if (count + 1 >= lineStarts.length) {
+                            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                        }
+                        lineStarts[count++] = lineStart;
+                        lineStart = position + i + 1;
+                        isAfterCarriageReturn = b == BYTE_CARRIAGE_RETURN;
+                    }
+                }
+                position += read;
+            }
+
+            // The last line may not be terminated
+            if (lineStart < size) {
+                if (count + 1 >= lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineStarts.length + 1);
+                }
+                lineStarts[count++] = lineStart;
+            }
+            lineStarts[count] = size;
+
+            return new FileLines(channel, lineStarts, count);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of lines in the file.
+     * @return the number of lines
+     */
+    public int size() {
+        return this.count_;
+    }
+
+    /**
+     * Returns the offset where the line at the specified index starts. The offset of
+     * the line after the last one is the size of the file.
+     * @param index the index of the line, up to the number of lines
+     * @return the offset of the first byte of the line
+     */
+    public long start(int index) {
+        return this.lineStarts_[index];
+    }
+
+    /**
+     * Returns the channel the lines are read from.
+     * @return a readable channel over the file
+     */
+    public FileChannel channel() {
+        return this.channel_;
+    }
+
+    /**
+     * Closes the channel over the file.
+     * @throws IOException exception thrown when the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel_.close();
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * FileLoader.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads the lines of a file into a LinesList using every core. The file is cut into
+ * chunks of roughly equal size, each ending right after a line feed. The chunks are
+ * read, decoded, split into lines and indexed in parallel on the common fork-join
+ * pool, and then appended to the list in file order:
+ *      new FileLoader().load(file, linesList);
+ * Lines end at \n, \r or \r\n, like BufferedReader.readLine(). A chunk never starts
+ * in the middle of a line, and line feeds cannot appear inside a multi-byte character
+ * of an ASCII-compatible charset, so every chunk can be decoded on its own.
+ */
+public class FileLoader {
+
+    /**
+     * Constants
+     */
+    private static final int SIZE_CHUNK_DEFAULT = 4 << 20;
+    private static final int SIZE_BUFFER_SCAN = 8 << 10;
+
+    private static final byte BYTE_LINE_FEED = '\n';
+    private static final char CHAR_LINE_FEED = '\n';
+    private static final char CHAR_CARRIAGE_RETURN = '\r';
+
+    /**
+     * Properties
+     */
+    private final int chunkSize_;
+    private final Charset charset_;
+
+    /**
+     * Constructs a loader reading chunks of the default size.
+     */
+    public FileLoader() {
+        this(SIZE_CHUNK_DEFAULT);
+    }
+
+    /**
+     * Constructs a loader reading chunks of about the specified size.
+     * @param chunkSize the number of bytes after which a chunk ends at the next line feed
+     */
+    public FileLoader(int chunkSize) {
+        this.chunkSize_ = chunkSize;
+        this.charset_ = Charset.defaultCharset();
+    }
+
+    /**
+     * Appends all the lines of the file to the list.
+     * @param file the file to read
+     * @param linesList the list receiving the lines
+     * @throws IOException exception thrown when the file cannot be read
+     */
+    public void load(File file, LinesList linesList) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<ChunkTask> tasks = new ArrayList<>();
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = size - start <= this.chunkSize_
+                        ? size
+                        : nextLineStart(channel, start + this.chunkSize_ - 1, size);
+                ChunkTask task = new ChunkTask(channel, start, (int) (end - start));
+                task.fork();
+                tasks.add(task);
+                start = end;
+            }
+
+            // Join in file order, so that earlier chunks are appended while later ones
+            // are still being indexed
+            for (ChunkTask task : tasks) {
+                Chunk chunk;
+                try {
+                    chunk = task.join();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                linesList.addAll(chunk.lines_, chunk.index_);
+            }
+        }
+    }
+
+    /**
+     * Finds the position following the first line feed at or after the specified one.
+     * @return the start of the next line, or the size of the file if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_BUFFER_SCAN);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == BYTE_LINE_FEED) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * The lines of one chunk and the index of their words, numbered from 0.
+     */
+    private static class Chunk {
+        private final List<String> lines_;
+        private final InvertedIndex index_;
+
+        Chunk(List<String> lines, InvertedIndex index) {
+            this.lines_ = lines;
+            this.index_ = index;
+        }
+    }
+
+    /**
+     * Reads, decodes, splits and indexes a single chunk.
+     */
+    private class ChunkTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel_;
+        private final long start_;
+        private final int length_;
+
+        ChunkTask(FileChannel channel, long start, int length) {
+            this.channel_ = channel;
+            this.start_ = start;
+            this.length_ = length;
+        }
+
+        @Override
+        protected Chunk compute() {
+            ByteBuffer bytes = ByteBuffer.allocate(this.length_);
+            try {
+                while (bytes.hasRemaining()) {
+                    if (this.channel_.read(bytes, this.start_ + bytes.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bytes.flip();
+
+            CharBuffer text = FileLoader.this.charset_.decode(bytes);
+            List<String> lines = new ArrayList<>();
+            InvertedIndex index = new InvertedIndex();
+
+            int lineStart = 0;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.get(i);
+                if (c != CHAR_LINE_FEED && c != CHAR_CARRIAGE_RETURN) {
+                    continue;
+                }
+                addLine(lines, index, text.subSequence(lineStart, i).toString());
+                if (c == CHAR_CARRIAGE_RETURN && i + 1 < length && text.get(i + 1) == CHAR_LINE_FEED) {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+
+            // Only the last chunk of the file can end without a line terminator
+            if (lineStart < length) {
+                addLine(lines, index, text.subSequence(lineStart, length).toString());
+            }
+            return new Chunk(lines, index);
+        }
+
+        private void addLine(List<String> lines, InvertedIndex index, String line) {
+            index.add(lines.size(), line);
+            lines.add(line);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * FsyncPolicy.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+/**
+ * Decides whether saving a text file forces its content to the storage device,
+ * trading durability against the latency of saving:
+ *      never       saved content is left to the operating system to write out
+ *      save        every save is forced to disk before it completes (the default)
+ *      <millis>    a save is only forced right away if the last forced save was at
+ *                  least that many milliseconds ago, and is otherwise forced once that
+ *                  interval has run out, so bursts of saves share a single force
+ * Without forcing, saving is still atomic against the application dying, but not
+ * against the whole system going down. A policy holds no state, so the same policy
+ * can be shared by any number of files, each of which tracks its last forced save.
+ */
+public class FsyncPolicy {
+
+    /**
+     * Constants
+     */
+    public static final FsyncPolicy NEVER = new FsyncPolicy(-1);
+    public static final FsyncPolicy ON_SAVE = new FsyncPolicy(0);
+
+    private static final Error ERROR_POLICY_INVALID = new Error("Invalid fsync policy");
+    private static final String STRING_POLICY_NEVER = "never";
+    private static final String STRING_POLICY_ON_SAVE = "save";
+
+    /**
+     * Properties
+     */
+    private final long intervalMillis_;
+
+    private FsyncPolicy(long intervalMillis) {
+        this.intervalMillis_ = intervalMillis;
+    }
+
+    /**
+     * Returns a policy forcing saves at most once per interval.
+     * @param intervalMillis the minimum number of milliseconds between two forced saves
+     * @return the policy
+     */
+    public static FsyncPolicy interval(long intervalMillis) {
+        return new FsyncPolicy(intervalMillis);
+    }
+
+    /**
+     * Parses a policy from its name: never, save, or an interval in milliseconds.
+     * @param policy the name of the policy
+     * @return the policy
+     * @throws Error error thrown when the name is not a valid policy
+     */
+    public static FsyncPolicy parse(String policy) throws Error {
+        if (policy.equals(STRING_POLICY_NEVER)) {
+            return NEVER;
+        }
+        if (policy.equals(STRING_POLICY_ON_SAVE)) {
+            return ON_SAVE;
+        }
+        try {
+            long intervalMillis = Long.parseLong(policy);
+            if (intervalMillis < 0) {
+                throw ERROR_POLICY_INVALID;
+            }
+            return interval(intervalMillis);
+        } catch (NumberFormatException e) {
+            throw ERROR_POLICY_INVALID;
+        }
+    }
+
+    /**
+     * Decides whether the save about to happen should be forced to disk right away.
+     * @param lastForcedMillis the time of the last forced save of the file, or
+     *                         Long.MIN_VALUE if it has never been forced
+     * @param nowMillis the current time
+     * @return if the save should be forced
+     */
+    public boolean shouldForce(long lastForcedMillis, long nowMillis) {
+        if (this.intervalMillis_ < 0) {
+            return false;
+        }
+        return lastForcedMillis == Long.MIN_VALUE || nowMillis - lastForcedMillis >= this.intervalMillis_;
+    }
+
+    /**
+     * Returns when a save that was not forced right away has to be forced.
+     * @param lastForcedMillis the time of the last forced save of the file
+     * @return the time at which to force the file, or -1 if it is never forced
+     */
+    public long deferredForceMillis(long lastForcedMillis) {
+        if (this.intervalMillis_ < 0) {
+            return -1;
+        }
+        return lastForcedMillis + this.intervalMillis_;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * IdCursor.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+/**
+ * A forward-only reader over a sorted set of line ids, such as a posting list or
+ * the result of a query. Cursors start before their first id:
+ *      IdCursor cursor = postings.cursor();
+ *      int id;
+ *      while ((id = cursor.next()) != IdCursor.END) { ... }
+ * advance() allows intersections to skip over ids they are not interested in.
+ */
+public interface IdCursor {
+
+    /**
+     * Returned once the cursor has run out of ids.
+     */
+    int END = -1;
+
+    /**
+     * Moves to the next id.
+     * @return the next id, or END when the cursor is exhausted
+     */
+    int next();
+
+    /**
+     * Moves to the first id that is greater than or equal to the target. The cursor
+     * stays put if its current id already satisfies the target.
+     * @param target a non-negative id
+     * @return the first id not smaller than the target, or END when there is none
+     */
+    int advance(int target);
+
+    /**
+     * Returns an upper bound of the number of ids the cursor produces, used to decide
+     * which cursor drives an intersection.
+     * @return the estimated number of ids
+     */
+    int cost();
+
+    /**
+     * Returns a cursor over the first ids of a sorted array.
+     * @param ids an array of ids in increasing order
+     * @param length the number of ids to read from the array
+     * @return a cursor over the ids
+     */
+    static IdCursor of(int[] ids, int length) {
+        return new ArrayCursor(ids, length);
+    }
+
+    /**
+     * Returns a cursor over every id from 0 to (slots - 1).
+     * @param slots the number of ids
+     * @return a cursor over all ids
+     */
+    static IdCursor all(int slots) {
+        return new RangeCursor(slots);
+    }
+
+    /**
+     * Cursor over a sorted array, skipping with a galloping search.
+     */
+    class ArrayCursor implements IdCursor {
+        private final int[] ids_;
+        private final int length_;
+        private int index_ = -1;
+
+        private ArrayCursor(int[] ids, int length) {
+            this.ids_ = ids;
+            this.length_ = length;
+        }
+
+        @Override
+        public int next() {
+            if (this.index_ < this.length_) {
+                this.index_++;
+            }
+            return this.current();
+        }
+
+        @Override
+        public int advance(int target) {
+            int low = Math.max(this.index_, 0);
+            if (low >= this.length_ || this.ids_[low] >= target) {
+                this.index_ = low;
+                return this.current();
+            }
+
+            // Gallop until the target is bracketed, then binary search the bracket
+            int step = 1;
+            int high = low + step;
+            while (high < this.length_ && this.ids_[high] < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, this.length_);
+            while (low + 1 < high) {
+                int middle = (low + high) >>> 1;
+                if (this.ids_[middle] < target) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+
+            this.index_ = high;
+            return this.current();
+        }
+
+        @Override
+        public int cost() {
+            return this.length_;
+        }
+
+        private int current() {
+            return this.index_ < this.length_ ? this.ids_[this.index_] : END;
+        }
+    }
+
+    /**
+     * Cursor over a contiguous range of ids starting from 0.
+     */
+    class RangeCursor implements IdCursor {
+        private final int slots_;
+        private int current_ = -1;
+
+        private RangeCursor(int slots) {
+            this.slots_ = slots;
+        }
+
+        @Override
+        public int next() {
+            if (this.current_ < this.slots_) {
+                this.current_++;
+            }
+            return this.current_ < this.slots_ ? this.current_ : END;
+        }
+
+        @Override
+        public int advance(int target) {
+            this.current_ = Math.min(Math.max(this.current_, target), this.slots_);
+            return this.current_ < this.slots_ ? this.current_ : END;
+        }
+
+        @Override
+        public int cost() {
+            return this.slots_;
+        }
+    }
+}
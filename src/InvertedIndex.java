@@ -0,0 +1,487 @@
+/**
+ * InvertedIndex.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The search index of a LinesList, mapping every word to the ids of the lines that
+ * contain it, and to the positions of the word inside each of these lines. Words are
+ * interned into term ids the first time they are seen, and each term id owns a
+ * compressed PostingList:
+ *      InvertedIndex index = new InvertedIndex();
+ *      index.add(lineId, line.getContent());
+ *      PostingList postings = index.get("lorem");
+ * Words are looked up straight from the content of the line by hashing their characters
+ * case-insensitively, so indexing a line only creates a string for a word never seen before.
+ * The index is append-only: removing a line leaves its id in the posting lists, and
+ * readers are expected to skip ids of lines that no longer exist. Removed lines are
+ * only taken out of the statistics used for ranking, through remove().
+ *
+ * Patterns with the wildcards * (any characters) and ? (a single character) are
+ * expanded into the terms they match through sorted term dictionaries, built the first
+ * time a pattern is expanded:
+ *      int[] termIds = index.expand("err*");
+ * Fuzzy words are expanded into the terms within a few edits of them, in the same way:
+ *      int[] termIds = index.expandFuzzy("lorme", 2);
+ *
+ * The number of words of every line is kept as well, so that lines can be ranked by
+ * how much of their content a query matches (see Bm25Ranker).
+ */
+public class InvertedIndex implements LineIndex<InvertedIndex> {
+
+    /**
+     * Constants
+     */
+    private static final int CAPACITY_TABLE_INITIAL = 64;
+    private static final int SLOT_EMPTY = -1;
+    private static final char CHAR_WILDCARD_ANY = '*';
+    private static final char CHAR_WILDCARD_ONE = '?';
+    private static final int CAPACITY_TERMS_EXPANDED_INITIAL = 16;
+    private static final int CAPACITY_LINES_INITIAL = 64;
+
+    /**
+     * Properties
+     */
+    private final ArrayList<String> terms_;
+    private final ArrayList<PostingList> postings_;
+    private final Tokenizer tokenizer_;
+    private int[] termHashes_;
+    private int[] table_;
+    private int[] lineLengths_;
+    private int lineCount_;
+    private long totalLength_;
+    private int[] removedCounts_;
+    private TermDictionary dictionary_;
+    private TermDictionary reversedDictionary_;
+
+    /**
+     * Constructs an empty index.
+     */
+    public InvertedIndex() {
+        this.terms_ = new ArrayList<>();
+        this.postings_ = new ArrayList<>();
+        this.tokenizer_ = new Tokenizer();
+        this.termHashes_ = new int[CAPACITY_TABLE_INITIAL / 2];
+        this.table_ = new int[CAPACITY_TABLE_INITIAL];
+        Arrays.fill(this.table_, SLOT_EMPTY);
+        this.lineLengths_ = new int[CAPACITY_LINES_INITIAL];
+        this.lineCount_ = 0;
+        this.totalLength_ = 0;
+        this.removedCounts_ = new int[0];
+    }
+
+    /**
+     * Indexes all the words of a line, along with their positions in the line. The id
+     * must not be smaller than any id indexed before it.
+     * @param lineId the id of the line
+     * @param content the content of the line
+     */
+    @Override
+    public void add(int lineId, CharSequence content) {
+        Tokenizer tokenizer = this.tokenizer_.reset(content);
+        int position = 0;
+        for (; tokenizer.next(); position++) {
+            this.postingsFor(this.intern(content, tokenizer.start(), tokenizer.end())).append(lineId, position);
+        }
+        this.ensureLineCapacity(lineId + 1);
+        this.lineLengths_[lineId] = position;
+        this.lineCount_++;
+        this.totalLength_ += position;
+    }
+
+    /**
+     * Takes a removed line out of the statistics used for ranking: the number of lines,
+     * their total length and the number of lines containing each of its words. The id
+     * of the line stays in the posting lists.
+     * @param lineId the id of the removed line
+     * @param content the content of the line when it was indexed
+     */
+    public void remove(int lineId, CharSequence content) {
+        int length = this.lineLength(lineId);
+        int[] termIds = new int[length];
+        Tokenizer tokenizer = this.tokenizer_.reset(content);
+        for (int i = 0; i < length && tokenizer.next(); i++) {
+            int start = tokenizer.start();
+            int end = tokenizer.end();
+            termIds[i] = this.table_[this.slotOf(content, start, end, hash(content, start, end))];
+        }
+
+        // A word occurring several times in the line is only counted once
+        Arrays.sort(termIds);
+        if (this.removedCounts_.length < this.terms_.size()) {
+            this.removedCounts_ = Arrays.copyOf(this.removedCounts_, this.terms_.size());
+        }
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || termIds[i] != termIds[i - 1]) {
+                this.removedCounts_[termIds[i]]++;
+            }
+        }
+
+        this.lineLengths_[lineId] = 0;
+        this.lineCount_--;
+        this.totalLength_ -= length;
+    }
+
+    /**
+     * Appends all the postings of another index, whose line ids are shifted by an offset.
+     * This lets separate parts of a file be indexed independently and joined afterwards.
+     * @param other an index of the lines following the lines of this index
+     * @param idOffset the id in this index of the line with id 0 in the other index
+     */
+    @Override
+    public void merge(InvertedIndex other, int idOffset) {
+        for (int termId = 0; termId < other.termCount(); termId++) {
+            this.postingsFor(this.intern(other.termOf(termId))).appendAll(other.postingsFor(termId), idOffset);
+        }
+
+        this.ensureLineCapacity(idOffset + other.lineLengths_.length);
+        System.arraycopy(other.lineLengths_, 0, this.lineLengths_, idOffset, other.lineLengths_.length);
+        this.lineCount_ += other.lineCount_;
+        this.totalLength_ += other.totalLength_;
+    }
+
+    /**
+     * Returns the term id of the word, registering it if the word has never been seen.
+     * @param word a word
+     * @return the term id of the word
+     */
+    public int intern(String word) {
+        return this.intern(word, 0, word.length());
+    }
+
+    /**
+     * Returns the term id of the word, ignoring its case.
+     * @param word a word
+     * @return the term id, or -1 if the word has never been indexed
+     */
+    public int termIdOf(CharSequence word) {
+        int slot = this.slotOf(word, 0, word.length(), hash(word, 0, word.length()));
+        return this.table_[slot];
+    }
+
+    /**
+     * Returns the word registered under the term id.
+     * @param termId a term id
+     * @return the word of the term
+     */
+    public String termOf(int termId) {
+        return this.terms_.get(termId);
+    }
+
+    /**
+     * Returns the number of distinct terms in the index.
+     * @return the number of terms
+     */
+    public int termCount() {
+        return this.terms_.size();
+    }
+
+    /**
+     * Returns the number of lines indexed, leaving out the lines that have since been
+     * removed even though they are still in the posting lists.
+     * @return the number of lines indexed and not removed
+     */
+    public int lineCount() {
+        return this.lineCount_;
+    }
+
+    /**
+     * Returns the number of words of a line.
+     * @param lineId the id of the line
+     * @return the number of words, or 0 if the line was not indexed
+     */
+    public int lineLength(int lineId) {
+        return lineId < this.lineLengths_.length ? this.lineLengths_[lineId] : 0;
+    }
+
+    /**
+     * Returns the number of words of all the lines indexed and not removed.
+     * @return the sum of the lengths of the lines
+     */
+    public long totalLength() {
+        return this.totalLength_;
+    }
+
+    /**
+     * Returns the number of lines containing a term, leaving out the removed lines.
+     * @param termId a term id
+     * @return the number of lines containing the term
+     */
+    public int lineCountOf(int termId) {
+        int removedCount = termId < this.removedCounts_.length ? this.removedCounts_[termId] : 0;
+        return this.postingsFor(termId).count() - removedCount;
+    }
+
+    /**
+     * Returns the posting list of the term id.
+     * @param termId a term id
+     * @return the posting list of the term
+     */
+    public PostingList postingsFor(int termId) {
+        return this.postings_.get(termId);
+    }
+
+    /**
+     * Returns the posting list of the word.
+     * @param word a word
+     * @return the posting list of the word, or null if the word has never been indexed
+     */
+    public PostingList get(String word) {
+        int termId = this.termIdOf(word);
+        return termId < 0 ? null : this.postingsFor(termId);
+    }
+
+    /**
+     * Checks whether the word contains a wildcard, and has to be expanded.
+     * @param word a word
+     * @return if the word is a pattern
+     */
+    public static boolean isPattern(String word) {
+        return word.indexOf(CHAR_WILDCARD_ANY) >= 0 || word.indexOf(CHAR_WILDCARD_ONE) >= 0;
+    }
+
+    /**
+     * Returns the ids of the terms matching a pattern, ignoring case. The terms are
+     * looked up in the range of the sorted dictionary holding the longest literal
+     * prefix of the pattern, or in the reversed dictionary when the literal suffix is
+     * longer, so only the terms carrying that prefix or suffix are examined.
+     * @param pattern a word in which * matches any characters and ? a single one
+     * @return the ids of the matching terms
+     */
+    public int[] expand(String pattern) {
+        String foldedPattern = Tokenizer.fold(pattern);
+        int prefixLength = 0;
+        while (prefixLength < foldedPattern.length() && !isWildcard(foldedPattern.charAt(prefixLength))) {
+            prefixLength++;
+        }
+        int suffixStart = foldedPattern.length();
+        while (suffixStart > prefixLength && !isWildcard(foldedPattern.charAt(suffixStart - 1))) {
+            suffixStart--;
+        }
+
+        TermDictionary dictionary;
+        String affix;
+        if (prefixLength >= foldedPattern.length() - suffixStart) {
+            dictionary = this.forwardDictionary();
+            affix = foldedPattern.substring(0, prefixLength);
+        } else {
+            if (this.reversedDictionary_ == null) {
+                this.reversedDictionary_ = new TermDictionary(this, true);
+            }
+            dictionary = this.reversedDictionary_;
+            affix = foldedPattern.substring(suffixStart);
+        }
+
+        int[] range = dictionary.rangeOf(affix);
+        int[] termIds = new int[range[1] - range[0]];
+        int count = 0;
+        for (int i = range[0]; i < range[1]; i++) {
+            int termId = dictionary.termIdAt(i);
+            if (matchesPattern(this.terms_.get(termId), foldedPattern)) {
+                termIds[count++] = termId;
+            }
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+
+    /**
+     * Returns the ids of the terms within the maximum edit distance of a word, ignoring
+     * case. A Levenshtein automaton is run along the sorted dictionary, reusing the
+     * states of the prefix a term shares with the previous one. When a prefix leads to
+     * a dead state, the walk seeks with a binary search to the next prefix that keeps
+     * the automaton alive, so only a small part of the dictionary is visited.
+     * @param word a word
+     * @param maxEdits the maximum number of edits between the word and a term
+     * @return the ids of the matching terms
+     */
+    public int[] expandFuzzy(String word, int maxEdits) {
+        TermDictionary dictionary = this.forwardDictionary();
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(Tokenizer.fold(word), maxEdits);
+        int size = dictionary.size();
+        int[] termIds = new int[Math.min(size, CAPACITY_TERMS_EXPANDED_INITIAL)];
+        int count = 0;
+
+        // states.get(d) is the state after reading the first d characters of the previous term
+        ArrayList<int[]> states = new ArrayList<>();
+        states.add(automaton.start());
+        String previousTerm = "";
+        int position = 0;
+        while (position < size) {
+            int termId = dictionary.termIdAt(position);
+            String term = this.terms_.get(termId);
+
+            int depth = 0;
+            int reusableDepth = Math.min(states.size() - 1, Math.min(previousTerm.length(), term.length()));
+            while (depth < reusableDepth && term.charAt(depth) == previousTerm.charAt(depth)) {
+                depth++;
+            }
+            while (states.size() > depth + 1) {
+                states.remove(states.size() - 1);
+            }
+            int[] state = states.get(depth);
+            while (depth < term.length() && automaton.canMatch(state)) {
+                state = automaton.step(state, term.charAt(depth++));
+                states.add(state);
+            }
+            previousTerm = term;
+
+            if (!automaton.canMatch(state)) {
+                position = seekLive(dictionary, automaton, states, term, depth);
+                continue;
+            }
+            if (automaton.isMatch(state)) {
+                if (count == termIds.length) {
+                    termIds = Arrays.copyOf(termIds, count * 2);
+                }
+                termIds[count++] = termId;
+            }
+            position++;
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+
+    /**
+     * Finds the position of the first term after the specified one whose prefixes may
+     * all lead to live states, given that the first deadDepth characters of the term
+     * lead to a dead state. The last live prefix is extended with the next character
+     * keeping it alive, backing up one character at a time while there is none.
+     */
+    private static int seekLive(TermDictionary dictionary, LevenshteinAutomaton automaton,
+                                ArrayList<int[]> states, String term, int deadDepth) {
+        for (int depth = deadDepth - 1; depth >= 0; depth--) {
+            int next = automaton.nextLiveChar(states.get(depth), term.charAt(depth));
+            if (next >= 0) {
+                return dictionary.ceiling(term.substring(0, depth) + (char) next);
+            }
+        }
+        return dictionary.size();
+    }
+
+    /**
+     * Returns the term id of the word between the two indices of the text, registering
+     * the folded word if it has never been seen.
+     */
+    private int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int slot = this.slotOf(text, start, end, hash);
+        if (this.table_[slot] != SLOT_EMPTY) {
+            return this.table_[slot];
+        }
+
+        int termId = this.terms_.size();
+        this.terms_.add(Tokenizer.fold(text.subSequence(start, end)));
+        this.postings_.add(new PostingList());
+        if (termId == this.termHashes_.length) {
+            this.termHashes_ = Arrays.copyOf(this.termHashes_, termId * 2);
+        }
+        this.termHashes_[termId] = hash;
+        this.table_[slot] = termId;
+
+        // Keep the table at most half full so that probe sequences stay short
+        if (this.terms_.size() * 2 > this.table_.length) {
+            this.growTable();
+        }
+        return termId;
+    }
+
+    /**
+     * Finds the slot of the table holding the word, or the empty slot where it belongs.
+     * Collisions are resolved by linear probing.
+     */
+    private int slotOf(CharSequence text, int start, int end, int hash) {
+        int mask = this.table_.length - 1;
+        int slot = hash & mask;
+        while (this.table_[slot] != SLOT_EMPTY) {
+            int termId = this.table_[slot];
+            if (this.termHashes_[termId] == hash && matches(this.terms_.get(termId), text, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void ensureLineCapacity(int capacity) {
+        if (capacity > this.lineLengths_.length) {
+            this.lineLengths_ = Arrays.copyOf(this.lineLengths_, Math.max(capacity, this.lineLengths_.length * 2));
+        }
+    }
+
+    private void growTable() {
+        this.table_ = new int[this.table_.length * 2];
+        Arrays.fill(this.table_, SLOT_EMPTY);
+        int mask = this.table_.length - 1;
+        for (int termId = 0; termId < this.terms_.size(); termId++) {
+            int slot = this.termHashes_[termId] & mask;
+            while (this.table_[slot] != SLOT_EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            this.table_[slot] = termId;
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Tokenizer.fold(text.charAt(i));
+        }
+        // Spread the high bits into the low bits used to pick a slot
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String term, CharSequence text, int start, int end) {
+        if (term.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (term.charAt(i - start) != Tokenizer.fold(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TermDictionary forwardDictionary() {
+        if (this.dictionary_ == null) {
+            this.dictionary_ = new TermDictionary(this, false);
+        }
+        return this.dictionary_;
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == CHAR_WILDCARD_ANY || c == CHAR_WILDCARD_ONE;
+    }
+
+    /**
+     * Matches a term against a pattern, backtracking to the last * on a mismatch.
+     */
+    private static boolean matchesPattern(String term, String pattern) {
+        int termIndex = 0;
+        int patternIndex = 0;
+        int lastStar = -1;
+        int termIndexAtStar = 0;
+        while (termIndex < term.length()) {
+            if (patternIndex < pattern.length() && pattern.charAt(patternIndex) == CHAR_WILDCARD_ANY) {
+                lastStar = patternIndex++;
+                termIndexAtStar = termIndex;
+            } else if (patternIndex < pattern.length()
+                    && (pattern.charAt(patternIndex) == CHAR_WILDCARD_ONE
+                    || pattern.charAt(patternIndex) == term.charAt(termIndex))) {
+                patternIndex++;
+                termIndex++;
+            } else if (lastStar >= 0) {
+                patternIndex = lastStar + 1;
+                termIndex = ++termIndexAtStar;
+            } else {
+                return false;
+            }
+        }
+        while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == CHAR_WILDCARD_ANY) {
+            patternIndex++;
+        }
+        return patternIndex == pattern.length();
+    }
+}
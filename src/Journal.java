@@ -0,0 +1,402 @@
+/**
+ * Journal.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the modifications made to a text file since it was last saved.
+ * Every add, delete, clear and sort is appended to the journal before it is applied,
+ * so the session can be recovered if the process dies before saving:
+ *      long baseSize = journal.recover();          // -1 if there is nothing to recover
+ *      ... load the file, truncated to baseSize ...
+ *      journal.replay(handler);
+ * Records are written straight to the journal file, and a background task forces them
+ * to disk at a fixed interval, committing every record written in between at once.
+ * Once the file has been saved, the journal is checkpointed, and it is deleted once the
+ * saved file is in place. A checkpointed journal found on disk therefore means that the
+ * save may still have to be moved into place.
+ *
+ * The journal starts with a header holding the size of the file it was started on.
+ * Each record is laid out as [type][payload length][payload][CRC32], and replaying
+ * stops at the first record that is incomplete or fails its checksum.
+ */
+public class Journal {
+
+    /**
+     * Constants
+     */
+    private static final int MAGIC_HEADER = 0x54424A31; // "TBJ1"
+    private static final int SIZE_HEADER = 4 + 8;
+    private static final int SIZE_RECORD_OVERHEAD = 1 + 4 + 4;
+    private static final long INTERVAL_GROUP_COMMIT_MILLIS = 100;
+    private static final long TIMEOUT_COMMITTER_STOP_MILLIS = 60000;
+
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final byte TYPE_CLEAR = 3;
+    private static final byte TYPE_SORT = 4;
+    private static final byte TYPE_CHECKPOINT = 5;
+
+    /**
+     * Receives the operations read back from the journal.
+     */
+    public interface Handler {
+        void add(String line);
+        void delete(int index);
+        void clear();
+        void sort(SortOrder order);
+    }
+
+    /**
+     * Properties
+     */
+    private final File file_;
+    private final AtomicBoolean isDirty_;
+    private FileChannel channel_;
+    private ScheduledExecutorService committer_;
+    private long validSize_;
+    private boolean isCheckpointed_;
+
+    /**
+     * Constructs a journal stored in the specified file. Nothing is created on disk
+     * until the first operation is logged.
+     * @param file the journal file
+     */
+    public Journal(File file) {
+        this.file_ = file;
+        this.isDirty_ = new AtomicBoolean(false);
+        this.channel_ = null;
+        this.committer_ = null;
+        this.validSize_ = 0;
+        this.isCheckpointed_ = false;
+    }
+
+    /**
+     * Returns the journal file accompanying the specified text file.
+     * @param textFile a text file
+     * @return the journal file of the text file
+     */
+    public static File fileFor(File textFile) {
+        return new File(textFile.getPath() + ".journal");
+    }
+
+    /**
+     * Checks the journal left behind by a previous session. A journal that ends with
+     * a checkpoint belongs to a session whose save was written completely, and is kept
+     * until discard() is called, once the saved file is known to be in place.
+     * @return the size of the text file when the journal was started, or -1 if there
+     *         is nothing to recover
+     * @throws IOException exception thrown when the journal cannot be read
+     */
+    public long recover() throws IOException {
+        if (!this.file_.exists()) {
+            return -1;
+        }
+
+        long baseSize = -1;
+        this.isCheckpointed_ = false;
+        try (DataInputStream input = this.openForReading()) {
+            if (this.file_.length() >= SIZE_HEADER && input.readInt() == MAGIC_HEADER) {
+                baseSize = input.readLong();
+                this.validSize_ = SIZE_HEADER;
+
+                Record record;
+                while ((record = Record.read(input)) != null) {
+                    this.validSize_ += record.size();
+                    this.isCheckpointed_ = record.type_ == TYPE_CHECKPOINT;
+                }
+            }
+        }
+
+        if (this.isCheckpointed_) {
+            return -1;
+        }
+        if (baseSize < 0) {
+            this.delete();
+            return -1;
+        }
+        return baseSize;
+    }
+
+    /**
+     * Returns whether the journal found by recover() ended with a checkpoint, meaning
+     * that the session which wrote it had finished saving.
+     * @return if the recovered journal was checkpointed
+     */
+    public boolean isCheckpointed() {
+        return this.isCheckpointed_;
+    }
+
+    /**
+     * Feeds the operations recovered from the journal to the handler, then reopens the
+     * journal so that new operations are logged after them.
+     * @param handler a handler applying the operations
+     * @throws IOException exception thrown when the journal cannot be read
+     */
+    public void replay(Handler handler) throws IOException {
+        try (DataInputStream input = this.openForReading()) {
+            input.skipBytes(SIZE_HEADER);
+
+            long position = SIZE_HEADER;
+            Record record;
+            while (position < this.validSize_ && (record = Record.read(input)) != null) {
+                position += record.size();
+                record.applyTo(handler);
+            }
+        }
+
+        // Drop any torn record at the end before appending to the journal again
+        this.channel_ = FileChannel.open(this.file_.toPath(), StandardOpenOption.WRITE);
+        this.channel_.truncate(this.validSize_);
+        this.startCommitter();
+    }
+
+    /**
+     * Logs the addition of a line.
+     * @param line the content of the line
+     * @param baseSize the size of the text file on disk, recorded if the journal is new
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void logAdd(String line, long baseSize) throws IOException {
+        this.write(TYPE_ADD, line.getBytes(StandardCharsets.UTF_8), baseSize);
+    }
+
+    /**
+     * Logs the removal of the line at the specified index.
+     * @param index the index of the line
+     * @param baseSize the size of the text file on disk, recorded if the journal is new
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void logDelete(int index, long baseSize) throws IOException {
+        this.write(TYPE_DELETE, ByteBuffer.allocate(4).putInt(index).array(), baseSize);
+    }
+
+    /**
+     * Logs the removal of all lines.
+     * @param baseSize the size of the text file on disk, recorded if the journal is new
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void logClear(long baseSize) throws IOException {
+        this.write(TYPE_CLEAR, new byte[0], baseSize);
+    }
+
+    /**
+     * Logs the sorting of all lines.
+     * @param order the order of the lines
+     * @param baseSize the size of the text file on disk, recorded if the journal is new
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void logSort(SortOrder order, long baseSize) throws IOException {
+        this.write(TYPE_SORT, order.toOptions().getBytes(StandardCharsets.UTF_8), baseSize);
+    }
+
+    /**
+     * Returns the number of bytes logged in the journal.
+     * @return the size of the journal
+     */
+    public long size() {
+        return this.validSize_;
+    }
+
+    /**
+     * Marks every logged operation as saved into the text file and closes the journal,
+     * keeping it on disk until discard() is called. The saved content must already have
+     * been written, but it may not have been forced to disk yet: once the journal is
+     * discarded, a crash can then lose the save, as far as the fsync policy allows.
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void checkpoint() throws IOException {
+        if (this.channel_ == null) {
+            return;
+        }
+
+        this.stopCommitter();
+        this.append(TYPE_CHECKPOINT, new byte[0]);
+        this.channel_.force(false);
+        this.channel_.close();
+        this.channel_ = null;
+    }
+
+    /**
+     * Deletes a checkpointed journal, once the saved file is in place.
+     */
+    public void discard() {
+        this.delete();
+    }
+
+    /**
+     * Forces all logged operations to disk and closes the journal, keeping it on disk.
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public void close() throws IOException {
+        if (this.channel_ == null) {
+            return;
+        }
+
+        this.stopCommitter();
+        this.channel_.force(false);
+        this.channel_.close();
+        this.channel_ = null;
+    }
+
+    private void write(byte type, byte[] payload, long baseSize) throws IOException {
+        if (this.channel_ == null) {
+            this.create(baseSize);
+        }
+        this.append(type, payload);
+        this.isDirty_.set(true);
+    }
+
+    private void create(long baseSize) throws IOException {
+        this.channel_ = FileChannel.open(this.file_.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(SIZE_HEADER);
+        header.putInt(MAGIC_HEADER).putLong(baseSize).flip();
+        this.writeFully(header, 0);
+        this.validSize_ = SIZE_HEADER;
+
+        this.startCommitter();
+    }
+
+    private void append(byte type, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(SIZE_RECORD_OVERHEAD + payload.length);
+        record.put(type).putInt(payload.length).put(payload);
+        record.putInt(Record.checksum(type, payload));
+        record.flip();
+
+        this.writeFully(record, this.validSize_);
+        this.validSize_ += record.capacity();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += this.channel_.write(buffer, position);
+        }
+    }
+
+    /**
+     * Starts the background task forcing the journal to disk. All the records written
+     * within one interval share a single force.
+     */
+    private void startCommitter() {
+        this.committer_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final FileChannel channel = this.channel_;
+        this.committer_.scheduleWithFixedDelay(() -> {
+            if (this.isDirty_.getAndSet(false)) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    // Retry on the next interval
+                    this.isDirty_.set(true);
+                }
+            }
+        }, INTERVAL_GROUP_COMMIT_MILLIS, INTERVAL_GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background task, letting a force in progress finish. Interrupting the
+     * task instead would close the channel under it, and the journal with it.
+     */
+    private void stopCommitter() {
+        if (this.committer_ == null) {
+            return;
+        }
+        this.committer_.shutdown();
+        try {
+            this.committer_.awaitTermination(TIMEOUT_COMMITTER_STOP_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.committer_ = null;
+        this.isDirty_.set(false);
+    }
+
+    private void delete() {
+        this.file_.delete();
+        this.validSize_ = 0;
+    }
+
+    private DataInputStream openForReading() throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(this.file_)));
+    }
+
+    /**
+     * A single operation read back from the journal.
+     */
+    private static class Record {
+        private final byte type_;
+        private final byte[] payload_;
+
+        private Record(byte type, byte[] payload) {
+            this.type_ = type;
+            this.payload_ = payload;
+        }
+
+        /**
+         * Reads the next record from the stream.
+         * @return the record, or null if the stream ends or the record is corrupted
+         */
+        static Record read(DataInputStream input) throws IOException {
+            try {
+                byte type = input.readByte();
+                int length = input.readInt();
+                if (type < TYPE_ADD || type > TYPE_CHECKPOINT || length < 0 || length > input.available()) {
+                    return null;
+                }
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                if (input.readInt() != checksum(type, payload)) {
+                    return null;
+                }
+                return new Record(type, payload);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        static int checksum(byte type, byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload, 0, payload.length);
+            return (int) crc.getValue();
+        }
+
+        int size() {
+            return SIZE_RECORD_OVERHEAD + this.payload_.length;
+        }
+
+        void applyTo(Handler handler) {
+            switch (this.type_) {
+                case TYPE_ADD:
+                    handler.add(new String(this.payload_, StandardCharsets.UTF_8));
+                    break;
+                case TYPE_DELETE:
+                    handler.delete(ByteBuffer.wrap(this.payload_).getInt());
+                    break;
+                case TYPE_CLEAR:
+                    handler.clear();
+                    break;
+                case TYPE_SORT:
+                    handler.sort(SortOrder.parse(new String(this.payload_, StandardCharsets.UTF_8)));
+                    break;
+            }
+        }
+    }
+}
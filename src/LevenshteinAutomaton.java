@@ -0,0 +1,133 @@
+/**
+ * LevenshteinAutomaton.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+
+/**
+ * An automaton accepting the words within a maximum number of edits (insertions,
+ * deletions and substitutions of single characters) of a given word. States are rows
+ * of the edit distance table, so the automaton can be stepped one character at a time
+ * along a term and abandoned as soon as no continuation can match:
+ *      LevenshteinAutomaton automaton = new LevenshteinAutomaton("lorem", 1);
+ *      int[] state = automaton.start();
+ *      for (char c : "lorme".toCharArray()) {
+ *          state = automaton.step(state, c);
+ *      }
+ *      automaton.isMatch(state);       // false: a transposition takes two edits
+ * Walking a sorted term dictionary, terms sharing a prefix share the states of that
+ * prefix, and a prefix leading to a dead state rules out every term starting with it.
+ * nextLiveChar() then tells the walk which character to seek to, since only the
+ * characters of the word can bring some states back to life.
+ */
+public class LevenshteinAutomaton {
+
+    /**
+     * Properties
+     */
+    private final String word_;
+    private final int maxEdits_;
+    private final char[] wordChars_;
+
+    /**
+     * Constructs an automaton for the words close to the specified one.
+     * @param word the word to match, already case-folded
+     * @param maxEdits the maximum edit distance of a match
+     */
+    public LevenshteinAutomaton(String word, int maxEdits) {
+        this.word_ = word;
+        this.maxEdits_ = maxEdits;
+        this.wordChars_ = distinctSortedChars(word);
+    }
+
+    /**
+     * Returns the state before any character has been read.
+     * @return the initial state
+     */
+    public int[] start() {
+        int[] state = new int[this.word_.length() + 1];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = Math.min(i, this.maxEdits_ + 1);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the state after reading one more character.
+     * @param state the current state, which is not modified
+     * @param c the next character, already case-folded
+     * @return the next state
+     */
+    public int[] step(int[] state, char c) {
+        return this.step(state, c, false);
+    }
+
+    /**
+     * Returns the smallest character after the specified one that leads from the state
+     * to a state that is not dead.
+     * @param state a state
+     * @param c a character
+     * @return the next character leading to a live state, or -1 if there is none
+     */
+    public int nextLiveChar(int[] state, char c) {
+        // Characters absent from the word all lead to the same state
+        if (c < Character.MAX_VALUE && this.canMatch(this.step(state, c, true))) {
+            return c + 1;
+        }
+        for (char wordChar : this.wordChars_) {
+            if (wordChar > c && this.canMatch(this.step(state, wordChar))) {
+                return wordChar;
+            }
+        }
+        return -1;
+    }
+
+    private int[] step(int[] state, char c, boolean isAbsentFromWord) {
+        int[] next = new int[state.length];
+        next[0] = Math.min(state[0] + 1, this.maxEdits_ + 1);
+        for (int i = 1; i < state.length; i++) {
+            boolean isSame = !isAbsentFromWord && this.word_.charAt(i - 1) == c;
+            int substitution = state[i - 1] + (isSame ? 0 : 1);
+            int insertion = state[i] + 1;
+            int deletion = next[i - 1] + 1;
+            next[i] = Math.min(Math.min(substitution, insertion), Math.min(deletion, this.maxEdits_ + 1));
+        }
+        return next;
+    }
+
+    /**
+     * Checks whether the characters read so far are within the edit distance.
+     * @param state a state
+     * @return if the state is accepting
+     */
+    public boolean isMatch(int[] state) {
+        return state[state.length - 1] <= this.maxEdits_;
+    }
+
+    /**
+     * Checks whether reading more characters could still lead to a match.
+     * @param state a state
+     * @return if the state is not dead
+     */
+    public boolean canMatch(int[] state) {
+        for (int distance : state) {
+            if (distance <= this.maxEdits_) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char[] distinctSortedChars(String word) {
+        char[] chars = word.toCharArray();
+        Arrays.sort(chars);
+        int count = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                chars[count++] = chars[i];
+            }
+        }
+        return Arrays.copyOf(chars, count);
+    }
+}
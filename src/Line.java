@@ -5,39 +5,34 @@
  * This class is the abstraction of a line of text inside the file.
  * It stores extra information than a string, so as to facilitate
  * more advanced operations required by the TextBuddy application.
+ *
+ * A line does not store its own line number. Instead it carries a stable id
+ * handed out by the LinesList it belongs to, and the list derives the line
+ * number from the position of that id.
+ *
+ * The words of a line are not stored; the InvertedIndex tokenizes the content
+ * in place whenever the line is indexed.
  */
 public class Line implements Comparable<Line> {
 
-    private static final String STRING_DELIMITER_WORD = "\\s+";
-
-    private int number_;
+    private int id_;
     private final String content_;
-    private final String[] words_;
 
-    public Line(String content, int number) {
-        this.number_ = number;
+    public Line(String content, int id) {
+        this.id_ = id;
         this.content_ = content;
-        this.words_ = content.toLowerCase().split(STRING_DELIMITER_WORD);
-    }
-
-    public String[] getWords() {
-        return this.words_;
     }
 
     public String getContent() {
         return this.content_;
     }
 
-    public int getNumber() {
-        return this.number_;
-    }
-
-    public void setNumber(int newNumber) {
-        this.number_ = newNumber;
+    public int getId() {
+        return this.id_;
     }
 
-    public int getDisplayNumber() {
-        return this.number_ + 1;
+    public void setId(int newId) {
+        this.id_ = newId;
     }
 
     @Override
@@ -46,7 +41,7 @@ public class Line implements Comparable<Line> {
         if (this == another) return true;
         if (!(another instanceof Line)) return false;
         Line l = (Line) another;
-        return this.content_.equals(l.content_) && this.number_ == l.number_;
+        return this.content_.equals(l.content_) && this.id_ == l.id_;
     }
 
     @Override
@@ -55,7 +50,7 @@ public class Line implements Comparable<Line> {
         if (comparison != 0) {
             return comparison;
         }
-        return this.number_ - another.number_;
+        return this.id_ - another.id_;
     }
 }
 
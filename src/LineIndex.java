@@ -0,0 +1,30 @@
+/**
+ * LineIndex.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+/**
+ * An index over the content of lines, filled one line at a time in increasing id
+ * order. The indices of consecutive blocks of lines can be built separately and
+ * merged in order afterwards, which lets LinesList build them on all cores:
+ *      InvertedIndex index = firstBlockIndex;
+ *      index.merge(secondBlockIndex, firstBlockSize);
+ * @param <T> the type of the index itself
+ */
+public interface LineIndex<T extends LineIndex<T>> {
+
+    /**
+     * Indexes the content of a line. The id must not be smaller than any id indexed
+     * before it.
+     * @param lineId the id of the line
+     * @param content the content of the line
+     */
+    void add(int lineId, CharSequence content);
+
+    /**
+     * Appends all the entries of another index, whose line ids are shifted by an offset.
+     * @param other an index of the lines following the lines of this index
+     * @param idOffset the id in this index of the line with id 0 in the other index
+     */
+    void merge(T other, int idOffset);
+}
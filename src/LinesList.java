@@ -4,40 +4,83 @@
  */
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * This class is the abstraction of the list of lines contained in a file.
  * It does not take care of I/O operations (this is taken care by the TextFile
  * class instead), but it takes care of the core functionality implemented by
  * TextBuddy like: add, delete, display, clear, search, sort, etc.
+ *
+ * Lines are stored by their stable id, and a PositionTree maps between ids and
+ * positions. Getting, removing and numbering a line by its position are therefore
+ * all O(log n), and removing a line never has to shift or renumber later lines.
+ *
+ * Words are indexed in an InvertedIndex of compressed posting lists of line ids.
+ * Since ids are in line order, the posting lists are in line order as well.
+ * Regular expression searches use a TrigramIndex, which is built the first time
+ * such a search is made and kept up to date from then on.
+ *
+ * Substring searches can be answered by a SuffixArray once it is enabled. The array
+ * is built on a background thread and is immutable, so lines added after it was built
+ * are scanned, and a new array is built once they become too many. Until the first
+ * array is ready, all lines are scanned.
+ *
+ * The results of recent queries are kept in a QueryCache. Adding a line only drops
+ * the queries it may match, while the other changes renumber lines and drop them all.
  */
 public class LinesList {
 
     /**
      * Constants
      */
+    private static final Error ERROR_QUERY_NOT_RANKED = new Error("Only word queries can be ranked");
+
     private static final LineComparator COMPARATOR_LINES = new LineComparator();
 
+    private static final int COUNT_SLOTS_MIN_COMPACTION = 1024;
+    private static final int COUNT_LINES_INDEX_BLOCK = 1 << 16;
+    private static final int COUNT_LINES_RADIX_SORT = 1 << 12;
+    private static final int COUNT_LINES_UNINDEXED_MIN = 1 << 10;
+    private static final int DIVISOR_LINES_UNINDEXED = 4;
+    private static final int CAPACITY_QUERY_CACHE = 256;
+
+    private static final String STRING_NAME_THREAD_SUFFIX_ARRAY = "suffix-array-builder";
+
     /**
      * Properties
      */
-    private ArrayList<Line> lines_;
-    private HashMap<String, Set<Line>> searchMap_;
-    private ArrayList<String> contentCacheList_;
+    private ArrayList<Line> linesById_;
+    private PositionTree positions_;
+    private InvertedIndex searchIndex_;
+    private TrigramIndex trigramIndex_;
+    private SuffixArray suffixArray_;
+    private FutureTask<SuffixArray> pendingSuffixArray_;
+    private boolean isSubstringIndexed_;
+    private final QueryCache queryCache_;
+    private final List<String> contentView_;
 
     /**
      * Constructs an empty list of lines
      */
     public LinesList() {
+        this.contentView_ = new ContentView();
+        this.isSubstringIndexed_ = false;
+        this.queryCache_ = new QueryCache(CAPACITY_QUERY_CACHE);
         this.initializeProperties();
     }
 
     private void initializeProperties() {
-        this.lines_ = new ArrayList<>();
-        this.searchMap_ = new HashMap<>();
-        this.contentCacheList_ = new ArrayList<>();
+        this.linesById_ = new ArrayList<>();
+        this.positions_ = new PositionTree();
+        this.searchIndex_ = new InvertedIndex();
+        this.trigramIndex_ = null;
+        this.resetSuffixArray();
     }
 
     /**
@@ -45,6 +88,7 @@ public class LinesList {
      */
     public void clear() {
         this.initializeProperties();
+        this.queryCache_.invalidateAll();
     }
 
     /**
@@ -56,37 +100,151 @@ public class LinesList {
     public int add(String text) {
         // Append to the end, so obviously the line number is the
         // size of the list before adding
-        int lineNumber = this.lines_.size();
+        int lineNumber = this.positions_.size();
 
-        Line line = new Line(text, lineNumber);
-        this.lines_.add(line);
+        Line line = new Line(text, this.positions_.append());
+        this.linesById_.add(line);
 
         // Index the words inside the line
         this.indexWords(line);
-
-        // Add the line content to cache
-        this.contentCacheList_.add(text);
+        this.updateSuffixArray();
+        this.queryCache_.invalidateLine(text);
 
         return lineNumber;
     }
 
     /**
-     * Searches for a word inside the search index and returns a set of line numbers
-     * where the word was found.
-     * @param word a string
-     * @return a set containing the line numbers where the word was found
+     * Appends lines to the end of the list together with an index of their words,
+     * built beforehand with the lines numbered from 0. This saves indexing the lines
+     * again when they were already indexed elsewhere, for instance on another thread.
+     * @param lines the lines to append, in order
+     * @param linesIndex an index of the words of the lines
      */
-    public Set<Integer> search(String word) {
-        Set<Line> lineSet = this.searchMap_.get(word.toLowerCase());
+    public void addAll(List<String> lines, InvertedIndex linesIndex) {
+        int firstId = this.positions_.slots();
+        for (String text : lines) {
+            this.linesById_.add(new Line(text, this.positions_.append()));
+        }
+        this.searchIndex_.merge(linesIndex, firstId);
+        if (this.trigramIndex_ != null) {
+            List<Line> addedLines = this.linesById_.subList(firstId, this.linesById_.size());
+            this.trigramIndex_.merge(indexInParallel(addedLines, TrigramIndex::new), firstId);
+        }
+        this.updateSuffixArray();
+
+        // Checking the words of every line would cost more than answering the queries again
+        this.queryCache_.invalidateAll();
+    }
 
-        if (lineSet == null) {
+    /**
+     * Keeps a suffix array of the lines from now on, so that substring searches do not
+     * have to scan every line. The array is built on a background thread.
+     */
+    public void enableSubstringIndex() {
+        this.isSubstringIndexed_ = true;
+        this.resetSuffixArray();
+    }
+
+    /**
+     * Searches for a query inside the search index and returns the line numbers where
+     * the query was matched. The query may be a single word, words combined with
+     * the AND, OR and NOT operators understood by Query, a substring between single
+     * quotes, or a regular expression between slashes understood by RegexQuery.
+     * Results are served from the query cache when the query was searched for before.
+     * @param query a query string
+     * @return the line numbers where the query was matched in increasing order, or null if none
+     * @throws Error error thrown when the query is invalid
+     */
+    public SearchResults search(String query) throws Error {
+        SearchResults results = this.queryCache_.get(query);
+        if (results == null) {
+            // Regular expressions and substrings may match a line without any of its
+            // words, so they do not require words
+            Set<String> requiredWords = null;
+            String substring = Query.substringOf(query);
+            if (RegexQuery.isRegex(query)) {
+                results = this.search(RegexQuery.parse(query));
+            } else if (substring != null) {
+                results = this.searchSubstring(substring);
+            } else {
+                Query parsedQuery = Query.parse(query);
+                IdCursor matches = parsedQuery.cursor(this.searchIndex_, this.positions_.slots());
+                results = this.positionsOf(matches, content -> true);
+                requiredWords = parsedQuery.requiredWords();
+            }
+            this.queryCache_.put(query, results, requiredWords);
+        }
+        return results.size() == 0 ? null : results;
+    }
+
+    /**
+     * Searches for a word query and returns the line numbers of the best matching lines,
+     * ranked with BM25 by the words of the query they contain. Only the best lines are
+     * numbered, however many lines match.
+     * @param query a query string, which must not be a substring or a regular expression
+     * @param count the number of lines to return at most
+     * @return the line numbers of the best lines, best first, or null if none
+     * @throws Error error thrown when the query is invalid or cannot be ranked
+     */
+    public int[] searchTop(String query, int count) throws Error {
+        if (RegexQuery.isRegex(query) || Query.substringOf(query) != null) {
+            throw ERROR_QUERY_NOT_RANKED;
+        }
+
+        Query parsedQuery = Query.parse(query);
+        IdCursor matches = parsedQuery.cursor(this.searchIndex_, this.positions_.slots());
+        int[] ids = new Bm25Ranker(this.searchIndex_).topIds(
+                matches, parsedQuery.scoredWords(), count, id -> this.linesById_.get(id) != null);
+        if (ids.length == 0) {
             return null;
         }
 
-        ArrayList<Integer> lineNumbers = lineSet.stream().map(Line::getNumber)
-                .collect(Collectors.toCollection(ArrayList::new));
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.positions_.rankOf(ids[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the cache of query results, which counts its hits and misses.
+     * @return the query cache of this list
+     */
+    public QueryCache getQueryCache() {
+        return this.queryCache_;
+    }
+
+    /**
+     * Searches for the lines matching a regular expression. The expression only runs
+     * on the lines containing the trigrams it requires.
+     */
+    private SearchResults search(RegexQuery regex) {
+        if (this.trigramIndex_ == null) {
+            this.trigramIndex_ = indexInParallel(this.linesById_, TrigramIndex::new);
+        }
+        IdCursor candidates = regex.candidates(this.trigramIndex_, this.positions_.slots());
+
+        return this.positionsOf(candidates, regex::matches);
+    }
 
-        return new CopyOnWriteArraySet<>(lineNumbers);
+    /**
+     * Searches for the lines containing a substring. The lines covered by the suffix
+     * array are looked up in it, and the lines added later are scanned.
+     */
+    private SearchResults searchSubstring(String substring) {
+        this.updateSuffixArray();
+        int covered = this.suffixArray_ == null ? 0 : this.suffixArray_.slots();
+        int[] indexedIds = this.suffixArray_ == null ? new int[0] : this.suffixArray_.idsContaining(substring);
+
+        int[] ids = Arrays.copyOf(indexedIds, indexedIds.length + this.positions_.slots() - covered);
+        int count = indexedIds.length;
+        for (int id = covered; id < this.positions_.slots(); id++) {
+            Line line = this.linesById_.get(id);
+            if (line != null && SuffixArray.contains(line.getContent(), substring)) {
+                ids[count++] = id;
+            }
+        }
+
+        return this.positionsOf(IdCursor.of(ids, count), content -> true);
     }
 
     /**
@@ -95,18 +253,31 @@ public class LinesList {
      * @return the removed line's content
      */
     public String remove(int index) {
+        Line removedLine = null;
         try {
-            Line removedLine = this.lines_.remove(index);
-            this.contentCacheList_.remove(index);
-
-            // Remove references
-            this.unindexWords(removedLine);
-
-            // Finally, return the removed line
-            return removedLine.getContent();
+            removedLine = this.getLine(index);
         } catch (IndexOutOfBoundsException e) {
             return null;
         }
+
+        // Mark the id as dead, which implicitly renumbers all later lines
+        this.positions_.remove(removedLine.getId());
+        this.linesById_.set(removedLine.getId(), null);
+        this.queryCache_.invalidateAll();
+
+        // The ids in the search index are left in place and skipped while searching,
+        // so removing a line does not have to touch the posting lists of its words,
+        // only the statistics ranking relies on
+        this.searchIndex_.remove(removedLine.getId(), removedLine.getContent());
+
+        // Reclaim the slots of removed lines once they outnumber the living ones
+        if (this.positions_.slots() >= COUNT_SLOTS_MIN_COMPACTION
+                && this.positions_.slots() > 2 * this.positions_.size()) {
+            this.compact();
+        }
+
+        // Finally, return the removed line
+        return removedLine.getContent();
     }
 
     /**
@@ -114,7 +285,7 @@ public class LinesList {
      * @return the number of lines in the list
      */
     public int count() {
-        return this.lines_.size();
+        return this.positions_.size();
     }
 
     /**
@@ -122,7 +293,35 @@ public class LinesList {
      * @return a list of content of all lines
      */
     public List<String> getAll() {
-        return this.contentCacheList_;
+        return this.contentView_;
+    }
+
+    /**
+     * Returns the content of the lines between the two indices. Only the first line is
+     * looked up in the position tree, and the following lines are read by walking the
+     * ids from there, so the cost depends on the number of lines returned rather than
+     * on the size of the list.
+     * @param from the index of the first line, inclusive
+     * @param to the index after the last line, exclusive
+     * @return a new list containing the content of the lines
+     * @throws IndexOutOfBoundsException exception thrown when the range is beyond the list's capacity
+     */
+    public List<String> getRange(int from, int to) throws IndexOutOfBoundsException {
+        if (from < 0 || to > this.count() || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + this.count());
+        }
+
+        ArrayList<String> lines = new ArrayList<>(to - from);
+        if (from == to) {
+            return lines;
+        }
+        for (int id = this.positions_.select(from); lines.size() < to - from; id++) {
+            Line line = this.linesById_.get(id);
+            if (line != null) {
+                lines.add(line.getContent());
+            }
+        }
+        return lines;
     }
 
     /**
@@ -132,7 +331,7 @@ public class LinesList {
      * @throws IndexOutOfBoundsException exception thrown when the index is beyond the list's capacity
      */
     public String get(int index) throws IndexOutOfBoundsException {
-        return this.contentCacheList_.get(index);
+        return this.getLine(index).getContent();
     }
 
     /**
@@ -142,54 +341,272 @@ public class LinesList {
      * @throws IndexOutOfBoundsException exception thrown when the index is beyond the list's capacity
      */
     public Line getLine(int index) throws IndexOutOfBoundsException {
-        return this.lines_.get(index);
+        return this.linesById_.get(this.positions_.select(index));
+    }
+
+    /**
+     * Returns the current position of the specified line in the list.
+     * @param line a line contained by this list
+     * @return the index of the line
+     */
+    public int positionOf(Line line) {
+        return this.positions_.rankOf(line.getId());
     }
 
     /**
-     * Sorts all the lines according to alphabetical order.
+     * Sorts all the lines according to alphabetical order. Large lists are sorted with
+     * a radix sort instead of comparisons, and then indexed again on all cores.
      */
     public void sort() {
-        this.lines_.sort(COMPARATOR_LINES);
+        ArrayList<Line> livingLines = this.getLivingLines();
+        Line[] lines = livingLines.toArray(new Line[livingLines.size()]);
+        if (lines.length >= COUNT_LINES_RADIX_SORT) {
+            RadixSorter.sort(lines);
+        } else {
+            Arrays.sort(lines, COMPARATOR_LINES);
+        }
+
+        // Re-establish ids in the new order
+        this.rebuild(new ArrayList<>(Arrays.asList(lines)));
+    }
 
-        // Re-establish line numbers
-        for (int i = 0; i < this.lines_.size(); i++) {
-            Line line = this.lines_.get(i);
-            line.setNumber(i);
+    /**
+     * Sorts all the lines in the specified order. The key of every line is computed
+     * once on all cores, and the keys are then sorted in place of the lines. Lines with
+     * equal keys keep their relative order.
+     * @param order the order of the lines
+     */
+    public void sort(SortOrder order) {
+        if (order.isAlphabetical()) {
+            this.sort();
+            return;
         }
 
-        this.contentCacheList_ = new ArrayList<>();
-        this.contentCacheList_.addAll(this.lines_.stream().map(Line::getContent).collect(Collectors.toList()));
+        ArrayList<Line> livingLines = this.getLivingLines();
+        Line[] keys = new Line[livingLines.size()];
+        IntStream.range(0, keys.length).parallel().forEach(
+                i -> keys[i] = new Line(order.keyOf(livingLines.get(i).getContent()), i));
+        if (keys.length >= COUNT_LINES_RADIX_SORT) {
+            RadixSorter.sort(keys);
+        } else {
+            Arrays.sort(keys, COMPARATOR_LINES);
+        }
+
+        // The id of every key is the position of its line before sorting
+        ArrayList<Line> lines = new ArrayList<>(keys.length);
+        for (Line key : keys) {
+            lines.add(livingLines.get(key.getId()));
+        }
+        this.rebuild(lines);
     }
 
     /**
-     * Perform indexing on all the words within the specified line.
-     * @param line the line containing words to index
+     * Drops the slots of removed lines by handing out consecutive ids to the living
+     * lines, which also drops the ids of removed lines from the search index.
      */
-    private void indexWords(Line line) {
-        for (String word : line.getWords()) {
-            // Check line set
-            Set<Line> lineSet = null;
-            if ((lineSet = this.searchMap_.get(word)) == null) {
-                // Create new set and assign to word
-                lineSet = new TreeSet<>();
-                this.searchMap_.put(word, lineSet);
+    private void compact() {
+        this.rebuild(this.getLivingLines());
+    }
+
+    /**
+     * Replaces all lines with the specified ones, giving them consecutive ids.
+     * @param lines the lines in their new order
+     */
+    private void rebuild(ArrayList<Line> lines) {
+        IntStream.range(0, lines.size()).parallel().forEach(i -> lines.get(i).setId(i));
+        this.searchIndex_ = indexInParallel(lines, InvertedIndex::new);
+        if (this.trigramIndex_ != null) {
+            this.trigramIndex_ = indexInParallel(lines, TrigramIndex::new);
+        }
+        this.linesById_ = lines;
+        this.positions_ = new PositionTree(lines.size());
+        this.resetSuffixArray();
+        this.queryCache_.invalidateAll();
+    }
+
+    /**
+     * Drops the suffix array, whose ids are no longer valid, and starts building a new
+     * one if substring indexing is enabled.
+     */
+    private void resetSuffixArray() {
+        // The stale build stops at its next phase instead of holding on to its memory
+        if (this.pendingSuffixArray_ != null) {
+            this.pendingSuffixArray_.cancel(true);
+            this.pendingSuffixArray_ = null;
+        }
+        this.suffixArray_ = null;
+        if (this.isSubstringIndexed_) {
+            this.buildSuffixArrayInBackground();
+        }
+    }
+
+    /**
+     * Takes the suffix array built in the background once it is ready, and starts
+     * building a new one when too many lines have been added since the last one.
+     */
+    private void updateSuffixArray() {
+        FutureTask<SuffixArray> pending = this.pendingSuffixArray_;
+        if (pending != null && pending.isDone()) {
+            this.pendingSuffixArray_ = null;
+            try {
+                this.suffixArray_ = pending.get();
+            } catch (InterruptedException | ExecutionException e) {
+                // The array could not be built, most likely for lack of memory, so the
+                // lines are scanned from now on
+                this.isSubstringIndexed_ = false;
             }
-            // Add line reference to set
-            lineSet.add(line);
         }
+
+        if (!this.isSubstringIndexed_ || this.pendingSuffixArray_ != null) {
+            return;
+        }
+        int unindexed = this.positions_.slots() - (this.suffixArray_ == null ? 0 : this.suffixArray_.slots());
+        if (unindexed >= COUNT_LINES_UNINDEXED_MIN && unindexed * DIVISOR_LINES_UNINDEXED > this.positions_.slots()) {
+            this.buildSuffixArrayInBackground();
+        }
+    }
+
+    /**
+     * Builds a suffix array of the current lines on a new background thread. The lines
+     * are immutable, so a copy of the list of lines is enough for the thread to work on.
+     * Cancelling the task interrupts the thread, which cancels the build.
+     */
+    private void buildSuffixArrayInBackground() {
+        List<Line> linesById = new ArrayList<>(this.linesById_);
+        FutureTask<SuffixArray> task = new FutureTask<>(
+                () -> new SuffixArray(linesById, Thread.currentThread()::isInterrupted));
+        Thread thread = new Thread(task, STRING_NAME_THREAD_SUFFIX_ARRAY);
+        thread.setDaemon(true);
+        thread.start();
+        this.pendingSuffixArray_ = task;
     }
 
     /**
-     * Removes indexing on all the words within the specified line.
-     * @param line the line to be removed
+     * Indexes the lines, which are listed by id, with the slots of removed lines left
+     * as null. Blocks of lines are indexed separately on the common fork-join pool, and
+     * the indices of the blocks are then joined in order.
+     * @param linesById the lines to index, numbered from 0
+     * @param newIndex creates an empty index
+     * @return an index of all the lines
      */
-    private void unindexWords(Line line) {
-        for (String word : line.getWords()) {
-            Set<Line> lineSet = this.searchMap_.get(word);
-            if (lineSet == null) {
-                continue;
+    private static <T extends LineIndex<T>> T indexInParallel(List<Line> linesById, Supplier<T> newIndex) {
+        List<ForkJoinTask<T>> blocks = new ArrayList<>();
+        for (int from = 0; from < linesById.size(); from += COUNT_LINES_INDEX_BLOCK) {
+            List<Line> block = linesById.subList(from, Math.min(linesById.size(), from + COUNT_LINES_INDEX_BLOCK));
+            ForkJoinTask<T> task = ForkJoinTask.adapt(() -> {
+                T blockIndex = newIndex.get();
+                for (int i = 0; i < block.size(); i++) {
+                    if (block.get(i) != null) {
+                        blockIndex.add(i, block.get(i).getContent());
+                    }
+                }
+                return blockIndex;
+            });
+            blocks.add(blocks.isEmpty() ? task : task.fork());
+        }
+
+        if (blocks.isEmpty()) {
+            return newIndex.get();
+        }
+
+        // The first block is indexed on this thread while the others are forked
+        T index = blocks.get(0).invoke();
+        for (int i = 1; i < blocks.size(); i++) {
+            index.merge(blocks.get(i).join(), i * COUNT_LINES_INDEX_BLOCK);
+        }
+        return index;
+    }
+
+    /**
+     * Converts the ids produced by the cursor to the current positions of their lines,
+     * skipping the ids of removed lines and of the lines whose content is rejected.
+     * @param cursor a cursor over line ids
+     * @param isMatch checks the content of the lines
+     * @return the positions of the living lines, in increasing order
+     */
+    private SearchResults positionsOf(IdCursor cursor, Predicate<String> isMatch) {
+        int[] positions = new int[Math.min(cursor.cost(), this.positions_.size())];
+        int count = 0;
+
+        int id;
+        while ((id = cursor.next()) != IdCursor.END) {
+            Line line = this.linesById_.get(id);
+            if (line != null && isMatch.test(line.getContent())) {
+                positions[count++] = this.positions_.rankOf(id);
+            }
+        }
+
+        return new SearchResults(positions, count);
+    }
+
+    /**
+     * Returns all living lines in their current order.
+     * @return a new list containing all living lines
+     */
+    private ArrayList<Line> getLivingLines() {
+        ArrayList<Line> lines = new ArrayList<>(this.positions_.size());
+        for (Line line : this.linesById_) {
+            if (line != null) {
+                lines.add(line);
             }
-            lineSet.remove(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Perform indexing on all the words within the specified line, and on its
+     * trigrams once the trigram index exists.
+     * @param line the line containing words to index
+     */
+    private void indexWords(Line line) {
+        this.searchIndex_.add(line.getId(), line.getContent());
+        if (this.trigramIndex_ != null) {
+            this.trigramIndex_.add(line.getId(), line.getContent());
+        }
+    }
+
+    /**
+     * Read-only view of the content of all the lines. Random access goes through the
+     * position tree, while iteration walks the slots directly.
+     */
+    private class ContentView extends AbstractList<String> {
+        @Override
+        public String get(int index) {
+            return LinesList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return LinesList.this.count();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int nextId_ = this.skipRemoved(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.nextId_ < LinesList.this.linesById_.size();
+                }
+
+                @Override
+                public String next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    String content = LinesList.this.linesById_.get(this.nextId_).getContent();
+                    this.nextId_ = this.skipRemoved(this.nextId_ + 1);
+                    return content;
+                }
+
+                private int skipRemoved(int id) {
+                    while (id < LinesList.this.linesById_.size() && LinesList.this.linesById_.get(id) == null) {
+                        id++;
+                    }
+                    return id;
+                }
+            };
         }
     }
 
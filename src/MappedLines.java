@@ -0,0 +1,249 @@
+/**
+ * MappedLines.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A read-only list of the lines of a file, backed by a memory mapping of the file
+ * instead of one String per line. Opening the file only scans it for line breaks
+ * and records where each line starts; the content of a line is decoded from the
+ * mapping whenever it is requested:
+ *      MappedLines lines = new MappedLines(file);
+ *      String third = lines.get(2);
+ * Files larger than 2 GB are mapped as several regions.
+ */
+public class MappedLines extends AbstractList<String> {
+
+    /**
+     * Constants
+     */
+    private static final long SIZE_REGION_MAX = 1L << 30;
+    private static final int CAPACITY_OFFSETS_INITIAL = 1024;
+    private static final int COUNT_LINES_SEARCH_BLOCK = 1 << 16;
+
+    private static final byte BYTE_LINE_FEED = '\n';
+    private static final byte BYTE_CARRIAGE_RETURN = '\r';
+
+    /**
+     * Properties
+     */
+    private final Charset charset_;
+    private final MappedByteBuffer[] regions_;
+    private final long fileSize_;
+    private long[] lineStarts_;
+    private int count_;
+
+    /**
+     * Maps the file into memory and finds the start of every line.
+     * @param file the file to map
+     * @throws IOException exception thrown when the file cannot be opened for reading
+     */
+    public MappedLines(File file) throws IOException {
+        this.charset_ = Charset.defaultCharset();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.fileSize_ = channel.size();
+            int regionCount = (int) ((this.fileSize_ + SIZE_REGION_MAX - 1) / SIZE_REGION_MAX);
+            this.regions_ = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long start = i * SIZE_REGION_MAX;
+                this.regions_[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(SIZE_REGION_MAX, this.fileSize_ - start));
+            }
+        }
+
+        this.indexLineStarts();
+        this.trimTrailingBlankLines();
+    }
+
+    /**
+     * Returns the content of the line at the specified index, decoded from the mapping.
+     * @param index the index of the line
+     * @return the content of the line
+     * @throws IndexOutOfBoundsException exception thrown when the index is beyond the number of lines
+     */
+    @Override
+    public String get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= this.count_) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count_);
+        }
+
+        long start = this.lineStarts_[index];
+        long end = this.lineStarts_[index + 1];
+
+        // Drop the line terminator, which is either \n, \r\n or \r
+        if (end > start && this.byteAt(end - 1) == BYTE_LINE_FEED) {
+            end--;
+        }
+        if (end > start && this.byteAt(end - 1) == BYTE_CARRIAGE_RETURN) {
+            end--;
+        }
+
+        return this.charset_.decode(this.bytesBetween(start, end)).toString();
+    }
+
+    /**
+     * Returns the number of lines in the file.
+     * @return the number of lines
+     */
+    @Override
+    public int size() {
+        return this.count_;
+    }
+
+    /**
+     * Searches for a query inside the file. The file has no search index, so lines are
+     * indexed one block at a time and the query is evaluated against each block, which
+     * keeps the memory used by a search bounded by the size of a block. Regular
+     * expressions and substrings are simply looked for in every line.
+     * @param query a query string
+     * @return the line numbers where the query was matched in increasing order, or null if none
+     * @throws Error error thrown when the query is invalid
+     */
+    public SearchResults search(String query) throws Error {
+        if (RegexQuery.isRegex(query)) {
+            return this.search(RegexQuery.parse(query));
+        }
+        String substring = Query.substringOf(query);
+        if (substring != null) {
+            return this.searchSubstring(substring);
+        }
+
+        Query parsedQuery = Query.parse(query);
+        int[] lineNumbers = new int[CAPACITY_OFFSETS_INITIAL];
+        int count = 0;
+
+        for (int from = 0; from < this.count_; from += COUNT_LINES_SEARCH_BLOCK) {
+            int to = Math.min(this.count_, from + COUNT_LINES_SEARCH_BLOCK);
+
+            InvertedIndex blockIndex = new InvertedIndex();
+            for (int i = from; i < to; i++) {
+                blockIndex.add(i - from, this.get(i));
+            }
+
+            IdCursor matches = parsedQuery.cursor(blockIndex, to - from);
+            int id;
+            while ((id = matches.next()) != IdCursor.END) {
+                if (count == lineNumbers.length) {
+                    lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+                }
+                lineNumbers[count++] = from + id;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        return new SearchResults(lineNumbers, count);
+    }
+
+    private SearchResults search(RegexQuery regex) {
+        return this.scan(regex::matches);
+    }
+
+    private SearchResults searchSubstring(String substring) {
+        return this.scan(line -> SuffixArray.contains(line, substring));
+    }
+
+    private SearchResults scan(Predicate<String> isMatch) {
+        int[] lineNumbers = new int[CAPACITY_OFFSETS_INITIAL];
+        int count = 0;
+        for (int i = 0; i < this.count_; i++) {
+            if (isMatch.test(this.get(i))) {
+                if (count == lineNumbers.length) {
+                    lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+                }
+                lineNumbers[count++] = i;
+            }
+        }
+        return count == 0 ? null : new SearchResults(lineNumbers, count);
+    }
+
+    /**
+     * Scans the mapping for line breaks. The start of every line is recorded, followed
+     * by one extra entry marking the end of the last line.
+     */
+    private void indexLineStarts() {
+        this.lineStarts_ = new long[CAPACITY_OFFSETS_INITIAL];
+        this.count_ = 0;
+
+        long lineStart = 0;
+        for (int r = 0; r < this.regions_.length; r++) {
+            MappedByteBuffer region = this.regions_[r];
+            long regionStart = r * SIZE_REGION_MAX;
+            int limit = region.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = region.get(i);
+                long next = regionStart + i + 1;
+                // A carriage return followed by a line feed leaves it to the line feed
+                boolean isLineEnd = b == BYTE_LINE_FEED
+                        || (b == BYTE_CARRIAGE_RETURN && (next == this.fileSize_ || this.byteAt(next) != BYTE_LINE_FEED));
+                if (isLineEnd) {
+                    this.appendLineStart(lineStart);
+                    lineStart = next;
+                }
+            }
+        }
+
+        // The last line may not be terminated by a line break
+        if (lineStart < this.fileSize_) {
+            this.appendLineStart(lineStart);
+        }
+
+        this.lineStarts_ = Arrays.copyOf(this.lineStarts_, this.count_ + 1);
+        this.lineStarts_[this.count_] = this.fileSize_;
+    }
+
+    private void appendLineStart(long lineStart) {
+        if (this.count_ + 1 >= this.lineStarts_.length) {
+            this.lineStarts_ = Arrays.copyOf(this.lineStarts_, this.lineStarts_.length * 2);
+        }
+        this.lineStarts_[this.count_++] = lineStart;
+    }
+
+    private void trimTrailingBlankLines() {
+        while (this.count_ > 0 && this.get(this.count_ - 1).trim().isEmpty()) {
+            this.count_--;
+        }
+    }
+
+    private byte byteAt(long position) {
+        return this.regions_[(int) (position / SIZE_REGION_MAX)].get((int) (position % SIZE_REGION_MAX));
+    }
+
+    /**
+     * Returns the bytes between the two positions, reading straight from the mapping
+     * unless they cross the boundary between two regions.
+     */
+    private ByteBuffer bytesBetween(long start, long end) {
+        if (start == end) {
+            return ByteBuffer.allocate(0);
+        }
+
+        int region = (int) (start / SIZE_REGION_MAX);
+        if (region == (int) ((end - 1) / SIZE_REGION_MAX)) {
+            ByteBuffer bytes = this.regions_[region].duplicate();
+            int offset = (int) (start % SIZE_REGION_MAX);
+            bytes.limit(offset + (int) (end - start));
+            bytes.position(offset);
+            return bytes;
+        }
+
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = this.byteAt(start + i);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * PositionTree.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+
+/**
+ * An indexed tree (Fenwick tree) over the stable ids of the lines inside a LinesList.
+ * Every line receives an id when it is appended, and ids are handed out in increasing
+ * order, so the relative order of ids is also the relative order of the lines. Removing
+ * a line only marks its id as dead, which means the position of a line is simply the
+ * number of living ids before it:
+ *      int position = positions.rankOf(id);      // O(log n)
+ *      int id = positions.select(position);      // O(log n)
+ * Line numbers therefore never need to be rewritten after a deletion.
+ */
+public class PositionTree {
+
+    /**
+     * Constants
+     */
+    private static final int CAPACITY_INITIAL = 16;
+
+    /**
+     * Properties
+     */
+    private int[] tree_;
+    private int slots_;
+    private int alive_;
+
+    /**
+     * Constructs an empty tree with no ids.
+     */
+    public PositionTree() {
+        this.tree_ = new int[CAPACITY_INITIAL + 1];
+        this.slots_ = 0;
+        this.alive_ = 0;
+    }
+
+    /**
+     * Constructs a tree where the ids from 0 to (count - 1) are all alive, in O(n).
+     * @param count the number of living ids
+     */
+    public PositionTree(int count) {
+        this.tree_ = new int[Math.max(count, CAPACITY_INITIAL) + 1];
+        for (int i = 1; i <= count; i++) {
+            this.tree_[i] += 1;
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                this.tree_[parent] += this.tree_[i];
+            }
+        }
+        this.slots_ = count;
+        this.alive_ = count;
+    }
+
+    /**
+     * Allocates a new living id after all the existing ones.
+     * @return the newly allocated id
+     */
+    public int append() {
+        int id = this.slots_;
+        int node = id + 1;
+        this.ensureCapacity(node);
+
+        // A Fenwick node covers the range (node - lowbit(node), node], which at this point
+        // only contains the new id and ids that were allocated before it
+        int lowerBound = node - (node & -node);
+        this.tree_[node] = 1 + this.prefix(id) - this.prefix(lowerBound);
+
+        this.slots_++;
+        this.alive_++;
+        return id;
+    }
+
+    /**
+     * Marks the specified id as dead, shifting the positions of all later ids down by one.
+     * The caller is responsible for making sure the id is currently alive.
+     * @param id the id to remove
+     */
+    public void remove(int id) {
+        for (int node = id + 1; node <= this.slots_; node += node & -node) {
+            this.tree_[node]--;
+        }
+        this.alive_--;
+    }
+
+    /**
+     * Returns the number of living ids that come before the specified id, which is
+     * the position of that id if it is alive.
+     * @param id an id
+     * @return the position of the id
+     */
+    public int rankOf(int id) {
+        return this.prefix(id);
+    }
+
+    /**
+     * Returns the id of the living id at the specified position.
+     * @param position the position, counting from 0
+     * @return the id at that position
+     * @throws IndexOutOfBoundsException exception thrown when the position is beyond the tree's size
+     */
+    public int select(int position) throws IndexOutOfBoundsException {
+        if (position < 0 || position >= this.alive_) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + this.alive_);
+        }
+
+        // Descend the implicit tree, skipping whole ranges while they contain
+        // fewer living ids than the remaining position
+        int node = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(this.slots_); step > 0; step >>= 1) {
+            int next = node + step;
+            if (next <= this.slots_ && this.tree_[next] <= remaining) {
+                node = next;
+                remaining -= this.tree_[next];
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the number of living ids.
+     * @return the number of living ids
+     */
+    public int size() {
+        return this.alive_;
+    }
+
+    /**
+     * Returns the number of ids ever allocated, including dead ones.
+     * @return the number of allocated ids
+     */
+    public int slots() {
+        return this.slots_;
+    }
+
+    /**
+     * Returns the number of living ids strictly before the specified id.
+     * @param id an id
+     * @return the number of living ids before it
+     */
+    private int prefix(int id) {
+        int sum = 0;
+        for (int node = id; node > 0; node -= node & -node) {
+            sum += this.tree_[node];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int node) {
+        if (node < this.tree_.length) {
+            return;
+        }
+        this.tree_ = Arrays.copyOf(this.tree_, Math.max(node + 1, this.tree_.length * 2));
+    }
+}
@@ -0,0 +1,421 @@
+/**
+ * PostingList.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+
+/**
+ * A compressed, sorted list of the line ids that contain a term. Ids are appended
+ * in increasing order and stored as variable-length encoded gaps (delta + varint),
+ * so a posting usually takes a single byte instead of a tree node:
+ *      PostingList postings = new PostingList();
+ *      postings.append(3);
+ *      postings.append(17);
+ *      IdCursor cursor = postings.cursor();
+ *      while ((id = cursor.next()) != IdCursor.END) { ... }
+ * Every SKIP_INTERVAL ids a skip entry is recorded, so cursors can jump close to a
+ * target id without decoding every gap before it.
+ *
+ * The positions of the term inside each line, counted in words, can be appended
+ * along with the ids:
+ *      postings.append(17, 0);
+ *      postings.append(17, 4);
+ * They are kept in a separate stream of gaps, one block per id ended by a 0, so that
+ * cursors which never ask for positions do not decode them. A cursor only skips over
+ * the blocks of the ids it passed once loadPositions() is called. Lists constructed
+ * without positions do not write the blocks at all. The number of positions of an id
+ * is the frequency of the term in that line, and the highest one is kept to bound the
+ * score of the term when ranking lines.
+ */
+public class PostingList {
+
+    /**
+     * Constants
+     */
+    private static final int CAPACITY_INITIAL = 4;
+    private static final int SKIP_INTERVAL = 64;
+    private static final int MASK_VARINT_PAYLOAD = 0x7F;
+    private static final int FLAG_VARINT_CONTINUATION = 0x80;
+    private static final int BITS_VARINT_PAYLOAD = 7;
+    private static final int POSITION_NONE = -1;
+    private static final byte BYTE_END_POSITIONS = 0;
+
+    /**
+     * Properties
+     */
+    private byte[] data_;
+    private int length_;
+    private int count_;
+    private int last_;
+    private int[] skipIds_;
+    private int[] skipOffsets_;
+    private int[] skipPositionOffsets_;
+    private int skipCount_;
+    private byte[] positions_;
+    private int positionsLength_;
+    private int lastPosition_;
+    private int frequency_;
+    private int maxFrequency_;
+    private final boolean isPositional_;
+
+    /**
+     * Constructs an empty posting list that records positions.
+     */
+    public PostingList() {
+        this(true);
+    }
+
+    /**
+     * Constructs an empty posting list.
+     * @param isPositional whether positions can be appended along with the ids
+     */
+    public PostingList(boolean isPositional) {
+        this.isPositional_ = isPositional;
+        this.data_ = new byte[CAPACITY_INITIAL];
+        this.length_ = 0;
+        this.count_ = 0;
+        this.last_ = IdCursor.END;
+        this.skipIds_ = null;
+        this.skipOffsets_ = null;
+        this.skipPositionOffsets_ = null;
+        this.skipCount_ = 0;
+        this.positions_ = new byte[CAPACITY_INITIAL];
+        this.positionsLength_ = 0;
+        this.lastPosition_ = POSITION_NONE;
+        this.frequency_ = 0;
+        this.maxFrequency_ = 0;
+    }
+
+    /**
+     * Appends an id to the end of the list. Ids must be appended in increasing
+     * order, and appending the last id again has no effect.
+     * @param id a line id
+     */
+    public void append(int id) {
+        if (id == this.last_) {
+            return;
+        }
+        if (id < this.last_) {
+            throw new IllegalArgumentException("Posting ids must be appended in increasing order");
+        }
+        this.startPosting(id);
+    }
+
+    /**
+     * Appends an id along with a position of the term in that line. Positions of the
+     * same id must be appended in increasing order.
+     * @param id a line id
+     * @param position the index of the word in the line
+     */
+    public void append(int id, int position) {
+        if (!this.isPositional_) {
+            throw new IllegalStateException("The posting list does not record positions");
+        }
+        this.append(id);
+        if (position <= this.lastPosition_) {
+            throw new IllegalArgumentException("Positions must be appended in increasing order");
+        }
+
+        // Gaps between positions are at least 1, leaving 0 to end the block
+        this.positions_ = ensureCapacity(this.positions_, this.positionsLength_ + 5);
+        this.positionsLength_ = writeVarInt(this.positions_, this.positionsLength_, position - this.lastPosition_);
+        this.lastPosition_ = position;
+        this.frequency_++;
+        this.maxFrequency_ = Math.max(this.maxFrequency_, this.frequency_);
+    }
+
+    /**
+     * Appends all the ids of another list, shifted by an offset, along with their
+     * positions. The shifted ids must all be greater than the last id of this list.
+     * @param other another posting list
+     * @param offset the amount added to every id of the other list
+     */
+    public void appendAll(PostingList other, int offset) {
+        if (other.isPositional_ != this.isPositional_) {
+            throw new IllegalArgumentException("Posting lists with and without positions cannot be joined");
+        }
+        if (other.count_ == 0) {
+            return;
+        }
+
+        Cursor cursor = other.cursor();
+        int first = cursor.next() + offset;
+        if (first <= this.last_) {
+            throw new IllegalArgumentException("Posting ids must be appended in increasing order");
+        }
+        this.append(first);
+
+        // The gaps after the first id do not change, so their bytes are copied as they are,
+        // and the skip entries of the other list are shifted to where its bytes now start.
+        // Positions are relative to their line, so the blocks of the other list are copied
+        // as they are, its first block becoming the block of the first id appended above.
+        int restStart = cursor.offset_;
+        int restLength = other.length_ - restStart;
+        int shift = this.length_ - restStart;
+        int positionsShift = this.positionsLength_;
+        this.data_ = ensureCapacity(this.data_, this.length_ + restLength);
+        System.arraycopy(other.data_, restStart, this.data_, this.length_, restLength);
+        this.positions_ = ensureCapacity(this.positions_, this.positionsLength_ + other.positionsLength_);
+        System.arraycopy(other.positions_, 0, this.positions_, this.positionsLength_, other.positionsLength_);
+        for (int i = 0; i < other.skipCount_; i++) {
+            this.addSkip(other.skipIds_[i] + offset, other.skipOffsets_[i] + shift,
+                    other.skipPositionOffsets_[i] + positionsShift);
+        }
+
+        this.length_ += restLength;
+        this.positionsLength_ += other.positionsLength_;
+        this.count_ += other.count_ - 1;
+        this.last_ = other.last_ + offset;
+        this.lastPosition_ = other.lastPosition_;
+        this.frequency_ = other.frequency_;
+        this.maxFrequency_ = Math.max(this.maxFrequency_, other.maxFrequency_);
+    }
+
+    /**
+     * Returns the number of ids in the list.
+     * @return the number of ids
+     */
+    public int count() {
+        return this.count_;
+    }
+
+    /**
+     * Returns the highest number of positions appended with a single id, which is the
+     * highest frequency of the term in a line.
+     * @return the highest number of positions of an id, or 1 if the list has ids but no positions
+     */
+    public int maxFrequency() {
+        return this.count_ > 0 ? Math.max(1, this.maxFrequency_) : 0;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded ids.
+     * @return the size of the encoded ids in bytes
+     */
+    public int byteSize() {
+        return this.length_;
+    }
+
+    /**
+     * Returns a cursor positioned before the first id of the list.
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Decodes all ids of the list into a new array, in increasing order.
+     * @return an array of ids
+     */
+    public int[] toArray() {
+        int[] ids = new int[this.count_];
+        Cursor cursor = this.cursor();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cursor.next();
+        }
+        return ids;
+    }
+
+    /**
+     * Ends the positions of the previous id and writes the gap to the new one.
+     */
+    private void startPosting(int id) {
+        if (this.count_ > 0) {
+            if (this.isPositional_) {
+                this.positions_ = ensureCapacity(this.positions_, this.positionsLength_ + 1);
+                this.positions_[this.positionsLength_++] = BYTE_END_POSITIONS;
+            }
+
+            // Start a new block by remembering where it begins and the id before it
+            if (this.count_ % SKIP_INTERVAL == 0) {
+                this.addSkip(this.last_, this.length_, this.positionsLength_);
+            }
+        }
+
+        // The first id is stored as a gap from -1 so that id 0 is representable
+        this.data_ = ensureCapacity(this.data_, this.length_ + 5);
+        this.length_ = writeVarInt(this.data_, this.length_, id - this.last_);
+        this.last_ = id;
+        this.lastPosition_ = POSITION_NONE;
+        this.frequency_ = 0;
+        this.count_++;
+    }
+
+    private void addSkip(int previousId, int offset, int positionOffset) {
+        if (this.skipIds_ == null) {
+            this.skipIds_ = new int[CAPACITY_INITIAL];
+            this.skipOffsets_ = new int[CAPACITY_INITIAL];
+            this.skipPositionOffsets_ = new int[CAPACITY_INITIAL];
+        } else if (this.skipCount_ == this.skipIds_.length) {
+            this.skipIds_ = Arrays.copyOf(this.skipIds_, this.skipCount_ * 2);
+            this.skipOffsets_ = Arrays.copyOf(this.skipOffsets_, this.skipCount_ * 2);
+            this.skipPositionOffsets_ = Arrays.copyOf(this.skipPositionOffsets_, this.skipCount_ * 2);
+        }
+        this.skipIds_[this.skipCount_] = previousId;
+        this.skipOffsets_[this.skipCount_] = offset;
+        this.skipPositionOffsets_[this.skipCount_] = positionOffset;
+        this.skipCount_++;
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    /**
+     * Writes a varint at the end of the contents of an array with room for 5 more bytes.
+     * @return the length of the contents after the varint
+     */
+    private static int writeVarInt(byte[] array, int length, int value) {
+        while ((value & ~MASK_VARINT_PAYLOAD) != 0) {
+            array[length++] = (byte) ((value & MASK_VARINT_PAYLOAD) | FLAG_VARINT_CONTINUATION);
+            value >>>= BITS_VARINT_PAYLOAD;
+        }
+        array[length++] = (byte) value;
+        return length;
+    }
+
+    /**
+     * A forward-only reader over the ids of the list. A cursor only sees the ids
+     * that were appended before it reached the end of the list.
+     */
+    public class Cursor implements IdCursor {
+        private int offset_ = 0;
+        private int previous_ = IdCursor.END;
+        private int current_ = IdCursor.END;
+        private int skip_ = 0;
+
+        // The block of the current id is reached by skipping blocksToSkip_ blocks
+        // from positionOffset_, which is done only when positions are loaded
+        private int positionOffset_ = 0;
+        private int blocksToSkip_ = -1;
+        private int[] positions_ = new int[CAPACITY_INITIAL];
+
+        @Override
+        public int next() {
+            if (this.offset_ >= PostingList.this.length_) {
+                this.current_ = IdCursor.END;
+                return IdCursor.END;
+            }
+            this.blocksToSkip_++;
+
+            byte[] data = PostingList.this.data_;
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[this.offset_++];
+                gap |= (b & MASK_VARINT_PAYLOAD) << shift;
+                shift += BITS_VARINT_PAYLOAD;
+            } while ((b & FLAG_VARINT_CONTINUATION) != 0);
+
+            this.previous_ += gap;
+            this.current_ = this.previous_;
+            return this.current_;
+        }
+
+        @Override
+        public int advance(int target) {
+            if (this.current_ >= target) {
+                return this.current_;
+            }
+
+            // Gallop over the skip entries to find the last block starting before the
+            // target, then decode gaps from the start of that block
+            int[] skipIds = PostingList.this.skipIds_;
+            int skipCount = PostingList.this.skipCount_;
+            if (this.skip_ < skipCount && skipIds[this.skip_] < target) {
+                int low = this.skip_;
+                int step = 1;
+                int high = low + step;
+                while (high < skipCount && skipIds[high] < target) {
+                    low = high;
+                    step <<= 1;
+                    high = low + step;
+                }
+                high = Math.min(high, skipCount);
+                while (low + 1 < high) {
+                    int middle = (low + high) >>> 1;
+                    if (skipIds[middle] < target) {
+                        low = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+
+                if (PostingList.this.skipOffsets_[low] > this.offset_) {
+                    this.offset_ = PostingList.this.skipOffsets_[low];
+                    this.previous_ = skipIds[low];
+                    this.positionOffset_ = PostingList.this.skipPositionOffsets_[low];
+                    this.blocksToSkip_ = -1;
+                }
+                this.skip_ = low + 1;
+            }
+
+            int id;
+            do {
+                id = this.next();
+            } while (id != IdCursor.END && id < target);
+            return id;
+        }
+
+        @Override
+        public int cost() {
+            return PostingList.this.count_;
+        }
+
+        /**
+         * Decodes the positions of the term in the line of the current id.
+         * @return the number of positions, read with position()
+         * @throws IllegalStateException exception thrown when the list does not record positions
+         */
+        public int loadPositions() {
+            if (!PostingList.this.isPositional_) {
+                throw new IllegalStateException("The posting list does not record positions");
+            }
+            byte[] data = PostingList.this.positions_;
+            int length = PostingList.this.positionsLength_;
+            int offset = this.positionOffset_;
+            for (; this.blocksToSkip_ > 0; this.blocksToSkip_--) {
+                while (offset < length && data[offset] != BYTE_END_POSITIONS) {
+                    offset++;
+                }
+                offset++;
+            }
+            this.positionOffset_ = offset;
+
+            int count = 0;
+            int position = POSITION_NONE;
+            while (offset < length && data[offset] != BYTE_END_POSITIONS) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    gap |= (b & MASK_VARINT_PAYLOAD) << shift;
+                    shift += BITS_VARINT_PAYLOAD;
+                } while ((b & FLAG_VARINT_CONTINUATION) != 0);
+
+                position += gap;
+                if (count == this.positions_.length) {
+                    this.positions_ = Arrays.copyOf(this.positions_, count * 2);
+                }
+                this.positions_[count++] = position;
+            }
+            return count;
+        }
+
+        /**
+         * Returns one of the positions decoded by loadPositions(), in increasing order.
+         * @param index the index of the position
+         * @return the index of the word in the line
+         */
+        public int position(int index) {
+            return this.positions_[index];
+        }
+    }
+}
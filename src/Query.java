@@ -0,0 +1,998 @@
+/**
+ * Query.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An abstraction of a search query, evaluated against the posting lists of an
+ * InvertedIndex. Queries are parsed from a string of words and operators:
+ *      lorem ipsum           lines containing both words
+ *      lorem AND ipsum       same as above
+ *      lorem OR ipsum        lines containing either word
+ *      lorem NOT ipsum       lines containing lorem but not ipsum
+ *      lorem -ipsum          same as above
+ *      err*                  lines containing a word starting with err
+ *      c?t                   lines containing cat, cot, cut, ...
+ *      ~lorme                lines containing a word within 1 or 2 edits of lorme
+ *      "connection reset"    lines containing the words next to each other, in order
+ *      error NEAR/3 disk     lines where the words are at most 3 words apart
+ * NOT binds tighter than AND, which binds tighter than OR. Operators have to be
+ * written in upper case, so that the lower case words can still be searched for.
+ * Likewise, a word starting with - only negates a word when other words are required
+ * with it, so that -v alone finds the lines containing -v, and "-v" always does.
+ * Fuzzy words of up to 5 characters allow 1 edit, and longer ones allow 2 edits.
+ * Phrases and NEAR are answered from the positions stored in the posting lists, and
+ * NEAR can join words, phrases and other NEAR queries.
+ * Evaluating a query yields a cursor over the matching line ids in increasing order.
+ *
+ * A whole query between single quotes is a substring query, which matches the lines
+ * containing the text anywhere, even inside words. It is not parsed into a query tree,
+ * but answered by a SuffixArray:
+ *      'timeout'             lines containing ReadTimeoutException, timeouts, ...
+ */
+public abstract class Query {
+
+    /**
+     * Constants
+     */
+    private static final Error ERROR_QUERY_INVALID = new Error("Invalid search query");
+
+    private static final String STRING_OPERATOR_AND = "AND";
+    private static final String STRING_OPERATOR_OR = "OR";
+    private static final String STRING_OPERATOR_NOT = "NOT";
+    private static final String STRING_PREFIX_NOT = "-";
+    private static final String STRING_PREFIX_FUZZY = "~";
+    private static final String STRING_OPERATOR_NEAR = "NEAR/";
+    private static final char CHAR_QUOTE = '"';
+    private static final char CHAR_QUOTE_SUBSTRING = '\'';
+
+    private static final int COUNT_TERMS_MERGED = 8;
+    private static final int LENGTH_FUZZY_ONE_EDIT = 5;
+    private static final int COUNT_EDITS_SHORT_WORD = 1;
+    private static final int COUNT_EDITS_LONG_WORD = 2;
+    private static final int CAPACITY_SPANS_INITIAL = 4;
+
+    /**
+     * Parses the query string into a query tree.
+     * @param query a query string
+     * @return the parsed query
+     * @throws Error error thrown when the query is empty or an operator is missing its operand
+     */
+    public static Query parse(String query) throws Error {
+        String[] tokens = tokenize(query);
+        if (tokens.length == 0) {
+            throw ERROR_QUERY_INVALID;
+        }
+        return new Parser(tokens).parse();
+    }
+
+    /**
+     * Returns the text of a substring query.
+     * @param query a query string
+     * @return the case-folded text between the single quotes, or null if the query is
+     *         not a substring query
+     * @throws Error error thrown when there is no text between the quotes
+     */
+    public static String substringOf(String query) throws Error {
+        if (query.length() < 2 || query.charAt(0) != CHAR_QUOTE_SUBSTRING
+                || query.charAt(query.length() - 1) != CHAR_QUOTE_SUBSTRING) {
+            return null;
+        }
+        if (query.length() == 2) {
+            throw ERROR_QUERY_INVALID;
+        }
+        return Tokenizer.fold(query.substring(1, query.length() - 1));
+    }
+
+    /**
+     * Splits the query at whitespace, except inside double quotes.
+     * @throws Error error thrown when a quote is not closed
+     */
+    private static String[] tokenize(String query) throws Error {
+        ArrayList<String> tokens = new ArrayList<>();
+        int length = query.length();
+        int position = 0;
+        while (position < length) {
+            if (Tokenizer.isWhitespace(query.charAt(position))) {
+                position++;
+                continue;
+            }
+            int start = position;
+            boolean isQuoted = false;
+            while (position < length && (isQuoted || !Tokenizer.isWhitespace(query.charAt(position)))) {
+                if (query.charAt(position) == CHAR_QUOTE) {
+                    isQuoted = !isQuoted;
+                }
+                position++;
+            }
+            if (isQuoted) {
+                throw ERROR_QUERY_INVALID;
+            }
+            tokens.add(query.substring(start, position));
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    /**
+     * Returns a cursor over the ids of the lines matching this query.
+     * @param index the index to evaluate the query against
+     * @param slots the number of line ids allocated so far
+     * @return a cursor over the matching ids in increasing order
+     */
+    public abstract IdCursor cursor(InvertedIndex index, int slots);
+
+    /**
+     * Returns words such that every line matching the query contains one of them. A
+     * new line without any of these words cannot change the results of the query.
+     * @return the case-folded words, or null if a line may match without any word
+     */
+    Set<String> requiredWords() {
+        return null;
+    }
+
+    /**
+     * Returns the words whose occurrences add to the score of a matching line when lines
+     * are ranked, which are the words the query looks for outside of negations.
+     * Patterns and fuzzy words only filter lines and do not add to their score.
+     * @return the case-folded words, in the order of the query
+     */
+    public Set<String> scoredWords() {
+        LinkedHashSet<String> words = new LinkedHashSet<>();
+        this.addScoredWords(words);
+        return words;
+    }
+
+    void addScoredWords(Set<String> words) {
+    }
+
+    /**
+     * Base of the queries that can report where they match inside each line, which
+     * are the words, phrases and NEAR queries. Only these can be joined by NEAR.
+     */
+    private abstract static class Positional extends Query {
+        /**
+         * Returns a cursor over the lines matching this query that also reports where
+         * the query matches inside each line.
+         * @param index the index to evaluate the query against
+         * @return a cursor over the matching ids, or null if no line can match
+         */
+        abstract SpanCursor spans(InvertedIndex index);
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            SpanCursor spans = this.spans(index);
+            return spans == null ? IdCursor.of(new int[0], 0) : spans;
+        }
+    }
+
+    /**
+     * A single word, matching the lines containing it. Its cursor reads the posting
+     * list directly, skipping the positions unless it is part of a phrase or NEAR.
+     */
+    private static class Term extends Positional {
+        private final String word_;
+
+        Term(String word) {
+            this.word_ = word;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            PostingList postings = index.get(this.word_);
+            if (postings == null) {
+                return IdCursor.of(new int[0], 0);
+            }
+            return postings.cursor();
+        }
+
+        @Override
+        SpanCursor spans(InvertedIndex index) {
+            PostingList postings = index.get(this.word_);
+            return postings == null ? null : new TermSpans(postings.cursor());
+        }
+
+        @Override
+        Set<String> requiredWords() {
+            return Collections.singleton(Tokenizer.fold(this.word_));
+        }
+
+        @Override
+        void addScoredWords(Set<String> words) {
+            words.add(Tokenizer.fold(this.word_));
+        }
+    }
+
+    /**
+     * Quoted words, matching the lines containing all of them next to each other in
+     * the same order.
+     */
+    private static class Phrase extends Positional {
+        private final List<Term> terms_;
+
+        Phrase(List<Term> terms) {
+            this.terms_ = terms;
+        }
+
+        @Override
+        SpanCursor spans(InvertedIndex index) {
+            SpanCursor[] parts = new SpanCursor[this.terms_.size()];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = this.terms_.get(i).spans(index);
+                if (parts[i] == null) {
+                    return null;
+                }
+            }
+            return new PhraseSpans(parts);
+        }
+
+        @Override
+        Set<String> requiredWords() {
+            return this.terms_.get(0).requiredWords();
+        }
+
+        @Override
+        void addScoredWords(Set<String> words) {
+            for (Term term : this.terms_) {
+                term.addScoredWords(words);
+            }
+        }
+    }
+
+    /**
+     * Two positional queries, matching the lines where they match at most a number of
+     * words apart, in either order.
+     */
+    private static class Near extends Positional {
+        private final Positional left_;
+        private final Positional right_;
+        private final int distance_;
+
+        Near(Positional left, Positional right, int distance) {
+            this.left_ = left;
+            this.right_ = right;
+            this.distance_ = distance;
+        }
+
+        @Override
+        SpanCursor spans(InvertedIndex index) {
+            SpanCursor left = this.left_.spans(index);
+            SpanCursor right = this.right_.spans(index);
+            if (left == null || right == null) {
+                return null;
+            }
+            return new NearSpans(left, right, this.distance_);
+        }
+
+        @Override
+        Set<String> requiredWords() {
+            return this.left_.requiredWords();
+        }
+
+        @Override
+        void addScoredWords(Set<String> words) {
+            this.left_.addScoredWords(words);
+            this.right_.addScoredWords(words);
+        }
+    }
+
+    /**
+     * A word with wildcards, matching the lines containing any of the terms it expands to.
+     */
+    private static class Pattern extends Query {
+        private final String pattern_;
+
+        Pattern(String pattern) {
+            this.pattern_ = pattern;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            return unionOf(index, index.expand(this.pattern_), slots);
+        }
+    }
+
+    /**
+     * A word prefixed with ~, matching the lines containing any term within a few
+     * edits of it, expanded and merged like a pattern.
+     */
+    private static class Fuzzy extends Query {
+        private final String word_;
+
+        Fuzzy(String word) {
+            this.word_ = word;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            int maxEdits = this.word_.length() <= LENGTH_FUZZY_ONE_EDIT
+                    ? COUNT_EDITS_SHORT_WORD
+                    : COUNT_EDITS_LONG_WORD;
+            return unionOf(index, index.expandFuzzy(this.word_, maxEdits), slots);
+        }
+    }
+
+    /**
+     * Returns a cursor over the lines containing any of the terms. A few terms are
+     * merged lazily like an OR query, while many terms are marked in a bit set over all
+     * line ids, so that the cost grows with the number of postings rather than with
+     * the number of terms times the number of matches.
+     */
+    private static IdCursor unionOf(InvertedIndex index, int[] termIds, int slots) {
+        if (termIds.length == 1) {
+            return index.postingsFor(termIds[0]).cursor();
+        }
+        if (termIds.length <= COUNT_TERMS_MERGED) {
+            IdCursor[] cursors = new IdCursor[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                cursors[i] = index.postingsFor(termIds[i]).cursor();
+            }
+            return new Union(cursors);
+        }
+
+        long[] bits = new long[(slots + Long.SIZE - 1) / Long.SIZE];
+        int count = 0;
+        for (int termId : termIds) {
+            IdCursor cursor = index.postingsFor(termId).cursor();
+            int id;
+            while ((id = cursor.next()) != IdCursor.END) {
+                long bit = 1L << id;
+                if ((bits[id >>> 6] & bit) == 0) {
+                    bits[id >>> 6] |= bit;
+                    count++;
+                }
+            }
+        }
+
+        int[] ids = new int[count];
+        int length = 0;
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                ids[length++] = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+            }
+        }
+        return IdCursor.of(ids, length);
+    }
+
+    /**
+     * Conjunction of queries, some of which may be negated. The cursors of the
+     * positive queries are intersected starting from the rarest one, leapfrogging
+     * the others with advance(), so the cost depends on the rarest query rather
+     * than on the most common one.
+     */
+    private static class And extends Query {
+        private final List<Query> positives_;
+        private final List<Query> negatives_;
+
+        And(List<Query> positives, List<Query> negatives) {
+            this.positives_ = positives;
+            this.negatives_ = negatives;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            ArrayList<IdCursor> positives = new ArrayList<>();
+            for (Query query : this.positives_) {
+                positives.add(query.cursor(index, slots));
+            }
+            if (positives.isEmpty()) {
+                positives.add(IdCursor.all(slots));
+            }
+            positives.sort(Comparator.comparingInt(IdCursor::cost));
+
+            IdCursor[] negatives = new IdCursor[this.negatives_.size()];
+            for (int i = 0; i < negatives.length; i++) {
+                negatives[i] = this.negatives_.get(i).cursor(index, slots);
+            }
+
+            return new Intersection(positives.toArray(new IdCursor[positives.size()]), negatives);
+        }
+
+        @Override
+        Set<String> requiredWords() {
+            // A line matching all the positive queries contains the words of any of them
+            for (Query query : this.positives_) {
+                Set<String> words = query.requiredWords();
+                if (words != null) {
+                    return words;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void addScoredWords(Set<String> words) {
+            for (Query query : this.positives_) {
+                query.addScoredWords(words);
+            }
+        }
+    }
+
+    /**
+     * Disjunction of queries, merging their cursors in id order.
+     */
+    private static class Or extends Query {
+        private final List<Query> queries_;
+
+        Or(List<Query> queries) {
+            this.queries_ = queries;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            IdCursor[] cursors = new IdCursor[this.queries_.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = this.queries_.get(i).cursor(index, slots);
+            }
+            return new Union(cursors);
+        }
+
+        @Override
+        Set<String> requiredWords() {
+            HashSet<String> words = new HashSet<>();
+            for (Query query : this.queries_) {
+                Set<String> queryWords = query.requiredWords();
+                if (queryWords == null) {
+                    return null;
+                }
+                words.addAll(queryWords);
+            }
+            return words;
+        }
+
+        @Override
+        void addScoredWords(Set<String> words) {
+            for (Query query : this.queries_) {
+                query.addScoredWords(words);
+            }
+        }
+    }
+
+    /**
+     * Negation of a query, matching every line the query does not match.
+     */
+    private static class Not extends Query {
+        private final Query query_;
+
+        Not(Query query) {
+            this.query_ = query;
+        }
+
+        @Override
+        public IdCursor cursor(InvertedIndex index, int slots) {
+            ArrayList<Query> negatives = new ArrayList<>();
+            negatives.add(this.query_);
+            return new And(new ArrayList<>(), negatives).cursor(index, slots);
+        }
+    }
+
+    /**
+     * Cursor producing the ids found in all the positive cursors and in none of the
+     * negative ones. The first positive cursor is expected to be the rarest.
+     */
+    static class Intersection implements IdCursor {
+        private final IdCursor[] positives_;
+        private final IdCursor[] negatives_;
+
+        Intersection(IdCursor[] positives, IdCursor[] negatives) {
+            this.positives_ = positives;
+            this.negatives_ = negatives;
+        }
+
+        @Override
+        public int next() {
+            return this.matchFrom(this.positives_[0].next());
+        }
+
+        @Override
+        public int advance(int target) {
+            return this.matchFrom(this.positives_[0].advance(target));
+        }
+
+        @Override
+        public int cost() {
+            return this.positives_[0].cost();
+        }
+
+        private int matchFrom(int candidate) {
+            IdCursor lead = this.positives_[0];
+            while (candidate != END) {
+                int mismatch = candidate;
+                for (int i = 1; i < this.positives_.length && mismatch == candidate; i++) {
+                    mismatch = this.positives_[i].advance(candidate);
+                    if (mismatch == END) {
+                        return END;
+                    }
+                }
+                if (mismatch != candidate) {
+                    candidate = lead.advance(mismatch);
+                    continue;
+                }
+                if (!this.isExcluded(candidate)) {
+                    return candidate;
+                }
+                candidate = lead.next();
+            }
+            return END;
+        }
+
+        private boolean isExcluded(int candidate) {
+            for (IdCursor negative : this.negatives_) {
+                if (negative.advance(candidate) == candidate) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Cursor producing the ids found in any of the cursors.
+     */
+    static class Union implements IdCursor {
+        private final IdCursor[] cursors_;
+        private final int[] heads_;
+        private int current_ = -1;
+
+        Union(IdCursor[] cursors) {
+            this.cursors_ = cursors;
+            this.heads_ = new int[cursors.length];
+            for (int i = 0; i < cursors.length; i++) {
+                this.heads_[i] = cursors[i].next();
+            }
+        }
+
+        @Override
+        public int next() {
+            return this.advance(this.current_ + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            int minimum = END;
+            for (int i = 0; i < this.cursors_.length; i++) {
+                if (this.heads_[i] != END && this.heads_[i] < target) {
+                    this.heads_[i] = this.cursors_[i].advance(target);
+                }
+                if (this.heads_[i] != END && (minimum == END || this.heads_[i] < minimum)) {
+                    minimum = this.heads_[i];
+                }
+            }
+            this.current_ = minimum == END ? Integer.MAX_VALUE - 1 : minimum;
+            return minimum;
+        }
+
+        @Override
+        public int cost() {
+            int cost = 0;
+            for (IdCursor cursor : this.cursors_) {
+                cost += cursor.cost();
+            }
+            return cost < 0 ? Integer.MAX_VALUE : cost;
+        }
+    }
+
+    /**
+     * Cursor over the lines matched by a positional query, which also tells where the
+     * query matched in the current line, as spans of word positions. Spans are only
+     * computed by loadSpans(), once all the parts of an enclosing query are on the line.
+     */
+    abstract static class SpanCursor implements IdCursor {
+
+        /**
+         * Computes the spans matched in the line of the current id.
+         * @return the number of spans
+         */
+        abstract int loadSpans();
+
+        /**
+         * Returns the position of the first word of a span loaded by loadSpans().
+         * @param index the index of the span
+         * @return the position of the first word
+         */
+        abstract int spanStart(int index);
+
+        /**
+         * Returns the position of the last word of a span loaded by loadSpans().
+         * @param index the index of the span
+         * @return the position of the last word
+         */
+        abstract int spanEnd(int index);
+    }
+
+    /**
+     * The positions of a single word, read from its posting list.
+     */
+    private static class TermSpans extends SpanCursor {
+        private final PostingList.Cursor cursor_;
+
+        TermSpans(PostingList.Cursor cursor) {
+            this.cursor_ = cursor;
+        }
+
+        @Override
+        public int next() {
+            return this.cursor_.next();
+        }
+
+        @Override
+        public int advance(int target) {
+            return this.cursor_.advance(target);
+        }
+
+        @Override
+        public int cost() {
+            return this.cursor_.cost();
+        }
+
+        @Override
+        int loadSpans() {
+            return this.cursor_.loadPositions();
+        }
+
+        @Override
+        int spanStart(int index) {
+            return this.cursor_.position(index);
+        }
+
+        @Override
+        int spanEnd(int index) {
+            return this.cursor_.position(index);
+        }
+    }
+
+    /**
+     * Spans built from the spans of several parts. The ids of the parts are intersected
+     * by leapfrogging, and on every line containing all the parts their spans are
+     * combined, moving on to the next common line until a combination exists.
+     */
+    private abstract static class CompositeSpans extends SpanCursor {
+        final SpanCursor[] parts_;
+        private int[] starts_;
+        private int[] ends_;
+        private int spanCount_;
+        private int current_;
+
+        CompositeSpans(SpanCursor[] parts) {
+            this.parts_ = parts;
+            this.starts_ = new int[CAPACITY_SPANS_INITIAL];
+            this.ends_ = new int[CAPACITY_SPANS_INITIAL];
+            this.spanCount_ = 0;
+            this.current_ = END;
+        }
+
+        /**
+         * Combines the spans of the parts, which are all on the same line, calling
+         * addSpan() for every combination.
+         */
+        abstract void combineSpans();
+
+        void addSpan(int start, int end) {
+            if (this.spanCount_ == this.starts_.length) {
+                this.starts_ = Arrays.copyOf(this.starts_, this.spanCount_ * 2);
+                this.ends_ = Arrays.copyOf(this.ends_, this.spanCount_ * 2);
+            }
+            this.starts_[this.spanCount_] = start;
+            this.ends_[this.spanCount_] = end;
+            this.spanCount_++;
+        }
+
+        @Override
+        public int next() {
+            return this.matchFrom(this.parts_[0].next());
+        }
+
+        @Override
+        public int advance(int target) {
+            if (this.current_ != END && this.current_ >= target) {
+                return this.current_;
+            }
+            return this.matchFrom(this.parts_[0].advance(target));
+        }
+
+        @Override
+        public int cost() {
+            int cost = Integer.MAX_VALUE;
+            for (SpanCursor part : this.parts_) {
+                cost = Math.min(cost, part.cost());
+            }
+            return cost;
+        }
+
+        @Override
+        int loadSpans() {
+            return this.spanCount_;
+        }
+
+        @Override
+        int spanStart(int index) {
+            return this.starts_[index];
+        }
+
+        @Override
+        int spanEnd(int index) {
+            return this.ends_[index];
+        }
+
+        private int matchFrom(int candidate) {
+            while (candidate != END) {
+                candidate = this.align(candidate);
+                if (candidate == END) {
+                    break;
+                }
+                this.spanCount_ = 0;
+                this.combineSpans();
+                if (this.spanCount_ > 0) {
+                    this.current_ = candidate;
+                    return candidate;
+                }
+                candidate = this.parts_[0].next();
+            }
+            this.current_ = END;
+            return END;
+        }
+
+        /**
+         * Advances all the parts to the first id they all contain, from the candidate on.
+         */
+        private int align(int candidate) {
+            boolean isAligned = false;
+            while (!isAligned) {
+                isAligned = true;
+                for (SpanCursor part : this.parts_) {
+                    int id = part.advance(candidate);
+                    if (id == END) {
+                        return END;
+                    }
+                    if (id > candidate) {
+                        candidate = id;
+                        isAligned = false;
+                        break;
+                    }
+                }
+            }
+            return candidate;
+        }
+    }
+
+    /**
+     * Spans where every part starts right after the previous part ends.
+     */
+    private static class PhraseSpans extends CompositeSpans {
+
+        PhraseSpans(SpanCursor[] parts) {
+            super(parts);
+        }
+
+        @Override
+        void combineSpans() {
+            int[] counts = new int[this.parts_.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.parts_[i].loadSpans();
+            }
+
+            for (int first = 0; first < counts[0]; first++) {
+                int end = this.parts_[0].spanEnd(first);
+                for (int i = 1; i < this.parts_.length && end != END; i++) {
+                    end = this.endOfSpanStartingAt(i, counts[i], end + 1);
+                }
+                if (end != END) {
+                    this.addSpan(this.parts_[0].spanStart(first), end);
+                }
+            }
+        }
+
+        private int endOfSpanStartingAt(int part, int count, int start) {
+            for (int i = 0; i < count; i++) {
+                if (this.parts_[part].spanStart(i) == start) {
+                    return this.parts_[part].spanEnd(i);
+                }
+            }
+            return END;
+        }
+    }
+
+    /**
+     * Spans covering a span of each part, where the two spans do not overlap and the
+     * second one starts at most a number of words after the first one ends.
+     */
+    private static class NearSpans extends CompositeSpans {
+        private final int distance_;
+
+        NearSpans(SpanCursor left, SpanCursor right, int distance) {
+            super(new SpanCursor[]{left, right});
+            this.distance_ = distance;
+        }
+
+        @Override
+        void combineSpans() {
+            SpanCursor left = this.parts_[0];
+            SpanCursor right = this.parts_[1];
+            int leftCount = left.loadSpans();
+            int rightCount = right.loadSpans();
+            for (int i = 0; i < leftCount; i++) {
+                for (int j = 0; j < rightCount; j++) {
+                    int gap = Math.max(right.spanStart(j) - left.spanEnd(i), left.spanStart(i) - right.spanEnd(j));
+                    if (gap >= 1 && gap <= this.distance_) {
+                        this.addSpan(Math.min(left.spanStart(i), right.spanStart(j)),
+                                Math.max(left.spanEnd(i), right.spanEnd(j)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser over the whitespace separated tokens of a query.
+     */
+    private static class Parser {
+        private final String[] tokens_;
+        private int position_;
+        private int prefixNegationCount_;
+        private boolean isPrefixLiteral_;
+
+        Parser(String[] tokens) {
+            this.tokens_ = tokens;
+            this.position_ = 0;
+            this.prefixNegationCount_ = 0;
+            this.isPrefixLiteral_ = false;
+        }
+
+        Query parse() throws Error {
+            Query query = this.parseOr();
+            if (this.position_ < this.tokens_.length) {
+                throw ERROR_QUERY_INVALID;
+            }
+            return query;
+        }
+
+        private Query parseOr() throws Error {
+            ArrayList<Query> queries = new ArrayList<>();
+            queries.add(this.parseAnd());
+            while (this.accept(STRING_OPERATOR_OR)) {
+                queries.add(this.parseAnd());
+            }
+            return queries.size() == 1 ? queries.get(0) : new Or(queries);
+        }
+
+        private Query parseAnd() throws Error {
+            int start = this.position_;
+            int prefixNegationCount = this.prefixNegationCount_;
+            Query query = this.parseTerms();
+
+            // Without a positive word, -word is more likely a word such as a command line
+            // flag than a negation, so the words are read again with the prefix kept
+            if (this.prefixNegationCount_ > prefixNegationCount && !this.isPrefixLiteral_
+                    && query instanceof And && ((And) query).positives_.isEmpty()) {
+                this.position_ = start;
+                this.isPrefixLiteral_ = true;
+                query = this.parseTerms();
+                this.isPrefixLiteral_ = false;
+            }
+            return query;
+        }
+
+        private Query parseTerms() throws Error {
+            ArrayList<Query> positives = new ArrayList<>();
+            ArrayList<Query> negatives = new ArrayList<>();
+            while (true) {
+                Query query = this.parseUnary();
+                if (query instanceof Not) {
+                    negatives.add(((Not) query).query_);
+                } else {
+                    positives.add(query);
+                }
+
+                // Words next to each other are implicitly joined with AND
+                if (this.position_ >= this.tokens_.length || this.peek(STRING_OPERATOR_OR)) {
+                    break;
+                }
+                this.accept(STRING_OPERATOR_AND);
+            }
+
+            if (positives.size() == 1 && negatives.isEmpty()) {
+                return positives.get(0);
+            }
+            return new And(positives, negatives);
+        }
+
+        private Query parseUnary() throws Error {
+            if (this.position_ >= this.tokens_.length) {
+                throw ERROR_QUERY_INVALID;
+            }
+            if (this.accept(STRING_OPERATOR_NOT)) {
+                return new Not(this.parseUnary());
+            }
+
+            String token = this.nextOperand();
+            boolean isNegated = !this.isPrefixLiteral_
+                    && token.startsWith(STRING_PREFIX_NOT) && token.length() > STRING_PREFIX_NOT.length();
+            if (isNegated) {
+                token = token.substring(STRING_PREFIX_NOT.length());
+                this.prefixNegationCount_++;
+            }
+
+            Query query = wordQuery(token);
+            while (this.position_ < this.tokens_.length && isNear(this.tokens_[this.position_])) {
+                int distance = nearDistance(this.tokens_[this.position_++]);
+                Query right = wordQuery(this.nextOperand());
+                if (!(query instanceof Positional) || !(right instanceof Positional)) {
+                    throw ERROR_QUERY_INVALID;
+                }
+                query = new Near((Positional) query, (Positional) right, distance);
+            }
+            return isNegated ? new Not(query) : query;
+        }
+
+        private String nextOperand() throws Error {
+            if (this.position_ >= this.tokens_.length) {
+                throw ERROR_QUERY_INVALID;
+            }
+            String token = this.tokens_[this.position_++];
+            if (token.equals(STRING_OPERATOR_AND) || token.equals(STRING_OPERATOR_OR) || isNear(token)) {
+                throw ERROR_QUERY_INVALID;
+            }
+            return token;
+        }
+
+        private static Query wordQuery(String word) throws Error {
+            if (word.length() >= 2 && word.charAt(0) == CHAR_QUOTE && word.charAt(word.length() - 1) == CHAR_QUOTE) {
+                return phraseQuery(word.substring(1, word.length() - 1));
+            }
+            if (word.startsWith(STRING_PREFIX_FUZZY) && word.length() > STRING_PREFIX_FUZZY.length()) {
+                return new Fuzzy(word.substring(STRING_PREFIX_FUZZY.length()));
+            }
+            return InvertedIndex.isPattern(word) ? new Pattern(word) : new Term(word);
+        }
+
+        private static Query phraseQuery(String phrase) throws Error {
+            ArrayList<Term> terms = new ArrayList<>();
+            Tokenizer tokenizer = new Tokenizer().reset(phrase);
+            while (tokenizer.next()) {
+                terms.add(new Term(phrase.substring(tokenizer.start(), tokenizer.end())));
+            }
+            if (terms.isEmpty()) {
+                throw ERROR_QUERY_INVALID;
+            }
+            return terms.size() == 1 ? terms.get(0) : new Phrase(terms);
+        }
+
+        private static boolean isNear(String token) {
+            return token.startsWith(STRING_OPERATOR_NEAR);
+        }
+
+        private static int nearDistance(String token) throws Error {
+            try {
+                int distance = Integer.parseInt(token.substring(STRING_OPERATOR_NEAR.length()));
+                if (distance < 1) {
+                    throw ERROR_QUERY_INVALID;
+                }
+                return distance;
+            } catch (NumberFormatException e) {
+                throw ERROR_QUERY_INVALID;
+            }
+        }
+
+        private boolean peek(String operator) {
+            return this.position_ < this.tokens_.length && this.tokens_[this.position_].equals(operator);
+        }
+
+        private boolean accept(String operator) {
+            if (this.peek(operator)) {
+                this.position_++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
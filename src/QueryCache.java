@@ -0,0 +1,186 @@
+/**
+ * QueryCache.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of search results by query string, which evicts the least recently
+ * used query once it is full:
+ *      SearchResults results = cache.get(query);
+ *      if (results == null) {
+ *          results = evaluate(query);
+ *          cache.put(query, results, requiredWords);
+ *      }
+ * Results are line numbers, which stay valid while lines are only appended. A new line
+ * can only change the results of the queries it matches, so it invalidates the queries
+ * requiring one of its words, found through an index from words to queries, and the
+ * queries that do not require any word. Removing, sorting or clearing lines renumbers
+ * them, which invalidates every query at once by starting a new generation. Entries of
+ * older generations are dropped when they are looked up or evicted.
+ */
+public class QueryCache {
+
+    /**
+     * Properties
+     */
+    private final LinkedHashMap<String, CachedResults> entries_;
+    private final HashMap<String, Set<String>> queriesByWord_;
+    private final Set<String> queriesWithoutWords_;
+    private final Tokenizer tokenizer_;
+    private int generation_;
+    private long hitCount_;
+    private long missCount_;
+
+    /**
+     * Constructs an empty cache.
+     * @param capacity the number of queries kept at most
+     */
+    public QueryCache(int capacity) {
+        this.entries_ = new LinkedHashMap<String, CachedResults>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResults> eldest) {
+                if (this.size() <= capacity) {
+                    return false;
+                }
+                QueryCache.this.unlink(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+        this.queriesByWord_ = new HashMap<>();
+        this.queriesWithoutWords_ = new HashSet<>();
+        this.tokenizer_ = new Tokenizer();
+        this.generation_ = 0;
+        this.hitCount_ = 0;
+        this.missCount_ = 0;
+    }
+
+    /**
+     * Returns the cached results of a query, counting a hit or a miss.
+     * @param query a query string
+     * @return the results of the query, which may be empty, or null if they are not cached
+     */
+    public SearchResults get(String query) {
+        CachedResults entry = this.entries_.get(query);
+        if (entry != null && entry.generation_ != this.generation_) {
+            this.remove(query);
+            entry = null;
+        }
+
+        if (entry == null) {
+            this.missCount_++;
+            return null;
+        }
+        this.hitCount_++;
+        return entry.results_;
+    }
+
+    /**
+     * Caches the results of a query.
+     * @param query a query string
+     * @param results the results of the query, empty if no line matches
+     * @param requiredWords case-folded words, one of which every matching line contains,
+     *                      or null if a line may match without any word
+     */
+    public void put(String query, SearchResults results, Set<String> requiredWords) {
+        this.remove(query);
+        this.entries_.put(query, new CachedResults(results, requiredWords, this.generation_));
+        if (requiredWords == null) {
+            this.queriesWithoutWords_.add(query);
+            return;
+        }
+        for (String word : requiredWords) {
+            this.queriesByWord_.computeIfAbsent(word, key -> new HashSet<>()).add(query);
+        }
+    }
+
+    /**
+     * Drops the queries whose results may include a new line appended to the list.
+     * @param content the content of the new line
+     */
+    public void invalidateLine(CharSequence content) {
+        if (this.entries_.isEmpty()) {
+            return;
+        }
+
+        Tokenizer tokenizer = this.tokenizer_.reset(content);
+        while (tokenizer.next()) {
+            String word = Tokenizer.fold(content.subSequence(tokenizer.start(), tokenizer.end()));
+            Set<String> queries = this.queriesByWord_.remove(word);
+            if (queries != null) {
+                for (String query : queries) {
+                    this.remove(query);
+                }
+            }
+        }
+        for (String query : this.queriesWithoutWords_.toArray(new String[0])) {
+            this.remove(query);
+        }
+    }
+
+    /**
+     * Drops all the queries, after the lines were renumbered.
+     */
+    public void invalidateAll() {
+        this.generation_++;
+    }
+
+    /**
+     * Returns the number of lookups that found the results of the query.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return this.hitCount_;
+    }
+
+    /**
+     * Returns the number of lookups that did not find the results of the query.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return this.missCount_;
+    }
+
+    private void remove(String query) {
+        CachedResults entry = this.entries_.remove(query);
+        if (entry != null) {
+            this.unlink(query, entry);
+        }
+    }
+
+    /**
+     * Removes a query from the index of words, once its entry is gone.
+     */
+    private void unlink(String query, CachedResults entry) {
+        if (entry.requiredWords_ == null) {
+            this.queriesWithoutWords_.remove(query);
+            return;
+        }
+        for (String word : entry.requiredWords_) {
+            Set<String> queries = this.queriesByWord_.get(word);
+            if (queries != null) {
+                queries.remove(query);
+                if (queries.isEmpty()) {
+                    this.queriesByWord_.remove(word);
+                }
+            }
+        }
+    }
+
+    private static class CachedResults {
+        private final SearchResults results_;
+        private final Set<String> requiredWords_;
+        private final int generation_;
+
+        CachedResults(SearchResults results, Set<String> requiredWords, int generation) {
+            this.results_ = results;
+            this.requiredWords_ = requiredWords;
+            this.generation_ = generation;
+        }
+    }
+}
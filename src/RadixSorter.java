@@ -0,0 +1,240 @@
+/**
+ * RadixSorter.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts lines with a most-significant-digit radix sort, in exactly the order of
+ * Line.compareTo(): by content like String.compareTo(), and by id between lines
+ * with the same content.
+ *      RadixSorter.sort(lines);
+ * Instead of comparing whole strings, the sorter caches the next 4 characters of
+ * every line packed into a long, and distributes the lines into buckets one byte of
+ * that key at a time. Bytes that are the same across a bucket are skipped in a single
+ * pass, so long prefixes shared by many lines (timestamps, host names) are only read
+ * once per line instead of once per comparison. Once the key of a bucket is exhausted,
+ * the keys of its lines are refilled from the next 4 characters.
+ *
+ * Buckets that are small enough are finished with an insertion sort, and large ones
+ * are sorted in parallel on the common fork-join pool.
+ */
+public class RadixSorter {
+
+    /**
+     * Constants
+     */
+    private static final int COUNT_CHARS_KEY = 4;
+    private static final int COUNT_BUCKETS = 256;
+    private static final int COUNT_LINES_INSERTION_SORT = 32;
+    private static final int COUNT_LINES_PARALLEL = 1 << 14;
+
+    private static final Comparator<Line> COMPARATOR_LENGTH_AND_ID = RadixSorter::compareByLengthAndId;
+
+    /**
+     * Properties
+     */
+    private final Line[] lines_;
+    private final long[] keys_;
+    private final Line[] linesBuffer_;
+    private final long[] keysBuffer_;
+
+    private RadixSorter(Line[] lines) {
+        this.lines_ = lines;
+        this.keys_ = new long[lines.length];
+        this.linesBuffer_ = new Line[lines.length];
+        this.keysBuffer_ = new long[lines.length];
+    }
+
+    /**
+     * Sorts the lines in place.
+     * @param lines the lines to sort
+     */
+    public static void sort(Line[] lines) {
+        RadixSorter sorter = new RadixSorter(lines);
+        sorter.fillKeys(0, lines.length, 0);
+        sorter.sort(0, lines.length, 0);
+    }
+
+    /**
+     * Sorts the lines between from (inclusive) and to (exclusive), which all share
+     * the same first depth characters and have their keys filled from that depth.
+     */
+    private void sort(int from, int to, int depth) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        this.sort(from, to, depth, tasks);
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private void sort(int from, int to, int depth, List<ForkJoinTask<?>> tasks) {
+        while (to - from > 1) {
+            if (to - from <= COUNT_LINES_INSERTION_SORT) {
+                this.insertionSort(from, to, depth);
+                return;
+            }
+
+            // Find the most significant byte in which the keys differ
+            long first = this.keys_[from];
+            long difference = 0;
+            for (int i = from + 1; i < to; i++) {
+                difference |= this.keys_[i] ^ first;
+            }
+
+            // All the keys are equal: lines ending inside the key are done, and the
+            // others are sorted on their next characters
+            if (difference == 0) {
+                from = this.separateEnded(from, to, depth);
+                depth += COUNT_CHARS_KEY;
+                this.fillKeys(from, to, depth);
+                continue;
+            }
+
+            int shift = (63 - Long.numberOfLeadingZeros(difference)) & ~7;
+            int[] bucketStarts = this.distribute(from, to, shift);
+            for (int bucket = 0; bucket < COUNT_BUCKETS; bucket++) {
+                int bucketFrom = bucketStarts[bucket];
+                int bucketTo = bucketStarts[bucket + 1];
+                if (bucketTo - bucketFrom >= COUNT_LINES_PARALLEL) {
+                    int bucketDepth = depth;
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            RadixSorter.this.sort(bucketFrom, bucketTo, bucketDepth);
+                        }
+                    }.fork());
+                } else {
+                    this.sort(bucketFrom, bucketTo, depth, tasks);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Stably distributes the lines into buckets by the byte of their keys at the
+     * specified shift.
+     * @return the start of every bucket, followed by the end of the last one
+     */
+    private int[] distribute(int from, int to, int shift) {
+        int[] bucketStarts = new int[COUNT_BUCKETS + 1];
+        for (int i = from; i < to; i++) {
+            bucketStarts[(int) (this.keys_[i] >>> shift) & 0xFF]++;
+        }
+        int start = from;
+        for (int bucket = 0; bucket < COUNT_BUCKETS; bucket++) {
+            int count = bucketStarts[bucket];
+            bucketStarts[bucket] = start;
+            start += count;
+        }
+        bucketStarts[COUNT_BUCKETS] = to;
+
+        int[] next = bucketStarts.clone();
+        for (int i = from; i < to; i++) {
+            int destination = next[(int) (this.keys_[i] >>> shift) & 0xFF]++;
+            this.linesBuffer_[destination] = this.lines_[i];
+            this.keysBuffer_[destination] = this.keys_[i];
+        }
+        System.arraycopy(this.linesBuffer_, from, this.lines_, from, to - from);
+        System.arraycopy(this.keysBuffer_, from, this.keys_, from, to - from);
+        return bucketStarts;
+    }
+
+    /**
+     * Moves the lines that end within the key at the specified depth in front of the
+     * others, ordered by length and then by id, among lines sharing the same key.
+     * A line ending there is a prefix of all the lines that go on, so it comes first.
+     * @return the start of the lines going on past the key
+     */
+    private int separateEnded(int from, int to, int depth) {
+        int keyEnd = depth + COUNT_CHARS_KEY;
+        int ended = from;
+        int goingOn = from;
+        for (int i = from; i < to; i++) {
+            Line line = this.lines_[i];
+            if (line.getContent().length() <= keyEnd) {
+                this.lines_[ended++] = line;
+            } else {
+                this.linesBuffer_[goingOn++] = line;
+            }
+        }
+        System.arraycopy(this.linesBuffer_, from, this.lines_, ended, goingOn - from);
+
+        // Lines with the same key and length have the same content
+        Arrays.sort(this.lines_, from, ended, COMPARATOR_LENGTH_AND_ID);
+        return ended;
+    }
+
+    private void insertionSort(int from, int to, int depth) {
+        for (int i = from + 1; i < to; i++) {
+            Line line = this.lines_[i];
+            long key = this.keys_[i];
+            int j = i - 1;
+            while (j >= from && compare(this.lines_[j], this.keys_[j], line, key, depth) > 0) {
+                this.lines_[j + 1] = this.lines_[j];
+                this.keys_[j + 1] = this.keys_[j];
+                j--;
+            }
+            this.lines_[j + 1] = line;
+            this.keys_[j + 1] = key;
+        }
+    }
+
+    private void fillKeys(int from, int to, int depth) {
+        for (int i = from; i < to; i++) {
+            this.keys_[i] = keyOf(this.lines_[i].getContent(), depth);
+        }
+    }
+
+    /**
+     * Packs the characters of the content from the specified depth into a long, most
+     * significant first. Characters past the end of the content are 0.
+     */
+    private static long keyOf(String content, int depth) {
+        int end = Math.min(content.length(), depth + COUNT_CHARS_KEY);
+        long key = 0;
+        for (int i = depth; i < depth + COUNT_CHARS_KEY; i++) {
+            key = key << Character.SIZE | (i < end ? content.charAt(i) : 0);
+        }
+        return key;
+    }
+
+    /**
+     * Compares two lines sharing the same first depth characters, like Line.compareTo().
+     */
+    private static int compare(Line first, long firstKey, Line second, long secondKey, int depth) {
+        int comparison = Long.compareUnsigned(firstKey, secondKey);
+        if (comparison != 0) {
+            return comparison;
+        }
+
+        String firstContent = first.getContent();
+        String secondContent = second.getContent();
+        int firstLength = firstContent.length();
+        int secondLength = secondContent.length();
+        int end = Math.min(firstLength, secondLength);
+        for (int i = depth + COUNT_CHARS_KEY; i < end; i++) {
+            char firstChar = firstContent.charAt(i);
+            char secondChar = secondContent.charAt(i);
+            if (firstChar != secondChar) {
+                return firstChar - secondChar;
+            }
+        }
+        return compareByLengthAndId(first, second);
+    }
+
+    private static int compareByLengthAndId(Line first, Line second) {
+        int comparison = first.getContent().length() - second.getContent().length();
+        if (comparison != 0) {
+            return comparison;
+        }
+        return first.getId() - second.getId();
+    }
+}
@@ -0,0 +1,468 @@
+/**
+ * RegexQuery.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A search for the lines matching a regular expression, written between slashes and
+ * optionally followed by i to ignore case:
+ *      /conn(ect|ection) (refused|reset)/
+ *      /timeout after \d+ ?ms/i
+ * The expression is analysed for the literal strings that any match must contain, and
+ * the trigrams of these strings are looked up in a TrigramIndex. Only the lines holding
+ * the required trigrams are candidates, and the compiled Pattern only runs on those:
+ *      RegexQuery regex = RegexQuery.parse("/err(no|or)/");
+ *      IdCursor candidates = regex.candidates(trigramIndex, slots);
+ *      ... regex.matches(line.getContent()) ...
+ * The candidates of the first expression above contain "conn", and either "refused"
+ * or "reset". Expressions without any literal of three characters, like /\d+/, have
+ * every line as a candidate.
+ *
+ * A query reuses a single Matcher, so it must not be shared between threads.
+ */
+public class RegexQuery {
+
+    /**
+     * Constants
+     */
+    private static final Error ERROR_REGEX_INVALID = new Error("Invalid regular expression");
+
+    private static final char CHAR_DELIMITER = '/';
+    private static final String STRING_FLAGS = "i";
+    private static final char CHAR_FLAG_IGNORE_CASE = 'i';
+
+    // Inline flags which make literals in the expression mean something else
+    private static final String STRING_FLAGS_UNSUPPORTED = "xuU";
+
+    private static final int QUANTIFIER_ONCE = 0;
+    private static final int QUANTIFIER_OPTIONAL = 1;
+    private static final int QUANTIFIER_REPEATED = 2;
+
+    /**
+     * Properties
+     */
+    private final Matcher matcher_;
+    private final Requirement requirement_;
+
+    private RegexQuery(Pattern pattern) {
+        this.matcher_ = pattern.matcher("");
+        this.requirement_ = new Analyzer(pattern.pattern()).analyze();
+    }
+
+    /**
+     * Checks whether a search query is a regular expression between slashes.
+     * @param query a query string
+     * @return if the query should be parsed by parse()
+     */
+    public static boolean isRegex(String query) {
+        int end = query.lastIndexOf(CHAR_DELIMITER);
+        if (query.isEmpty() || query.charAt(0) != CHAR_DELIMITER || end == 0) {
+            return false;
+        }
+        for (int i = end + 1; i < query.length(); i++) {
+            if (STRING_FLAGS.indexOf(query.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles a regular expression query.
+     * @param query a query for which isRegex() holds
+     * @return the compiled query
+     * @throws Error error thrown when the expression is empty or invalid
+     */
+    public static RegexQuery parse(String query) throws Error {
+        int end = query.lastIndexOf(CHAR_DELIMITER);
+        if (end <= 1) {
+            throw ERROR_REGEX_INVALID;
+        }
+        int flags = query.indexOf(CHAR_FLAG_IGNORE_CASE, end) > end ? Pattern.CASE_INSENSITIVE : 0;
+        try {
+            return new RegexQuery(Pattern.compile(query.substring(1, end), flags));
+        } catch (PatternSyntaxException e) {
+            throw ERROR_REGEX_INVALID;
+        }
+    }
+
+    /**
+     * Returns a cursor over the ids of the lines that may match the expression.
+     * @param index the trigrams of the lines
+     * @param slots the number of line ids
+     * @return a cursor over the candidate ids
+     */
+    public IdCursor candidates(TrigramIndex index, int slots) {
+        return this.requirement_ == null ? IdCursor.all(slots) : this.requirement_.cursor(index);
+    }
+
+    /**
+     * Checks whether the expression matches somewhere inside the content of a line.
+     * @param content the content of a line
+     * @return if the line matches
+     */
+    public boolean matches(CharSequence content) {
+        return this.matcher_.reset(content).find();
+    }
+
+    /**
+     * Trigrams that the lines matching an expression must contain. A null requirement
+     * is met by every line.
+     */
+    private abstract static class Requirement {
+
+        abstract IdCursor cursor(TrigramIndex index);
+
+        static Requirement allOf(List<Requirement> parts) {
+            parts.removeIf(part -> part == null);
+            if (parts.isEmpty()) {
+                return null;
+            }
+            return parts.size() == 1 ? parts.get(0) : new AllOf(parts);
+        }
+
+        static Requirement anyOf(List<Requirement> parts) {
+            if (parts.contains(null)) {
+                return null;
+            }
+            return parts.size() == 1 ? parts.get(0) : new AnyOf(parts);
+        }
+
+        static Requirement literal(CharSequence literal) {
+            LinkedHashSet<Long> trigrams = new LinkedHashSet<>();
+            for (int i = 0; i + TrigramIndex.LENGTH_TRIGRAM <= literal.length(); i++) {
+                trigrams.add(TrigramIndex.trigramOf(literal, i));
+            }
+            List<Requirement> parts = new ArrayList<>();
+            for (long trigram : trigrams) {
+                parts.add(new Trigram(trigram));
+            }
+            return allOf(parts);
+        }
+    }
+
+    private static class Trigram extends Requirement {
+        private final long trigram_;
+
+        Trigram(long trigram) {
+            this.trigram_ = trigram;
+        }
+
+        @Override
+        IdCursor cursor(TrigramIndex index) {
+            PostingList postings = index.get(this.trigram_);
+            return postings == null ? IdCursor.of(new int[0], 0) : postings.cursor();
+        }
+    }
+
+    private static class AllOf extends Requirement {
+        private final List<Requirement> parts_;
+
+        AllOf(List<Requirement> parts) {
+            this.parts_ = parts;
+        }
+
+        @Override
+        IdCursor cursor(TrigramIndex index) {
+            IdCursor[] cursors = new IdCursor[this.parts_.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = this.parts_.get(i).cursor(index);
+            }
+            Arrays.sort(cursors, Comparator.comparingInt(IdCursor::cost));
+            return new Query.Intersection(cursors, new IdCursor[0]);
+        }
+    }
+
+    private static class AnyOf extends Requirement {
+        private final List<Requirement> parts_;
+
+        AnyOf(List<Requirement> parts) {
+            this.parts_ = parts;
+        }
+
+        @Override
+        IdCursor cursor(TrigramIndex index) {
+            IdCursor[] cursors = new IdCursor[this.parts_.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = this.parts_.get(i).cursor(index);
+            }
+            return new Query.Union(cursors);
+        }
+    }
+
+    /**
+     * Walks a valid expression to find its required literals. Runs of literal
+     * characters are broken by anything else, and parts that may be skipped, such as
+     * optional characters, lookarounds or classes, require nothing. Alternatives
+     * require any one of their branches. Whatever is not understood requires nothing,
+     * so the requirement can only be looser than the expression.
+     */
+    private static class Analyzer {
+        private final String pattern_;
+        private int position_;
+        private boolean isSupported_;
+
+        Analyzer(String pattern) {
+            this.pattern_ = pattern;
+            this.position_ = 0;
+            this.isSupported_ = true;
+        }
+
+        Requirement analyze() {
+            Requirement requirement = this.alternation();
+            return this.isSupported_ ? requirement : null;
+        }
+
+        private Requirement alternation() {
+            List<Requirement> branches = new ArrayList<>();
+            branches.add(this.sequence());
+            while (this.hasMore() && this.peek() == '|') {
+                this.position_++;
+                branches.add(this.sequence());
+            }
+            return Requirement.anyOf(branches);
+        }
+
+        private Requirement sequence() {
+            List<Requirement> parts = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            while (this.hasMore() && this.peek() != '|' && this.peek() != ')') {
+                String atomLiteral = null;
+                Requirement atom = null;
+                char c = this.peek();
+                if (c == '(') {
+                    atom = this.group();
+                } else if (c == '[') {
+                    this.skipClass();
+                } else if (c == '\\') {
+                    atomLiteral = this.escape(literal);
+                } else if (c == '.' || c == '^' || c == '$') {
+                    this.position_++;
+                } else {
+                    atomLiteral = this.character();
+                }
+
+                int quantifier = this.quantifier();
+                if (atomLiteral == null || quantifier == QUANTIFIER_OPTIONAL) {
+                    parts.add(Requirement.literal(literal));
+                    literal.setLength(0);
+                    if (quantifier != QUANTIFIER_OPTIONAL) {
+                        parts.add(atom);
+                    }
+                } else if (quantifier == QUANTIFIER_REPEATED) {
+                    // Matches end with the last repetition, so the run can go on from it
+                    literal.append(atomLiteral);
+                    parts.add(Requirement.literal(literal));
+                    literal.setLength(0);
+                    literal.append(atomLiteral);
+                } else {
+                    literal.append(atomLiteral);
+                }
+            }
+            parts.add(Requirement.literal(literal));
+            return Requirement.allOf(parts);
+        }
+
+        private Requirement group() {
+            this.position_++;
+            boolean isLookaround = false;
+            if (this.peek() == '?') {
+                this.position_++;
+                char kind = this.peek();
+                if (kind == ':' || kind == '>') {
+                    this.position_++;
+                } else if (kind == '=' || kind == '!') {
+                    this.position_++;
+                    isLookaround = true;
+                } else if (kind == '<') {
+                    this.position_++;
+                    if (this.peek() == '=' || this.peek() == '!') {
+                        this.position_++;
+                        isLookaround = true;
+                    } else {
+                        this.skipPast('>');
+                    }
+                } else {
+                    int start = this.position_;
+                    while (this.peek() != ':' && this.peek() != ')') {
+                        this.position_++;
+                    }
+                    for (int i = start; i < this.position_; i++) {
+                        if (STRING_FLAGS_UNSUPPORTED.indexOf(this.pattern_.charAt(i)) >= 0) {
+                            this.isSupported_ = false;
+                        }
+                    }
+                    if (this.pattern_.charAt(this.position_++) == ')') {
+                        return null;
+                    }
+                }
+            }
+
+            Requirement inner = this.alternation();
+            this.position_++;
+            return isLookaround ? null : inner;
+        }
+
+        private void skipClass() {
+            this.position_++;
+            if (this.peek() == '^') {
+                this.position_++;
+            }
+            // A bracket right at the start of a class is part of it
+            if (this.peek() == ']') {
+                this.position_++;
+            }
+            int depth = 1;
+            while (depth > 0) {
+                char c = this.pattern_.charAt(this.position_++);
+                if (c == '\\' && this.peek() == 'Q') {
+                    // Brackets between \Q and \E are quoted, and do not open or close a class
+                    int end = this.pattern_.indexOf("\\E", this.position_);
+                    this.position_ = end < 0 ? this.pattern_.length() : end + 2;
+                } else if (c == '\\') {
+                    this.position_++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * Reads an escape sequence, returning the character it stands for, or null if it
+         * is not a literal character. Quoted text is added to the run of literals, except
+         * for its last character which is returned as any quantifier applies to it.
+         */
+        private String escape(StringBuilder literal) {
+            this.position_++;
+            char c = this.pattern_.charAt(this.position_++);
+            switch (c) {
+                case 't':
+                    return "\t";
+                case 'n':
+                    return "\n";
+                case 'r':
+                    return "\r";
+                case 'f':
+                    return "\f";
+                case 'a':
+                    return "\u0007";
+                case 'e':
+                    return "\u001B";
+                case 'Q':
+                    int end = this.pattern_.indexOf("\\E", this.position_);
+                    String quoted = this.pattern_.substring(this.position_, end < 0 ? this.pattern_.length() : end);
+                    this.position_ = end < 0 ? this.pattern_.length() : end + 2;
+                    if (quoted.isEmpty()) {
+                        return "";
+                    }
+                    literal.append(quoted, 0, quoted.length() - 1);
+                    return quoted.substring(quoted.length() - 1);
+                case 'x':
+                case 'p':
+                case 'P':
+                case 'N':
+                case 'b':
+                    if (this.hasMore() && this.peek() == '{') {
+                        this.skipPast('}');
+                    } else if (c == 'x') {
+                        this.position_ += 2;
+                    } else if (c == 'p' || c == 'P') {
+                        this.position_++;
+                    }
+                    return null;
+                case 'u':
+                    this.position_ += 4;
+                    return null;
+                case 'c':
+                    this.position_++;
+                    return null;
+                case 'k':
+                    this.skipPast('>');
+                    return null;
+                case '0':
+                    for (int i = 0; i < 3 && this.hasMore() && this.peek() >= '0' && this.peek() <= '7'; i++) {
+                        this.position_++;
+                    }
+                    return null;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // Classes, boundaries and back references
+                        while (c >= '1' && c <= '9' && this.hasMore() && Character.isDigit(this.peek())) {
+                            this.position_++;
+                        }
+                        return null;
+                    }
+                    return String.valueOf(c);
+            }
+        }
+
+        private String character() {
+            int start = this.position_++;
+            if (Character.isHighSurrogate(this.pattern_.charAt(start))
+                    && this.hasMore() && Character.isLowSurrogate(this.peek())) {
+                this.position_++;
+            }
+            return this.pattern_.substring(start, this.position_);
+        }
+
+        /**
+         * Reads the quantifier after an atom, if any.
+         * @return one of the QUANTIFIER_ constants
+         */
+        private int quantifier() {
+            if (!this.hasMore()) {
+                return QUANTIFIER_ONCE;
+            }
+
+            int quantifier;
+            char c = this.peek();
+            if (c == '?' || c == '*') {
+                quantifier = QUANTIFIER_OPTIONAL;
+                this.position_++;
+            } else if (c == '+') {
+                quantifier = QUANTIFIER_REPEATED;
+                this.position_++;
+            } else if (c == '{') {
+                int start = this.position_ + 1;
+                this.skipPast('}');
+                String bounds = this.pattern_.substring(start, this.position_ - 1);
+                if (Integer.parseInt(bounds.split(",", -1)[0].trim()) == 0) {
+                    quantifier = QUANTIFIER_OPTIONAL;
+                } else {
+                    quantifier = bounds.equals("1") ? QUANTIFIER_ONCE : QUANTIFIER_REPEATED;
+                }
+            } else {
+                return QUANTIFIER_ONCE;
+            }
+
+            // Lazy and possessive quantifiers require the same
+            if (this.hasMore() && (this.peek() == '?' || this.peek() == '+')) {
+                this.position_++;
+            }
+            return quantifier;
+        }
+
+        private void skipPast(char c) {
+            this.position_ = this.pattern_.indexOf(c, this.position_) + 1;
+        }
+
+        private boolean hasMore() {
+            return this.position_ < this.pattern_.length();
+        }
+
+        private char peek() {
+            return this.pattern_.charAt(this.position_);
+        }
+    }
+}
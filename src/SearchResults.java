@@ -0,0 +1,105 @@
+/**
+ * SearchResults.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * The line numbers matched by a search, counting from 0, kept as a sorted array of
+ * primitive ints. The line numbers are already in line order, and can be read
+ * without boxing either by index or through the primitive iterator:
+ *      SearchResults results = linesList.search("lorem");
+ *      for (int i = 0; i < results.size(); i++) {
+ *          int lineNumber = results.get(i);
+ *      }
+ * Iterating with a for-each loop still works, but boxes every line number.
+ */
+public class SearchResults implements Iterable<Integer> {
+
+    /**
+     * Properties
+     */
+    private final int[] lineNumbers_;
+    private final int count_;
+
+    /**
+     * Constructs the results from the first line numbers of an array, which must be
+     * sorted in increasing order and must not be modified afterwards.
+     * @param lineNumbers the matched line numbers in increasing order
+     * @param count the number of line numbers used from the array
+     */
+    public SearchResults(int[] lineNumbers, int count) {
+        this.lineNumbers_ = lineNumbers;
+        this.count_ = count;
+    }
+
+    /**
+     * Returns the number of matched lines.
+     * @return the number of line numbers
+     */
+    public int size() {
+        return this.count_;
+    }
+
+    /**
+     * Returns the line number at the specified index of the results.
+     * @param index the index inside the results
+     * @return the line number
+     * @throws IndexOutOfBoundsException exception thrown when the index is beyond the number of results
+     */
+    public int get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= this.count_) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count_);
+        }
+        return this.lineNumbers_[index];
+    }
+
+    /**
+     * Checks whether the line was matched, in O(log n).
+     * @param lineNumber a line number
+     * @return if the line number is part of the results
+     */
+    public boolean contains(int lineNumber) {
+        return Arrays.binarySearch(this.lineNumbers_, 0, this.count_, lineNumber) >= 0;
+    }
+
+    /**
+     * Returns a new array of the line numbers in increasing order.
+     * @return an array of the line numbers
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(this.lineNumbers_, this.count_);
+    }
+
+    /**
+     * Returns a stream of the line numbers in increasing order.
+     * @return a stream of the line numbers
+     */
+    public IntStream stream() {
+        return Arrays.stream(this.lineNumbers_, 0, this.count_);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int next_ = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next_ < SearchResults.this.count_;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return SearchResults.this.lineNumbers_[this.next_++];
+            }
+        };
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * SortOrder.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.text.Collator;
+
+/**
+ * The order in which the sort command arranges lines, parsed from the options given
+ * to the command:
+ *      sort                alphabetical order, like String.compareTo()
+ *      sort -i             alphabetical order, ignoring case
+ *      sort -c             collated order of the default locale
+ *      sort -n             numeric order of the number the line starts with
+ *      sort -l             order of line length
+ *      sort -k 3           any of the above, from the third field to the end of the line
+ * Flags can be combined, as in "sort -i -k 2" or "sort -nk2". Fields are separated by
+ * whitespace and counted from 1.
+ *
+ * Except for the alphabetical order, lines are not compared directly. Every line gets
+ * a sort key computed once, encoded as a string whose alphabetical order is the order
+ * wanted, so that the keys can be sorted with the same radix sort as plain lines:
+ *      String key = sortOrder.keyOf(line);
+ * Lines with equal keys keep their relative order.
+ */
+public class SortOrder {
+
+    /**
+     * Constants
+     */
+    private static final Error ERROR_SORT_OPTION_INVALID = new Error("Invalid sort option");
+    private static final Error ERROR_SORT_OPTIONS_CONFLICTING = new Error("Conflicting sort options");
+
+    private static final String STRING_DELIMITER_OPTIONS = "\\s+";
+    private static final String STRING_PREFIX_OPTION = "-";
+    private static final char CHAR_OPTION_IGNORE_CASE = 'i';
+    private static final char CHAR_OPTION_COLLATED = 'c';
+    private static final char CHAR_OPTION_NUMERIC = 'n';
+    private static final char CHAR_OPTION_LENGTH = 'l';
+    private static final char CHAR_OPTION_FIELD = 'k';
+
+    private static final String STRING_ORDER_ALPHABETICAL = "alphabetical";
+    private static final String STRING_ORDER_COLLATED = "collated";
+    private static final String STRING_ORDER_NUMERIC = "numeric";
+    private static final String STRING_ORDER_LENGTH = "length";
+    private static final String STRING_FORMAT_ORDER = "%1$s order";
+    private static final String STRING_FORMAT_ORDER_IGNORE_CASE = "case-insensitive %1$s";
+    private static final String STRING_FORMAT_ORDER_FIELD = "%1$s from field %2$d";
+
+    private static final int COUNT_CHARS_LONG = 4;
+
+    public static final SortOrder ALPHABETICAL = new SortOrder(Key.TEXT, false, 0);
+
+    /**
+     * What the keys of the lines are made of
+     */
+    private enum Key {
+        TEXT, COLLATED, NUMERIC, LENGTH
+    }
+
+    /**
+     * Properties
+     */
+    private final Key key_;
+    private final boolean isCaseIgnored_;
+    private final int field_;
+    private final ThreadLocal<Collator> collator_;
+
+    private SortOrder(Key key, boolean isCaseIgnored, int field) {
+        this.key_ = key;
+        this.isCaseIgnored_ = isCaseIgnored;
+        this.field_ = field;
+
+        // Collators are not safe to share between the threads computing keys
+        this.collator_ = ThreadLocal.withInitial(() -> {
+            Collator collator = Collator.getInstance();
+            collator.setStrength(isCaseIgnored ? Collator.SECONDARY : Collator.TERTIARY);
+            return collator;
+        });
+    }
+
+    /**
+     * Parses the options of the sort command.
+     * @param options the options, or null for the alphabetical order
+     * @return the order described by the options
+     * @throws Error error thrown when an option is unknown or options conflict
+     */
+    public static SortOrder parse(String options) throws Error {
+        if (options == null || options.trim().isEmpty()) {
+            return ALPHABETICAL;
+        }
+
+        Key key = Key.TEXT;
+        boolean isCaseIgnored = false;
+        int field = 0;
+
+        String[] words = options.trim().split(STRING_DELIMITER_OPTIONS);
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (!word.startsWith(STRING_PREFIX_OPTION) || word.length() == STRING_PREFIX_OPTION.length()) {
+                throw ERROR_SORT_OPTION_INVALID;
+            }
+
+            for (int j = STRING_PREFIX_OPTION.length(); j < word.length(); j++) {
+                char option = word.charAt(j);
+                switch (option) {
+                    case CHAR_OPTION_IGNORE_CASE:
+                        isCaseIgnored = true;
+                        break;
+                    case CHAR_OPTION_COLLATED:
+                        key = combine(key, Key.COLLATED);
+                        break;
+                    case CHAR_OPTION_NUMERIC:
+                        key = combine(key, Key.NUMERIC);
+                        break;
+                    case CHAR_OPTION_LENGTH:
+                        key = combine(key, Key.LENGTH);
+                        break;
+                    case CHAR_OPTION_FIELD:
+                        // The field number is either the rest of the word or the next word
+                        String number = word.substring(j + 1);
+                        if (number.isEmpty()) {
+                            if (++i == words.length) {
+                                throw ERROR_SORT_OPTION_INVALID;
+                            }
+                            number = words[i];
+                        }
+                        field = parseField(number);
+                        j = word.length();
+                        break;
+                    default:
+                        throw ERROR_SORT_OPTION_INVALID;
+                }
+            }
+        }
+
+        if (key == Key.TEXT && !isCaseIgnored && field == 0) {
+            return ALPHABETICAL;
+        }
+        return new SortOrder(key, isCaseIgnored, field);
+    }
+
+    private static Key combine(Key current, Key requested) throws Error {
+        if (current != Key.TEXT && current != requested) {
+            throw ERROR_SORT_OPTIONS_CONFLICTING;
+        }
+        return requested;
+    }
+
+    private static int parseField(String number) throws Error {
+        try {
+            int field = Integer.parseInt(number);
+            if (field < 1) {
+                throw ERROR_SORT_OPTION_INVALID;
+            }
+            return field;
+        } catch (NumberFormatException e) {
+            throw ERROR_SORT_OPTION_INVALID;
+        }
+    }
+
+    /**
+     * Checks whether this is the plain alphabetical order, in which lines are compared
+     * directly instead of through keys.
+     * @return if lines are sorted like String.compareTo()
+     */
+    public boolean isAlphabetical() {
+        return this == ALPHABETICAL;
+    }
+
+    /**
+     * Computes the sort key of a line. Lines are in this order exactly when their keys
+     * are in alphabetical order.
+     * @param content the content of the line
+     * @return the key of the line
+     */
+    public String keyOf(String content) {
+        String text = this.field_ == 0 ? content : fieldOf(content, this.field_);
+        switch (this.key_) {
+            case COLLATED:
+                return bytesToString(this.collator_.get().getCollationKey(text).toByteArray());
+            case NUMERIC:
+                return longToString(sortableBits(parseLeadingNumber(text)));
+            case LENGTH:
+                return longToString(text.length());
+            default:
+                return this.isCaseIgnored_ ? Tokenizer.fold(text) : text;
+        }
+    }
+
+    /**
+     * Returns the options that parse back into this order.
+     * @return the options, empty for the alphabetical order
+     */
+    public String toOptions() {
+        StringBuilder options = new StringBuilder();
+        if (this.isCaseIgnored_) {
+            options.append(STRING_PREFIX_OPTION).append(CHAR_OPTION_IGNORE_CASE);
+        }
+        char keyOption = 0;
+        switch (this.key_) {
+            case COLLATED:
+                keyOption = CHAR_OPTION_COLLATED;
+                break;
+            case NUMERIC:
+                keyOption = CHAR_OPTION_NUMERIC;
+                break;
+            case LENGTH:
+                keyOption = CHAR_OPTION_LENGTH;
+                break;
+        }
+        if (keyOption != 0) {
+            options.append(options.length() > 0 ? " " : "").append(STRING_PREFIX_OPTION).append(keyOption);
+        }
+        if (this.field_ > 0) {
+            options.append(options.length() > 0 ? " " : "")
+                    .append(STRING_PREFIX_OPTION).append(CHAR_OPTION_FIELD).append(this.field_);
+        }
+        return options.toString();
+    }
+
+    /**
+     * Describes the order to the user.
+     * @return a description such as "case-insensitive alphabetical order"
+     */
+    public String describe() {
+        String order;
+        switch (this.key_) {
+            case COLLATED:
+                order = STRING_ORDER_COLLATED;
+                break;
+            case NUMERIC:
+                order = STRING_ORDER_NUMERIC;
+                break;
+            case LENGTH:
+                order = STRING_ORDER_LENGTH;
+                break;
+            default:
+                order = STRING_ORDER_ALPHABETICAL;
+        }
+        if (this.isCaseIgnored_ && (this.key_ == Key.TEXT || this.key_ == Key.COLLATED)) {
+            order = String.format(STRING_FORMAT_ORDER_IGNORE_CASE, order);
+        }
+        order = String.format(STRING_FORMAT_ORDER, order);
+        if (this.field_ > 0) {
+            order = String.format(STRING_FORMAT_ORDER_FIELD, order, this.field_);
+        }
+        return order;
+    }
+
+    /**
+     * Returns the content from the start of the field to the end of the line, or an
+     * empty string if the line has fewer fields.
+     */
+    private static String fieldOf(String content, int field) {
+        Tokenizer tokenizer = new Tokenizer().reset(content);
+        for (int i = 0; i < field; i++) {
+            if (!tokenizer.next()) {
+                return "";
+            }
+        }
+        return content.substring(tokenizer.start());
+    }
+
+    /**
+     * Reads the number at the start of the text, after any whitespace: an optional
+     * sign, digits and an optional decimal part. Text not starting with a number
+     * counts as 0.
+     */
+    private static double parseLeadingNumber(String text) {
+        int length = text.length();
+        int start = 0;
+        while (start < length && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        if (end < length && (text.charAt(end) == '-' || text.charAt(end) == '+')) {
+            end++;
+        }
+        int digitsStart = end;
+        while (end < length && Character.isDigit(text.charAt(end))) {
+            end++;
+        }
+        if (end < length && text.charAt(end) == '.') {
+            end++;
+            while (end < length && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+        }
+        if (end == digitsStart || (end == digitsStart + 1 && text.charAt(digitsStart) == '.')) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(text.substring(start, end));
+        } catch (NumberFormatException e) {
+            // Digits outside of ASCII are not understood by parseDouble()
+            return 0;
+        }
+    }
+
+    /**
+     * Maps a double to a long whose unsigned order is the numeric order of doubles.
+     */
+    private static long sortableBits(double number) {
+        long bits = Double.doubleToLongBits(number + 0.0);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Encodes a long as 4 characters, most significant first, so that strings compare
+     * like the unsigned longs.
+     */
+    private static String longToString(long value) {
+        char[] chars = new char[COUNT_CHARS_LONG];
+        for (int i = COUNT_CHARS_LONG - 1; i >= 0; i--) {
+            chars[i] = (char) value;
+            value >>>= Character.SIZE;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes bytes as one character each, so that strings compare like the unsigned
+     * bytes, which is the order of collation keys.
+     */
+    private static String bytesToString(byte[] bytes) {
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+}
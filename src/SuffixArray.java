@@ -0,0 +1,390 @@
+/**
+ * SuffixArray.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A substring index over the content of lines. The case-folded lines are joined into
+ * one text, each followed by a line feed, and every suffix of the text is sorted. All
+ * the occurrences of a substring then sit next to each other, as the suffixes starting
+ * with it, and are found with two binary searches:
+ *      SuffixArray suffixArray = new SuffixArray(linesById);
+ *      int[] ids = suffixArray.idsContaining("timeout");
+ * Unlike the word index, this finds text inside words (ReadTimeoutException) and text
+ * made of several words or punctuation (user=42). Suffixes are sorted in linear time
+ * with SA-IS (Nong, Zhang and Chan), which induces the order of all suffixes from the
+ * order of a few of them, recursing on a string at most half as long.
+ *
+ * The array is immutable and covers the lines given to the constructor. Lines are
+ * identified by their index in that list, and null entries stand for removed lines.
+ * Building the array of a large text takes a while, so a build that is no longer
+ * needed can be cancelled, which is checked between the phases of SA-IS.
+ */
+public class SuffixArray {
+
+    /**
+     * Constants
+     */
+    private static final char CHAR_SEPARATOR = '\n';
+    private static final int SIZE_ALPHABET = Character.MAX_VALUE + 2;
+    private static final int SYMBOL_SENTINEL = 0;
+    private static final int SUFFIX_NONE = -1;
+
+    /**
+     * Properties
+     */
+    private final char[] text_;
+    private final int[] suffixes_;
+    private final int[] lineStarts_;
+
+    /**
+     * Builds the suffix array of the lines.
+     * @param linesById the lines to index, with null for the ids of removed lines
+     */
+    public SuffixArray(List<Line> linesById) {
+        this(linesById, () -> false);
+    }
+
+    /**
+     * Builds the suffix array of the lines, unless the build is cancelled.
+     * @param linesById the lines to index, with null for the ids of removed lines
+     * @param isCancelled checks whether the array is still needed
+     * @throws CancellationException exception thrown when the build was cancelled
+     */
+    public SuffixArray(List<Line> linesById, BooleanSupplier isCancelled) throws CancellationException {
+        int length = 0;
+        for (Line line : linesById) {
+            length += (line == null ? 0 : line.getContent().length()) + 1;
+        }
+
+        this.text_ = new char[length];
+        this.lineStarts_ = new int[linesById.size() + 1];
+        int position = 0;
+        for (int id = 0; id < linesById.size(); id++) {
+            this.lineStarts_[id] = position;
+            Line line = linesById.get(id);
+            if (line != null) {
+                String content = line.getContent();
+                for (int i = 0; i < content.length(); i++) {
+                    this.text_[position++] = Tokenizer.fold(content.charAt(i));
+                }
+            }
+            this.text_[position++] = CHAR_SEPARATOR;
+        }
+        this.lineStarts_[linesById.size()] = position;
+
+        // Symbols are characters shifted by one, leaving 0 for the sentinel ending the text
+        int[] symbols = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            symbols[i] = this.text_[i] + 1;
+        }
+        symbols[length] = SYMBOL_SENTINEL;
+        int[] suffixes = new int[length + 1];
+        sortSuffixes(symbols, suffixes, length + 1, SIZE_ALPHABET, isCancelled);
+
+        // The sentinel suffix always comes first
+        this.suffixes_ = Arrays.copyOfRange(suffixes, 1, length + 1);
+    }
+
+    /**
+     * Returns the number of line ids covered by the array.
+     * @return the number of lines given to the constructor
+     */
+    public int slots() {
+        return this.lineStarts_.length - 1;
+    }
+
+    /**
+     * Finds the lines containing a substring.
+     * @param substring a case-folded string without line feeds
+     * @return the ids of the lines containing the substring, in increasing order
+     */
+    public int[] idsContaining(String substring) {
+        int from = this.search(substring, false);
+        int to = this.search(substring, true);
+
+        // A substring occurring more often than there are lines is found faster by
+        // reading the whole text than by sorting its occurrences
+        if (to - from > this.slots()) {
+            return this.scan(substring);
+        }
+
+        // Occurrences in text order are mapped to their lines in a single pass, and a
+        // line containing the substring several times is listed once
+        int[] occurrences = Arrays.copyOfRange(this.suffixes_, from, to);
+        Arrays.sort(occurrences);
+        int[] ids = new int[occurrences.length];
+        int count = 0;
+        int id = 0;
+        for (int occurrence : occurrences) {
+            id = this.lineFrom(id, occurrence);
+            if (count == 0 || ids[count - 1] != id) {
+                ids[count++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Checks whether a text contains a substring, ignoring case like the index does.
+     * This is used for the lines that are not covered by an index.
+     * @param text a text
+     * @param substring a case-folded string
+     * @return if the text contains the substring
+     */
+    public static boolean contains(CharSequence text, String substring) {
+        int last = text.length() - substring.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < substring.length() && Tokenizer.fold(text.charAt(start + i)) == substring.charAt(i)) {
+                i++;
+            }
+            if (i == substring.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first suffix that comes after the substring, either including the
+     * suffixes starting with it or not. The characters known to be shared with both
+     * ends of the range are not compared again.
+     */
+    private int search(String substring, boolean isAfterSubstring) {
+        int low = 0;
+        int high = this.suffixes_.length;
+        int lowMatch = 0;
+        int highMatch = 0;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int suffix = this.suffixes_[middle];
+            int matched = Math.min(lowMatch, highMatch);
+            while (matched < substring.length() && suffix + matched < this.text_.length
+                    && this.text_[suffix + matched] == substring.charAt(matched)) {
+                matched++;
+            }
+
+            boolean isBefore;
+            if (matched == substring.length()) {
+                isBefore = isAfterSubstring;
+            } else {
+                isBefore = suffix + matched == this.text_.length
+                        || this.text_[suffix + matched] < substring.charAt(matched);
+            }
+            if (isBefore) {
+                low = middle + 1;
+                lowMatch = matched;
+            } else {
+                high = middle;
+                highMatch = matched;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the line of a position of the text, galloping forward from a line at or
+     * before it, so that nearby positions cost little to map.
+     */
+    private int lineFrom(int id, int position) {
+        int step = 1;
+        int high = id + step;
+        while (high < this.lineStarts_.length && this.lineStarts_[high] <= position) {
+            id = high;
+            step <<= 1;
+            high = id + step;
+        }
+        high = Math.min(high, this.lineStarts_.length);
+        while (id + 1 < high) {
+            int middle = (id + high) >>> 1;
+            if (this.lineStarts_[middle] <= position) {
+                id = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return id;
+    }
+
+    private int[] scan(String substring) {
+        int[] ids = new int[this.slots()];
+        int count = 0;
+        for (int id = 0; id < ids.length; id++) {
+            int last = this.lineStarts_[id + 1] - 1 - substring.length();
+            for (int start = this.lineStarts_[id]; start <= last; start++) {
+                int i = 0;
+                while (i < substring.length() && this.text_[start + i] == substring.charAt(i)) {
+                    i++;
+                }
+                if (i == substring.length()) {
+                    ids[count++] = id;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Sorts the suffixes of a string ending with a unique smallest symbol, with SA-IS.
+     * @param s the string, whose symbols are in [0, alphabetSize)
+     * @param sa receives the start of every suffix in sorted order
+     * @param n the length of the string
+     * @param alphabetSize the number of distinct symbols the string may use
+     * @param isCancelled checks whether the sort is still needed
+     */
+    private static void sortSuffixes(int[] s, int[] sa, int n, int alphabetSize, BooleanSupplier isCancelled) {
+        if (n == 1) {
+            sa[0] = 0;
+            return;
+        }
+
+        // A suffix is of type S if it is smaller than the suffix after it, and of type L
+        // otherwise. The leftmost S suffixes (LMS) of each run are sorted first.
+        boolean[] isS = new boolean[n];
+        isS[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            isS[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && isS[i + 1]);
+        }
+        int[] buckets = new int[alphabetSize];
+        checkCancelled(isCancelled);
+
+        // Place the LMS suffixes at the ends of their buckets, and induce the order of the
+        // other suffixes from them, which sorts the LMS substrings
+        Arrays.fill(sa, 0, n, SUFFIX_NONE);
+        bucketEnds(s, n, buckets);
+        for (int i = 1; i < n; i++) {
+            if (isLms(isS, i)) {
+                sa[--buckets[s[i]]] = i;
+            }
+        }
+        induce(s, sa, n, isS, buckets);
+        checkCancelled(isCancelled);
+
+        // Name the LMS substrings by their rank, equal substrings sharing a name
+        int lmsCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLms(isS, sa[i])) {
+                sa[lmsCount++] = sa[i];
+            }
+        }
+        Arrays.fill(sa, lmsCount, n, SUFFIX_NONE);
+        int names = 0;
+        int previous = SUFFIX_NONE;
+        for (int i = 0; i < lmsCount; i++) {
+            int position = sa[i];
+            if (previous == SUFFIX_NONE || !isSameLmsSubstring(s, isS, position, previous)) {
+                names++;
+                previous = position;
+            }
+            // LMS positions are at least two apart, so halving them cannot collide
+            sa[lmsCount + (position >> 1)] = names - 1;
+        }
+        int[] reduced = new int[lmsCount];
+        for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+            if (sa[i] != SUFFIX_NONE) {
+                reduced[j--] = sa[i];
+            }
+        }
+
+        // Sort the LMS suffixes, recursing when their substrings alone do not tell them apart
+        int[] reducedSa = new int[lmsCount];
+        if (names < lmsCount) {
+            sortSuffixes(reduced, reducedSa, lmsCount, names, isCancelled);
+        } else {
+            for (int i = 0; i < lmsCount; i++) {
+                reducedSa[reduced[i]] = i;
+            }
+        }
+
+        checkCancelled(isCancelled);
+
+        // Place the sorted LMS suffixes, and induce the final order from them
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLms(isS, i)) {
+                reduced[j++] = i;
+            }
+        }
+        Arrays.fill(sa, 0, n, SUFFIX_NONE);
+        bucketEnds(s, n, buckets);
+        for (int i = lmsCount - 1; i >= 0; i--) {
+            int position = reduced[reducedSa[i]];
+            sa[--buckets[s[position]]] = position;
+        }
+        induce(s, sa, n, isS, buckets);
+    }
+
+    private static void checkCancelled(BooleanSupplier isCancelled) throws CancellationException {
+        if (isCancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Induces the order of the L suffixes from left to right, then of the S suffixes
+     * from right to left.
+     */
+    private static void induce(int[] s, int[] sa, int n, boolean[] isS, int[] buckets) {
+        bucketStarts(s, n, buckets);
+        for (int i = 0; i < n; i++) {
+            int previous = sa[i] - 1;
+            if (sa[i] > 0 && !isS[previous]) {
+                sa[buckets[s[previous]]++] = previous;
+            }
+        }
+        bucketEnds(s, n, buckets);
+        for (int i = n - 1; i >= 0; i--) {
+            int previous = sa[i] - 1;
+            if (sa[i] > 0 && isS[previous]) {
+                sa[--buckets[s[previous]]] = previous;
+            }
+        }
+    }
+
+    private static boolean isSameLmsSubstring(int[] s, boolean[] isS, int first, int second) {
+        for (int d = 0; ; d++) {
+            if (s[first + d] != s[second + d] || isS[first + d] != isS[second + d]) {
+                return false;
+            }
+            if (d > 0 && (isLms(isS, first + d) || isLms(isS, second + d))) {
+                return isLms(isS, first + d) && isLms(isS, second + d);
+            }
+        }
+    }
+
+    private static boolean isLms(boolean[] isS, int i) {
+        return i > 0 && isS[i] && !isS[i - 1];
+    }
+
+    private static void bucketStarts(int[] s, int n, int[] buckets) {
+        countSymbols(s, n, buckets);
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            int count = buckets[c];
+            buckets[c] = sum;
+            sum += count;
+        }
+    }
+
+    private static void bucketEnds(int[] s, int n, int[] buckets) {
+        countSymbols(s, n, buckets);
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = sum;
+        }
+    }
+
+    private static void countSymbols(int[] s, int n, int[] buckets) {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++) {
+            buckets[s[i]]++;
+        }
+    }
+}
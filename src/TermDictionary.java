@@ -0,0 +1,172 @@
+/**
+ * TermDictionary.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+import java.util.Arrays;
+
+/**
+ * The terms of an InvertedIndex kept in sorted order, so that all the terms starting
+ * with a prefix are found with two binary searches, as a range of the dictionary:
+ *      TermDictionary dictionary = new TermDictionary(index, false);
+ *      int[] range = dictionary.rangeOf("err");
+ *      for (int i = range[0]; i < range[1]; i++) {
+ *          int termId = dictionary.termIdAt(i);
+ *      }
+ * A reversed dictionary sorts terms by their characters read from the end, so that
+ * its ranges hold the terms ending with a suffix instead.
+ *
+ * The index only ever gains terms, so the dictionary is brought up to date by sorting
+ * the terms added since the last update and merging them in.
+ */
+public class TermDictionary {
+
+    /**
+     * Constants
+     */
+    private static final int INDEX_RANGE_FROM = 0;
+    private static final int INDEX_RANGE_TO = 1;
+
+    /**
+     * Properties
+     */
+    private final InvertedIndex index_;
+    private final boolean isReversed_;
+    private int[] termIds_;
+    private int count_;
+
+    /**
+     * Constructs a dictionary over the terms of the index.
+     * @param index the index holding the terms
+     * @param isReversed whether terms are ordered by their characters from the end
+     */
+    public TermDictionary(InvertedIndex index, boolean isReversed) {
+        this.index_ = index;
+        this.isReversed_ = isReversed;
+        this.termIds_ = new int[0];
+        this.count_ = 0;
+    }
+
+    /**
+     * Returns the range of the dictionary holding the terms that start with the
+     * prefix, or end with the suffix for a reversed dictionary.
+     * @param affix a case-folded prefix or suffix
+     * @return the start (inclusive) and end (exclusive) of the range
+     */
+    public int[] rangeOf(String affix) {
+        this.update();
+        int[] range = new int[2];
+        range[INDEX_RANGE_FROM] = this.search(affix, false);
+        range[INDEX_RANGE_TO] = this.search(affix, true);
+        return range;
+    }
+
+    /**
+     * Returns the position of the first term that does not come before the word.
+     * @param word a case-folded word
+     * @return the position of the term, or size() if every term comes before the word
+     */
+    public int ceiling(String word) {
+        this.update();
+        return this.search(word, false);
+    }
+
+    /**
+     * Returns the number of terms in the dictionary.
+     * @return the number of terms
+     */
+    public int size() {
+        this.update();
+        return this.count_;
+    }
+
+    /**
+     * Returns the term id at a position of the dictionary.
+     * @param position a position inside a range returned by rangeOf(), or below size()
+     * @return the term id
+     */
+    public int termIdAt(int position) {
+        return this.termIds_[position];
+    }
+
+    /**
+     * Merges the terms added to the index since the last update into the dictionary.
+     */
+    private void update() {
+        int termCount = this.index_.termCount();
+        if (this.count_ == termCount) {
+            return;
+        }
+
+        Integer[] newTermIds = new Integer[termCount - this.count_];
+        for (int i = 0; i < newTermIds.length; i++) {
+            newTermIds[i] = this.count_ + i;
+        }
+        Arrays.sort(newTermIds, (first, second) -> this.compare(first, second));
+
+        int[] termIds = new int[termCount];
+        int old = 0;
+        int added = 0;
+        for (int i = 0; i < termCount; i++) {
+            if (added == newTermIds.length
+                    || (old < this.count_ && this.compare(this.termIds_[old], newTermIds[added]) <= 0)) {
+                termIds[i] = this.termIds_[old++];
+            } else {
+                termIds[i] = newTermIds[added++];
+            }
+        }
+        this.termIds_ = termIds;
+        this.count_ = termCount;
+    }
+
+    /**
+     * Finds the first position whose term comes after the affix, either including
+     * the terms carrying the affix or not.
+     */
+    private int search(String affix, boolean isAfterAffix) {
+        int low = 0;
+        int high = this.count_;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = this.compareToAffix(this.index_.termOf(this.termIds_[middle]), affix);
+            if (comparison < 0 || (isAfterAffix && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int firstTermId, int secondTermId) {
+        String first = this.index_.termOf(firstTermId);
+        String second = this.index_.termOf(secondTermId);
+        if (!this.isReversed_) {
+            return first.compareTo(second);
+        }
+        int length = Math.min(first.length(), second.length());
+        for (int i = 1; i <= length; i++) {
+            char firstChar = first.charAt(first.length() - i);
+            char secondChar = second.charAt(second.length() - i);
+            if (firstChar != secondChar) {
+                return firstChar - secondChar;
+            }
+        }
+        return first.length() - second.length();
+    }
+
+    /**
+     * Compares a term to an affix, considering the term equal if it carries the affix.
+     */
+    private int compareToAffix(String term, String affix) {
+        int length = Math.min(term.length(), affix.length());
+        for (int i = 0; i < length; i++) {
+            char termChar = this.isReversed_ ? term.charAt(term.length() - 1 - i) : term.charAt(i);
+            char affixChar = this.isReversed_ ? affix.charAt(affix.length() - 1 - i) : affix.charAt(i);
+            if (termChar != affixChar) {
+                return termChar - affixChar;
+            }
+        }
+        return term.length() < affix.length() ? -1 : 0;
+    }
+}
@@ -4,13 +4,31 @@
  *
  * This is the default application class.
  */
+
+import java.io.File;
+import java.io.IOException;
+
 public class TextBuddy {
 
     /**
      * Constants
      */
-    private static final int ID_ARGUMENT_FILE_PATH = 0;
-    private static final String STRING_USAGE = "Usage: java TextBuddy [filepath]";
+    private static final String STRING_USAGE =
+            "Usage: java TextBuddy [--read-only] [--fsync=never|save|<millis>] [--substring-index] [filepath]\n"
+            + "       java TextBuddy --sort[=<megabytes>] [filepath]";
+    private static final String STRING_OPTION_READ_ONLY = "--read-only";
+    private static final String STRING_OPTION_FSYNC = "--fsync=";
+    private static final String STRING_OPTION_SUBSTRING_INDEX = "--substring-index";
+    private static final String STRING_OPTION_SORT = "--sort";
+    private static final String STRING_SEPARATOR_OPTION_VALUE = "=";
+
+    private static final String STRING_FORMAT_SUCCESS_SORT = "All lines in %1$s are sorted in alphabetical order";
+    private static final String STRING_FORMAT_ERROR_SORT_JOURNAL =
+            "%1$s has unsaved changes, open it with TextBuddy and save them before sorting";
+    private static final String STRING_ERROR_SORT = "Cannot sort file";
+
+    private static final long SIZE_BYTES_PER_MEGABYTE = 1L << 20;
+    private static final int DIVISOR_MEMORY_SORT_DEFAULT = 4;
 
     public static void main(String[] args) {
         if (!verifyArguments(args)) {
@@ -18,7 +36,25 @@ public class TextBuddy {
             return;
         }
 
-        Application app = new Application(args[ID_ARGUMENT_FILE_PATH]);
+        // The file path always comes last, after the options
+        String filePath = args[args.length - 1];
+
+        String sortOption = findOption(args, STRING_OPTION_SORT);
+        if (sortOption != null) {
+            sortFile(filePath, sortOption);
+            return;
+        }
+
+        boolean isReadOnly = findOption(args, STRING_OPTION_READ_ONLY) != null;
+
+        String fsyncOption = findOption(args, STRING_OPTION_FSYNC);
+        FsyncPolicy fsyncPolicy = fsyncOption == null
+                ? FsyncPolicy.ON_SAVE
+                : FsyncPolicy.parse(fsyncOption.substring(STRING_OPTION_FSYNC.length()));
+
+        boolean isSubstringIndexed = findOption(args, STRING_OPTION_SUBSTRING_INDEX) != null;
+
+        Application app = new Application(filePath, isReadOnly, fsyncPolicy, isSubstringIndexed);
         app.run();
     }
 
@@ -28,7 +64,89 @@ public class TextBuddy {
      * @return whether the arguments are valid
      */
     private static boolean verifyArguments(String[] args) {
-        return args.length > ID_ARGUMENT_FILE_PATH;
+        if (args.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(STRING_OPTION_READ_ONLY) || args[i].equals(STRING_OPTION_SUBSTRING_INDEX)) {
+                continue;
+            }
+            if (args[i].startsWith(STRING_OPTION_SORT)) {
+                if (parseSortMemory(args[i]) <= 0) {
+                    return false;
+                }
+                continue;
+            }
+            if (!args[i].startsWith(STRING_OPTION_FSYNC)) {
+                return false;
+            }
+            try {
+                FsyncPolicy.parse(args[i].substring(STRING_OPTION_FSYNC.length()));
+            } catch (Error e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the file on disk without loading it, using at most the memory given in
+     * the option, or a quarter of the heap by default.
+     * @param filePath path to the file to sort
+     * @param sortOption the sort option, possibly with a number of megabytes
+     */
+    private static void sortFile(String filePath, String sortOption) {
+        Display display = new Display();
+        File file = new File(filePath);
+
+        // The journal of an unsaved session would be replayed over the sorted lines
+        if (Journal.fileFor(file).exists()) {
+            display.error(String.format(STRING_FORMAT_ERROR_SORT_JOURNAL, filePath));
+            return;
+        }
+
+        try {
+            new ExternalSorter(parseSortMemory(sortOption)).sort(file);
+            display.success(String.format(STRING_FORMAT_SUCCESS_SORT, filePath));
+        } catch (IOException e) {
+            display.error(STRING_ERROR_SORT);
+        }
+    }
+
+    /**
+     * Reads the memory budget of the sort option.
+     * @param sortOption the sort option, possibly with a number of megabytes
+     * @return the memory budget in bytes, or -1 if the option is invalid
+     */
+    private static long parseSortMemory(String sortOption) {
+        if (sortOption.equals(STRING_OPTION_SORT)) {
+            return Runtime.getRuntime().maxMemory() / DIVISOR_MEMORY_SORT_DEFAULT;
+        }
+        if (!sortOption.startsWith(STRING_OPTION_SORT + STRING_SEPARATOR_OPTION_VALUE)) {
+            return -1;
+        }
+        try {
+            long megabytes = Long.parseLong(sortOption.substring(
+                    STRING_OPTION_SORT.length() + STRING_SEPARATOR_OPTION_VALUE.length()));
+            return megabytes > 0 ? megabytes * SIZE_BYTES_PER_MEGABYTE : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Finds an option passed before the file path
+     * @param args arguments used to start programme
+     * @param option the option, or the prefix of an option taking a value
+     * @return the argument holding the option, or null if it was not passed
+     */
+    private static String findOption(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].startsWith(option)) {
+                return args[i];
+            }
+        }
+        return null;
     }
 
     /**
@@ -38,4 +156,4 @@ public class TextBuddy {
         System.out.println(STRING_USAGE);
     }
 
-}
\ No newline at end of file
+}
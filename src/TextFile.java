@@ -4,14 +4,47 @@
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is the abstraction of the text file being edited by the application.
  * It does not interfaces directly with the list of strings inside the file, but
  * through another abstraction layer of the LinesList class. Therefore, it only handles
  * the I/O side of the actual text file.
+ *
+ * A file can also be opened in read-only mode, in which case it is memory-mapped
+ * through MappedLines instead of being read into a LinesList, and every attempt
+ * to modify it is rejected.
+ *
+ * Saving only rewrites the whole file after structural edits (removing saved lines,
+ * sorting, clearing). When lines were only appended since the last save, they are
+ * written at the end of the file instead. A rewrite goes to a temporary file which
+ * then replaces the file, and the FsyncPolicy decides whether saves are forced to disk.
+ * A save that the policy does not force right away is forced later on a background
+ * thread, once the interval since the last forced save has run out. Forcing also
+ * forces the directory, so that the renamed file survives a crash too. The journal
+ * is discarded after every save, so a save that was not forced yet may be lost in a
+ * crash, which is what the policy trades for speed.
+ *
+ * Between saves, every modification is first logged to a Journal next to the file.
+ * If the application dies before saving, the journal is replayed when the file is
+ * opened again, and it is folded into the file whenever the file is saved.
  */
 public class TextFile {
 
@@ -20,6 +53,16 @@ public class TextFile {
      */
     private static final String STRING_PATTERN_TRAILING_SPACES = "\\s+$";
     private static final Error ERROR_FILE_IS_DIRECTORY = new Error("Cannot edit a directory");
+    private static final Error ERROR_FILE_IS_READ_ONLY = new Error("File is opened in read-only mode");
+    private static final Error ERROR_RANKING_READ_ONLY = new Error("Ranked search is not available in read-only mode");
+    private static final Error ERROR_JOURNAL_WRITE = new Error("Cannot write to journal");
+
+    private static final int SIZE_BUFFER_SAVE = 1 << 20;
+    private static final byte BYTE_LINE_FEED = '\n';
+    private static final long SIZE_JOURNAL_COMPACTION = 64L << 20;
+    private static final long TIME_NEVER_FORCED = Long.MIN_VALUE;
+
+    private static final String STRING_NAME_THREAD_FORCE = "deferred-fsync";
 
     /**
      * Properties
@@ -28,28 +71,65 @@ public class TextFile {
     private final File textFile_;
     private final LinesList linesList_;
     private final boolean isDebugMode_;
+    private final boolean isReadOnly_;
+    private MappedLines mappedLines_;
+    private FileLines pristineLines_;
+    private Journal journal_;
     private boolean isPristine_;
+    private boolean isRewriteRequired_;
+    private int persistedLinesCount_;
+    private long persistedSize_;
+    private FsyncPolicy fsyncPolicy_;
+    private long lastForcedMillis_;
+    private ScheduledExecutorService forceScheduler_;
+    private ScheduledFuture<?> deferredForce_;
+    private ByteBuffer saveBuffer_;
 
 
     /**
-     * Constructs an abstraction of the text file being edited, with I/O handlers
-     * and debug flag.
+     * Constructs an abstraction of the text file being edited, with I/O handlers,
+     * debug flag and read-only flag.
      * @param filePath path leading to the file being edited
      * @param isDebugMode debug mode flag, while on debug mode the file does not
      *                    actually get created
+     * @param isReadOnly read-only flag, while on read-only mode the file is memory-mapped
+     *                   and its lines cannot be modified
      * @throws IOException exception occured when the user does not have permissions on the file
      * @throws Error error thrown when the file is actually a directory
      */
-    public TextFile(String filePath, boolean isDebugMode) throws IOException, Error {
+    public TextFile(String filePath, boolean isDebugMode, boolean isReadOnly) throws IOException, Error {
         // Initialize properties
         this.filePath_ = filePath;
         this.textFile_ = new File(filePath);
         this.linesList_ = new LinesList();
         this.isDebugMode_ = isDebugMode;
+        this.isReadOnly_ = isReadOnly;
         this.isPristine_ = true;
+        this.isRewriteRequired_ = false;
+        this.persistedLinesCount_ = 0;
+        this.persistedSize_ = 0;
+        this.fsyncPolicy_ = FsyncPolicy.ON_SAVE;
+        this.lastForcedMillis_ = TIME_NEVER_FORCED;
+        this.forceScheduler_ = null;
+        this.deferredForce_ = null;
+        this.saveBuffer_ = null;
+        this.pristineLines_ = null;
 
         this.createTextFileIfNotExists();
-        this.populateLinesFromFile();
+        this.recoverJournal();
+    }
+
+    /**
+     * Constructs an abstraction of the text file being edited, with I/O handlers
+     * and debug flag.
+     * @param filePath path leading to the file being edited
+     * @param isDebugMode debug mode flag, while on debug mode the file does not
+     *                    actually get created
+     * @throws IOException exception occured when the user does not have permissions on the file
+     * @throws Error error thrown when the file is actually a directory
+     */
+    public TextFile(String filePath, boolean isDebugMode) throws IOException, Error {
+        this(filePath, isDebugMode, false);
     }
 
     /**
@@ -78,32 +158,125 @@ public class TextFile {
             return;
         }
 
+        if (this.textFile_.isDirectory()) {
+            throw ERROR_FILE_IS_DIRECTORY;
+        }
+
+        // A file opened for reading only has to exist already
+        if (this.isReadOnly_) {
+            return;
+        }
+
         if (!this.textFile_.exists()) {
             this.textFile_.createNewFile();
-        } else if (this.textFile_.isDirectory()) {
-            throw ERROR_FILE_IS_DIRECTORY;
+        }
+    }
+
+    /**
+     * Loads the file, then replays the journal of a previous session that did not
+     * get saved.
+     * @throws IOException exception thrown when the file or its journal cannot be read
+     */
+    private void recoverJournal() throws IOException {
+        // Read-only files are never modified, and debug files never touch the disk
+        if (this.isReadOnly_ || this.isDebugMode_) {
+            this.populateLinesFromFile();
+            return;
+        }
+
+        this.journal_ = new Journal(Journal.fileFor(this.textFile_));
+        long baseSize = this.journal_.recover();
+
+        // A rewrite that was interrupted after its checkpoint only has to be moved into
+        // place, while one interrupted before it is discarded in favour of the journal
+        File temporaryFile = temporaryFileFor(this.textFile_);
+        if (temporaryFile.exists()) {
+            if (this.journal_.isCheckpointed()) {
+                moveIntoPlace(temporaryFile, this.textFile_);
+            } else {
+                temporaryFile.delete();
+            }
+        }
+        if (this.journal_.isCheckpointed()) {
+            this.journal_.discard();
+        }
+
+        // A save that was appending lines may have been interrupted, in which case the
+        // lines it managed to write are dropped and replayed from the journal instead
+        if (baseSize >= 0 && this.textFile_.length() > baseSize) {
+            try (FileChannel channel = FileChannel.open(this.textFile_.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(baseSize);
+            }
+        }
+
+        this.populateLinesFromFile();
+
+        if (baseSize >= 0) {
+            this.journal_.replay(new Journal.Handler() {
+                @Override
+                public void add(String line) {
+                    TextFile.this.applyAdd(line);
+                }
+
+                @Override
+                public void delete(int index) {
+                    TextFile.this.applyRemove(index);
+                }
+
+                @Override
+                public void clear() {
+                    TextFile.this.applyClear();
+                }
+
+                @Override
+                public void sort(SortOrder order) {
+                    TextFile.this.applySort(order);
+                }
+            });
         }
     }
 
     private void populateLinesFromFile() throws IOException {
+        // Only the line offsets are read for a read-only file
+        if (this.isReadOnly_) {
+            this.mappedLines_ = new MappedLines(this.textFile_);
+            return;
+        }
+
         // Does not read data from file if is debug mode
         if (this.isDebugMode_) {
             return;
         }
 
-        BufferedReader reader = new BufferedReader(
-                new FileReader(this.textFile_)
-        );
-
-        // Start reading lines from the file
-        String line;
-        while ((line = reader.readLine()) != null) {
-            linesList_.add(line);
-        }
+        // Read and index the lines of the file on all cores
+        new FileLoader().load(this.textFile_, this.linesList_);
 
         // Trim trailing empty lines
+        boolean isTrimmed = false;
         for (int i = linesList_.count() - 1; i >= 0 && linesList_.get(i).trim().isEmpty(); i--) {
             linesList_.remove(i);
+            isTrimmed = true;
+        }
+
+        // New lines can only be appended to the file as it is on disk if it ends
+        // right after the last line that was read
+        this.persistedLinesCount_ = linesList_.count();
+        this.persistedSize_ = this.textFile_.length();
+        this.isRewriteRequired_ = isTrimmed || !this.endsWithLineFeed();
+    }
+
+    /**
+     * Checks whether the file on disk is empty or ends with a line terminator.
+     * @return if new lines can be appended to the end of the file
+     * @throws IOException exception thrown when the file cannot be read
+     */
+    private boolean endsWithLineFeed() throws IOException {
+        if (this.persistedSize_ == 0) {
+            return true;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(this.textFile_, "r")) {
+            file.seek(this.persistedSize_ - 1);
+            return file.read() == BYTE_LINE_FEED;
         }
     }
 
@@ -112,6 +285,9 @@ public class TextFile {
      * @return the number of lines in the text file
      */
     public int getLinesCount() {
+        if (this.isReadOnly_) {
+            return this.mappedLines_.size();
+        }
         return this.linesList_.count();
     }
 
@@ -120,9 +296,44 @@ public class TextFile {
      * @return a list containing all lines
      */
     public List<String> getAllLines() {
+        if (this.isReadOnly_) {
+            return this.mappedLines_;
+        }
         return this.linesList_.getAll();
     }
 
+    /**
+     * Returns a list containing the lines between the two indices, in a time that
+     * depends on the number of lines rather than on the size of the file.
+     * @param from the index of the first line, inclusive
+     * @param to the index after the last line, exclusive
+     * @return a list containing the lines in the range
+     * @throws IndexOutOfBoundsException exception thrown when the range is beyond the number of lines
+     */
+    public List<String> getLines(int from, int to) throws IndexOutOfBoundsException {
+        if (this.isReadOnly_) {
+            return this.mappedLines_.subList(from, to);
+        }
+        return this.linesList_.getRange(from, to);
+    }
+
+    /**
+     * Returns the lines of the file as they are on disk, as long as they are the same
+     * as the lines in memory, so that they can be displayed without decoding them.
+     * The offsets of the lines are only scanned the first time they are needed.
+     * @return the lines on disk, or null if the file has been modified since it was saved
+     * @throws IOException exception thrown when the file cannot be read
+     */
+    public FileLines getPristineLines() throws IOException {
+        if (!this.isPristine_ || this.isDebugMode_) {
+            return null;
+        }
+        if (this.pristineLines_ == null) {
+            this.pristineLines_ = FileLines.scan(this.textFile_);
+        }
+        return this.pristineLines_;
+    }
+
     /**
      * Returns the path to the file currently being edited.
      * @return the path to the current file
@@ -131,14 +342,30 @@ public class TextFile {
         return filePath_;
     }
 
+    /**
+     * Returns whether the file was opened in read-only mode.
+     * @return if the file is read-only
+     */
+    public boolean isReadOnly() {
+        return this.isReadOnly_;
+    }
+
     /**
      * Appends a line to the end of the file.
      * @param newLine a string
      * @return the index of the newly added line
+     * @throws Error error thrown when the file is read-only
      */
-    public int addLine(String newLine) {
-        int lineId = this.linesList_.add(rightTrim(newLine));
-        this.isPristine_ = false;
+    public int addLine(String newLine) throws Error {
+        this.ensureWritable();
+        String line = rightTrim(newLine);
+        this.writeAhead(journal -> journal.logAdd(line, this.persistedSize_));
+        return this.applyAdd(line);
+    }
+
+    private int applyAdd(String line) {
+        int lineId = this.linesList_.add(line);
+        this.markModified();
         return lineId;
     }
 
@@ -149,6 +376,9 @@ public class TextFile {
      * @throws IndexOutOfBoundsException when the specified index is beyond the list's capacity
      */
     public Line getLineAt(int index) throws IndexOutOfBoundsException {
+        if (this.isReadOnly_) {
+            return new Line(this.mappedLines_.get(index), index);
+        }
         return this.linesList_.getLine(index);
     }
 
@@ -156,60 +386,437 @@ public class TextFile {
      * Removes the line at the specified index, returning the removed line's content.
      * @param index the index of the line to delete
      * @return the content of the deleted line, or null if the removal fails
+     * @throws Error error thrown when the file is read-only
      */
-    public String removeLine(int index) {
+    public String removeLine(int index) throws Error {
+        this.ensureWritable();
+        if (index < 0 || index >= this.getLinesCount()) {
+            return null;
+        }
+        this.writeAhead(journal -> journal.logDelete(index, this.persistedSize_));
+        return this.applyRemove(index);
+    }
+
+    private String applyRemove(int index) {
         String removedLine = this.linesList_.remove(index);
         if (removedLine != null) {
-            this.isPristine_ = false;
+            this.markModified();
+
+            // Removing a line that is already on disk changes the middle of the file,
+            // while removing an unsaved line only shortens what is left to append
+            if (index < this.persistedLinesCount_) {
+                this.persistedLinesCount_--;
+                this.isRewriteRequired_ = true;
+            }
         }
         return removedLine;
     }
 
     /**
      * Removes all lines from the file.
+     * @throws Error error thrown when the file is read-only
      */
-    public void clearAllLines() {
+    public void clearAllLines() throws Error {
+        this.ensureWritable();
+        this.writeAhead(journal -> journal.logClear(this.persistedSize_));
+        this.applyClear();
+    }
+
+    private void applyClear() {
         this.linesList_.clear();
-        this.isPristine_ = false;
+        this.markModified();
+        this.isRewriteRequired_ = true;
     }
 
     /**
      * Sorts lines in alphabetical order.
+     * @throws Error error thrown when the file is read-only
      */
-    public void sortLines() {
-        this.linesList_.sort();
+    public void sortLines() throws Error {
+        this.sortLines(SortOrder.ALPHABETICAL);
+    }
+
+    /**
+     * Sorts lines in the specified order.
+     * @param order the order of the lines
+     * @throws Error error thrown when the file is read-only
+     */
+    public void sortLines(SortOrder order) throws Error {
+        this.ensureWritable();
+        this.writeAhead(journal -> journal.logSort(order, this.persistedSize_));
+        this.applySort(order);
+    }
+
+    /**
+     * Flags the lines in memory as different from the file on disk.
+     */
+    private void markModified() {
         this.isPristine_ = false;
+        this.releasePristineLines();
+    }
+
+    private void releasePristineLines() {
+        if (this.pristineLines_ == null) {
+            return;
+        }
+        try {
+            this.pristineLines_.close();
+        } catch (IOException e) {
+            // Nothing is lost, the lines were only being read
+        }
+        this.pristineLines_ = null;
+    }
+
+    private void applySort(SortOrder order) {
+        this.linesList_.sort(order);
+        this.markModified();
+        this.isRewriteRequired_ = true;
+    }
+
+    /**
+     * Search for the query (case-insensitive) inside the text file
+     * and return the line numbers where the query was matched. Words in the
+     * query can be combined with the AND, OR and NOT operators, a query between
+     * single quotes is a substring and a query between slashes is a regular expression.
+     * @param query a query string
+     * @return the indices of the lines where the query was matched in increasing order,
+     *         or null if none
+     * @throws Error error thrown when the query is invalid
+     */
+    public SearchResults searchFor(String query) throws Error {
+        if (this.isReadOnly_) {
+            return this.mappedLines_.search(query);
+        }
+        return this.linesList_.search(query);
+    }
+
+    /**
+     * Searches for a word query inside the text file and returns the line numbers of
+     * the lines matching it best, ranked by the words of the query they contain.
+     * Read-only files have no search index to rank lines with.
+     * @param query a query string
+     * @param count the number of lines to return at most
+     * @return the indices of the best lines, best first, or null if none
+     * @throws Error error thrown when the query is invalid or cannot be ranked
+     */
+    public int[] searchTop(String query, int count) throws Error {
+        if (this.isReadOnly_) {
+            throw ERROR_RANKING_READ_ONLY;
+        }
+        return this.linesList_.searchTop(query, count);
+    }
+
+    private void ensureWritable() throws Error {
+        if (this.isReadOnly_) {
+            throw ERROR_FILE_IS_READ_ONLY;
+        }
     }
 
     /**
-     * Search for the word (case-insensitive) inside the text file
-     * and return the line numbers where the word was found in.
-     * @param word a query string
-     * @return a set containing the indices of the lines where the word was found in
+     * Logs a modification to the journal before it gets applied. Once the journal
+     * grows too large, it is folded into the file by saving.
+     * @param entry writes the modification to the journal
+     * @throws Error error thrown when the modification cannot be logged
      */
-    public Set<Integer> searchFor(String word) {
-        return this.linesList_.search(word);
+    private void writeAhead(JournalEntry entry) throws Error {
+        if (this.journal_ == null) {
+            return;
+        }
+
+        try {
+            if (this.journal_.size() >= SIZE_JOURNAL_COMPACTION) {
+                this.save();
+            }
+        } catch (IOException e) {
+            // The journal still holds everything, so saving can wait for the next attempt
+        }
+
+        try {
+            entry.writeTo(this.journal_);
+        } catch (IOException e) {
+            throw ERROR_JOURNAL_WRITE;
+        }
     }
 
     /**
      * Saves the content of the current file to disk if it has been modified
-     * since the last save.
+     * since the last save. Lines that were only appended are written at the end
+     * of the file, and the whole file is only rewritten after structural edits.
+     * Rewriting goes through a temporary file that atomically replaces the file,
+     * so the file on disk is never left half-written.
      * @throws IOException exception thrown when the user does not have access rights to the file being edited
      */
-    public void save() throws IOException {
+    public synchronized void save() throws IOException {
         // Skip if file was not modified since last save
         if (this.isPristine_) {
             return;
         }
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(this.textFile_));
-        List<String> lines = this.getAllLines();
-        for (String line : lines) {
-            writer.write(line);
-            writer.newLine();
+        long now = System.currentTimeMillis();
+        boolean isForced = this.fsyncPolicy_.shouldForce(this.lastForcedMillis_, now);
+        if (this.isRewriteRequired_) {
+            File temporaryFile = temporaryFileFor(this.textFile_);
+            this.persistedSize_ = this.writeLines(temporaryFile, 0, 0, isForced);
+
+            // The checkpoint comes before the move and the journal is only discarded after
+            // it, so that a session dying in between finds a checkpointed journal and
+            // finishes the move when reopening the file
+            this.checkpointJournal();
+            moveIntoPlace(temporaryFile, this.textFile_);
+            if (isForced) {
+                forceDirectoryOf(this.textFile_);
+            }
+        } else {
+            this.persistedSize_ = this.writeLines(this.textFile_, this.persistedSize_,
+                    this.persistedLinesCount_, isForced);
+            this.checkpointJournal();
+        }
+        if (this.journal_ != null) {
+            this.journal_.discard();
+        }
+
+        // A forced save also covers the saves whose force was deferred
+        if (isForced) {
+            this.lastForcedMillis_ = now;
+            this.cancelDeferredForce();
+        } else {
+            this.deferForce();
         }
-        writer.close();
 
+        this.persistedLinesCount_ = this.getLinesCount();
+        this.isRewriteRequired_ = false;
         this.isPristine_ = true;
     }
-}
+
+    /**
+     * Returns whether a save is waiting to be forced to disk once the interval of the
+     * fsync policy runs out.
+     * @return if a deferred force is scheduled
+     */
+    public synchronized boolean isForceDeferred() {
+        return this.deferredForce_ != null;
+    }
+
+    /**
+     * Schedules the file to be forced to disk when the fsync policy allows, unless it
+     * is already scheduled or the policy never forces saves.
+     */
+    private void deferForce() {
+        long forceMillis = this.fsyncPolicy_.deferredForceMillis(this.lastForcedMillis_);
+        if (forceMillis < 0 || this.deferredForce_ != null) {
+            return;
+        }
+
+        if (this.forceScheduler_ == null) {
+            this.forceScheduler_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, STRING_NAME_THREAD_FORCE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long delayMillis = Math.max(0, forceMillis - System.currentTimeMillis());
+        this.deferredForce_ = this.forceScheduler_.schedule(this::forceDeferred, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forces the saved file to disk, on behalf of the saves that were not forced.
+     */
+    private synchronized void forceDeferred() {
+        this.deferredForce_ = null;
+        try (FileChannel channel = FileChannel.open(this.textFile_.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+            forceDirectoryOf(this.textFile_);
+            this.lastForcedMillis_ = System.currentTimeMillis();
+        } catch (IOException e) {
+            // The interval has run out, so the next save is forced instead
+        }
+    }
+
+    private void cancelDeferredForce() {
+        if (this.deferredForce_ != null) {
+            this.deferredForce_.cancel(false);
+            this.deferredForce_ = null;
+        }
+    }
+
+    /**
+     * Sets when saving forces the content of the file to disk.
+     * @param fsyncPolicy the fsync policy
+     */
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy_ = fsyncPolicy;
+    }
+
+    /**
+     * Starts building a substring index of the lines in the background, which makes
+     * substring searches faster at the cost of about six bytes per character. Files
+     * opened in read-only mode are not indexed.
+     */
+    public void enableSubstringIndex() {
+        if (!this.isReadOnly_) {
+            this.linesList_.enableSubstringIndex();
+        }
+    }
+
+    /**
+     * Releases the journal, keeping any modification that has not been saved in it,
+     * and closes the file if its lines were opened for display.
+     * @throws IOException exception thrown when the journal cannot be written
+     */
+    public synchronized void close() throws IOException {
+        // A save waiting to be forced is forced now rather than left to the system
+        if (this.deferredForce_ != null) {
+            this.cancelDeferredForce();
+            this.forceDeferred();
+        }
+        if (this.forceScheduler_ != null) {
+            this.forceScheduler_.shutdown();
+            this.forceScheduler_ = null;
+        }
+
+        this.releasePristineLines();
+        if (this.journal_ != null) {
+            this.journal_.close();
+        }
+    }
+
+    /**
+     * Returns the temporary file a text file is written to before replacing it.
+     * @param textFile a text file
+     * @return the temporary file next to the text file
+     */
+    private static File temporaryFileFor(File textFile) {
+        return new File(textFile.getPath() + ".saving");
+    }
+
+    /**
+     * Replaces the target with the source file, atomically if the file system allows.
+     */
+    private static void moveIntoPlace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the directory of a file to disk, so that the file moved into its place is
+     * still there after a crash. Platforms that cannot open or force a directory, such
+     * as Windows, are left to their own guarantees.
+     */
+    private static void forceDirectoryOf(File file) {
+        Path directory = file.getAbsoluteFile().toPath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The directory cannot be forced on this platform
+        }
+    }
+
+    private void checkpointJournal() throws IOException {
+        if (this.journal_ != null) {
+            this.journal_.checkpoint();
+        }
+    }
+
+    /**
+     * Writes the lines starting from the specified index into the file, starting at the
+     * specified position. The file is truncated when writing from the beginning.
+     * @param file the file to write to
+     * @param position the position in the file to start writing at
+     * @param fromIndex the index of the first line to write
+     * @param isForced whether the written content is forced to disk
+     * @return the size of the file after writing
+     * @throws IOException exception thrown when the file cannot be written
+     */
+    private long writeLines(File file, long position, int fromIndex, boolean isForced) throws IOException {
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        String lineSeparator = System.lineSeparator();
+        ByteBuffer buffer = this.saveBuffer();
+        buffer.clear();
+
+        List<String> lines = this.getAllLines();
+        Iterator<String> iterator = fromIndex == 0 ? lines.iterator() : lines.listIterator(fromIndex);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (position == 0) {
+                channel.truncate(0);
+            }
+            while (iterator.hasNext()) {
+                position = encode(encoder, iterator.next(), buffer, channel, position);
+                position = encode(encoder, lineSeparator, buffer, channel, position);
+            }
+            position = drain(buffer, channel, position);
+
+            if (isForced) {
+                channel.force(false);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the string into the buffer, writing the buffer out whenever it fills up.
+     * @return the position in the channel after the bytes written so far
+     */
+    static long encode(CharsetEncoder encoder, String string, ByteBuffer buffer,
+                       FileChannel channel, long position) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(string);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            position = drain(buffer, channel, position);
+        }
+        // The encoder may not be asked to encode again once it started flushing
+        while (encoder.flush(buffer).isOverflow()) {
+            position = drain(buffer, channel, position);
+        }
+        return position;
+    }
+
+    /**
+     * Writes out the bytes encoded into the buffer, leaving it empty.
+     * @return the position in the channel after the bytes written
+     */
+    private static long drain(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        buffer.flip();
+        position = writeFully(channel, buffer, position);
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * Returns the direct buffer lines are encoded into while saving, so that the
+     * channel can write it without another copy.
+     */
+    private ByteBuffer saveBuffer() {
+        if (this.saveBuffer_ == null) {
+            this.saveBuffer_ = ByteBuffer.allocateDirect(SIZE_BUFFER_SAVE);
+        }
+        return this.saveBuffer_;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer to the channel at the specified position.
+     * @return the position right after the written bytes
+     */
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Writes a single modification to the journal.
+     */
+    private interface JournalEntry {
+        void writeTo(Journal journal) throws IOException;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+/**
+ * Tokenizer.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+/**
+ * Splits text into words separated by whitespace, without regular expressions and
+ * without creating any strings. The tokenizer only reports where each word starts
+ * and ends, and the words are compared case-insensitively through fold():
+ *      Tokenizer tokenizer = new Tokenizer().reset(content);
+ *      while (tokenizer.next()) {
+ *          index(content, tokenizer.start(), tokenizer.end());
+ *      }
+ * Whitespace is the same set of characters as \s in a regular expression.
+ * A tokenizer can be reset and reused for any number of texts.
+ */
+public class Tokenizer {
+
+    /**
+     * Properties
+     */
+    private CharSequence text_;
+    private int start_;
+    private int end_;
+
+    /**
+     * Constructs a tokenizer over an empty text.
+     */
+    public Tokenizer() {
+        this.reset("");
+    }
+
+    /**
+     * Starts tokenizing the specified text from its beginning.
+     * @param text the text to tokenize
+     * @return this tokenizer
+     */
+    public Tokenizer reset(CharSequence text) {
+        this.text_ = text;
+        this.start_ = 0;
+        this.end_ = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next word of the text.
+     * @return if there was another word
+     */
+    public boolean next() {
+        int length = this.text_.length();
+        int position = this.end_;
+        while (position < length && isWhitespace(this.text_.charAt(position))) {
+            position++;
+        }
+        if (position == length) {
+            this.start_ = this.end_ = length;
+            return false;
+        }
+
+        this.start_ = position;
+        while (position < length && !isWhitespace(this.text_.charAt(position))) {
+            position++;
+        }
+        this.end_ = position;
+        return true;
+    }
+
+    /**
+     * Returns the index of the first character of the current word.
+     * @return the start of the current word
+     */
+    public int start() {
+        return this.start_;
+    }
+
+    /**
+     * Returns the index after the last character of the current word.
+     * @return the end of the current word
+     */
+    public int end() {
+        return this.end_;
+    }
+
+    /**
+     * Returns the case-folded form of a character, in which words are compared.
+     * @param c a character
+     * @return the lower case form of the character
+     */
+    public static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Returns the case-folded form of a word.
+     * @param word a word
+     * @return the word with every character folded
+     */
+    public static String fold(CharSequence word) {
+        char[] folded = new char[word.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(word.charAt(i));
+        }
+        return new String(folded);
+    }
+
+    /**
+     * Checks whether the character separates words.
+     * @param c a character
+     * @return if the character is whitespace
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+}
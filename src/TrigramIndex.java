@@ -0,0 +1,156 @@
+/**
+ * TrigramIndex.java
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+
+/**
+ * An index mapping every sequence of three consecutive characters (trigram) to the
+ * ids of the lines containing it, whitespace included. Any line containing a string
+ * contains all the trigrams of that string, so the lines that may match a regular
+ * expression are found by intersecting the posting lists of the trigrams of the
+ * literal strings the expression requires:
+ *      TrigramIndex index = new TrigramIndex();
+ *      index.add(lineId, line.getContent());
+ *      PostingList postings = index.get(TrigramIndex.trigramOf("err", 0));
+ * Characters are case-folded like words are, so that the same index serves case
+ * sensitive and case-insensitive expressions. Trigrams are packed into a long, and the
+ * posting lists are kept in an open addressing table keyed by it.
+ */
+public class TrigramIndex implements LineIndex<TrigramIndex> {
+
+    /**
+     * Constants
+     */
+    public static final int LENGTH_TRIGRAM = 3;
+
+    private static final int CAPACITY_TABLE_INITIAL = 64;
+    private static final int BITS_CHAR = Character.SIZE;
+    private static final long MASK_TRIGRAM = (1L << (LENGTH_TRIGRAM * BITS_CHAR)) - 1;
+    private static final long MULTIPLIER_HASH = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Properties
+     */
+    private long[] keys_;
+    private PostingList[] postings_;
+    private int count_;
+
+    /**
+     * Constructs an empty index.
+     */
+    public TrigramIndex() {
+        this.keys_ = new long[CAPACITY_TABLE_INITIAL];
+        this.postings_ = new PostingList[CAPACITY_TABLE_INITIAL];
+        this.count_ = 0;
+    }
+
+    /**
+     * Indexes all the trigrams of a line. The id must not be smaller than any id
+     * indexed before it.
+     * @param lineId the id of the line
+     * @param content the content of the line
+     */
+    @Override
+    public void add(int lineId, CharSequence content) {
+        long trigram = 0;
+        for (int i = 0; i < content.length(); i++) {
+            trigram = ((trigram << BITS_CHAR) | Tokenizer.fold(content.charAt(i))) & MASK_TRIGRAM;
+            if (i >= LENGTH_TRIGRAM - 1) {
+                // A trigram repeated in the line is ignored by the posting list
+                this.postingsFor(trigram).append(lineId);
+            }
+        }
+    }
+
+    /**
+     * Appends all the postings of another index, whose line ids are shifted by an offset.
+     * @param other an index of the lines following the lines of this index
+     * @param idOffset the id in this index of the line with id 0 in the other index
+     */
+    @Override
+    public void merge(TrigramIndex other, int idOffset) {
+        for (int slot = 0; slot < other.postings_.length; slot++) {
+            if (other.postings_[slot] != null) {
+                this.postingsFor(other.keys_[slot]).appendAll(other.postings_[slot], idOffset);
+            }
+        }
+    }
+
+    /**
+     * Returns the posting list of a trigram.
+     * @param trigram a trigram returned by trigramOf()
+     * @return the posting list of the trigram, or null if no line contains it
+     */
+    public PostingList get(long trigram) {
+        return this.postings_[this.slotOf(trigram)];
+    }
+
+    /**
+     * Returns the number of distinct trigrams in the index.
+     * @return the number of trigrams
+     */
+    public int trigramCount() {
+        return this.count_;
+    }
+
+    /**
+     * Packs the case-folded trigram starting at an index of the text.
+     * @param text a text
+     * @param start the index of the first character of the trigram
+     * @return the trigram
+     */
+    public static long trigramOf(CharSequence text, int start) {
+        long trigram = 0;
+        for (int i = start; i < start + LENGTH_TRIGRAM; i++) {
+            trigram = (trigram << BITS_CHAR) | Tokenizer.fold(text.charAt(i));
+        }
+        return trigram;
+    }
+
+    private PostingList postingsFor(long trigram) {
+        int slot = this.slotOf(trigram);
+        if (this.postings_[slot] == null) {
+            this.keys_[slot] = trigram;
+            this.postings_[slot] = new PostingList(false);
+            this.count_++;
+
+            // Keep the table at most half full so that probe sequences stay short
+            if (this.count_ * 2 > this.postings_.length) {
+                this.growTable();
+                slot = this.slotOf(trigram);
+            }
+        }
+        return this.postings_[slot];
+    }
+
+    /**
+     * Finds the slot of the table holding the trigram, or the empty slot where it
+     * belongs. Collisions are resolved by linear probing.
+     */
+    private int slotOf(long trigram) {
+        int mask = this.postings_.length - 1;
+        int slot = hash(trigram) & mask;
+        while (this.postings_[slot] != null && this.keys_[slot] != trigram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growTable() {
+        long[] keys = this.keys_;
+        PostingList[] postings = this.postings_;
+        this.keys_ = new long[keys.length * 2];
+        this.postings_ = new PostingList[postings.length * 2];
+        for (int slot = 0; slot < postings.length; slot++) {
+            if (postings[slot] != null) {
+                int newSlot = this.slotOf(keys[slot]);
+                this.keys_[newSlot] = keys[slot];
+                this.postings_[newSlot] = postings[slot];
+            }
+        }
+    }
+
+    private static int hash(long trigram) {
+        return (int) ((trigram * MULTIPLIER_HASH) >>> Integer.SIZE);
+    }
+}
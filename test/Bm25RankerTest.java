@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class Bm25RankerTest {
+
+    private static InvertedIndex indexOf(String[] lines) {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < lines.length; i++) {
+            index.add(i, lines[i]);
+        }
+        return index;
+    }
+
+    private static int[] topIds(InvertedIndex index, int slots, String query, int count) {
+        Query parsedQuery = Query.parse(query);
+        return new Bm25Ranker(index).topIds(parsedQuery.cursor(index, slots), parsedQuery.scoredWords(),
+                count, id -> id % 7 != 3);
+    }
+
+    @Test
+    public void Rare_words_repeated_words_and_short_lines_rank_higher() {
+        String[] lines = new String[]{
+                "disk error on node one",
+                "error",
+                "disk error error on node two",
+                "network error on node three",
+                "kernel panic"
+        };
+        InvertedIndex index = indexOf(lines);
+        Bm25Ranker ranker = new Bm25Ranker(index);
+
+        Query query = Query.parse("error OR panic");
+        int[] ids = ranker.topIds(query.cursor(index, lines.length), query.scoredWords(), 3, id -> true);
+        assertThat(ids, equalTo(new int[]{4, 1, 2}));
+    }
+
+    @Test
+    public void The_best_lines_are_the_first_lines_of_the_full_ranking() {
+        Random random = new Random(5);
+        String[] words = new String[]{"a", "b", "c", "d", "e", "f", "g", "h"};
+        String[] lines = new String[3000];
+        for (int i = 0; i < lines.length; i++) {
+            StringBuilder line = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                // Skew the words so that their frequencies differ widely
+                line.append(words[Math.min(random.nextInt(words.length), random.nextInt(words.length))]).append(' ');
+            }
+            lines[i] = line.toString();
+        }
+        InvertedIndex index = indexOf(lines);
+
+        String[] queries = new String[]{"a OR g OR h", "b OR c OR d OR e OR f", "a g", "c OR h -a", "f* OR h", "\"a b\" OR g"};
+        for (String query : queries) {
+            int[] ranking = topIds(index, lines.length, query, lines.length);
+            for (int count : new int[]{1, 5, 10, 100, 1000}) {
+                int[] expected = Arrays.copyOf(ranking, Math.min(count, ranking.length));
+                assertThat(query + " top " + count, topIds(index, lines.length, query, count), equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void Lines_without_any_scored_word_can_still_be_returned() {
+        String[] lines = new String[]{"lorem ipsum", "lorem", "dolor"};
+        InvertedIndex index = indexOf(lines);
+        assertThat(topIds(index, lines.length, "lor*", 5), equalTo(new int[]{0, 1}));
+        assertThat(topIds(index, lines.length, "lorem", 0).length, is(0));
+    }
+
+    @Test
+    public void Removed_lines_leave_the_statistics() {
+        String[] lines = new String[]{"alpha x", "beta x", "beta z z z z z", "alpha y", "alpha y", "alpha y", "alpha y"};
+        InvertedIndex index = indexOf(lines);
+        Query query = Query.parse("alpha OR beta");
+        assertThat(new Bm25Ranker(index).topIds(query.cursor(index, lines.length), query.scoredWords(), 1, id -> id < 3),
+                equalTo(new int[]{1}));
+
+        // Once the lines repeating alpha are gone, alpha is the rarer word
+        for (int id = 3; id < lines.length; id++) {
+            index.remove(id, lines[id]);
+        }
+        assertThat(index.lineCount(), is(3));
+        assertThat(index.totalLength(), is(10L));
+        assertThat(index.lineCountOf(index.termIdOf("alpha")), is(1));
+        assertThat(new Bm25Ranker(index).topIds(query.cursor(index, lines.length), query.scoredWords(), 1, id -> id < 3),
+                equalTo(new int[]{0}));
+    }
+}
@@ -60,4 +60,10 @@ public class CommandTest {
         assertThat(command.getType(), is(Command.Type.DELETE));
         assertThat(command.getParameter(), equalTo("1"));
     }
+
+    @Test
+    public void Sort_commands_carry_their_sort_order() {
+        assertThat(Command.interpret("sort").getSortOrder().isAlphabetical(), is(true));
+        assertThat(Command.interpret("sort  -i -k 2").getSortOrder().toOptions(), equalTo("-i -k2"));
+    }
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DisplayTest {
+    private ByteArrayOutputStream output_;
+    private Display display_;
+
+    @Before
+    public void setUp() {
+        this.output_ = new ByteArrayOutputStream();
+        this.display_ = new Display(new ByteArrayInputStream(new byte[0]), new PrintStream(this.output_));
+    }
+
+    private String output() {
+        return new String(this.output_.toByteArray());
+    }
+
+    @Test
+    public void Ordered_list_numbers_lines_from_one() {
+        this.display_.orderedList(Arrays.asList("Lorem ipsum", "", "dolor"));
+        assertThat(output(), equalTo("1. Lorem ipsum\n2. \n3. dolor\n"));
+    }
+
+    @Test
+    public void Ordered_list_numbers_lines_from_the_first_number() {
+        this.display_.orderedList(Arrays.asList("sit", "amet"), 99);
+        assertThat(output(), equalTo("99. sit\n100. amet\n"));
+    }
+
+    @Test
+    public void Lines_are_numbered_by_their_indices() {
+        this.display_.lines(new int[]{0, 41}, Arrays.asList("Lorem", "ipsum"));
+        assertThat(output(), equalTo("1. Lorem\n42. ipsum\n"));
+    }
+
+    @Test
+    public void Bulk_output_larger_than_the_buffer_is_written_whole() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+        List<String> lines = new ArrayList<>(Collections.nCopies(20000, "lorem ipsum dolor"));
+        lines.add(longLine.toString());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            expected.append(i + 1).append(". ").append(lines.get(i)).append('\n');
+        }
+
+        this.display_.orderedList(lines);
+        assertThat(output(), equalTo(expected.toString()));
+    }
+
+    @Test
+    public void Bulk_output_is_flushed_before_other_messages() {
+        this.display_.orderedList(Arrays.asList("Lorem"));
+        this.display_.line("ipsum");
+        assertThat(output(), equalTo("1. Lorem\nipsum" + System.lineSeparator()));
+    }
+
+    @Test
+    public void File_lines_are_copied_with_their_numbers() throws Exception {
+        File file = new File("display.txt");
+        try {
+            StringBuilder longLine = new StringBuilder();
+            for (int i = 0; i < 300000; i++) {
+                longLine.append((char) ('a' + i % 26));
+            }
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write("Lorem ipsum\r\ndolor\rsit\n\n" + longLine + "\namet");
+            writer.close();
+
+            try (FileLines lines = FileLines.scan(file)) {
+                assertThat(lines.size(), equalTo(6));
+                this.display_.orderedList(lines, 1, 6, 2);
+            }
+            assertThat(output(), equalTo("2. dolor\n3. sit\n4. \n5. " + longLine + "\n6. amet\n"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ExternalSorterTest {
+    private File file_;
+
+    @Before
+    public void setUp() {
+        this.file_ = new File("sorting.txt");
+    }
+
+    @After
+    public void tearDown() {
+        this.file_.delete();
+    }
+
+    private void writeFile(String content) throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_));
+        writer.write(content);
+        writer.close();
+    }
+
+    private List<String> readFile() throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(this.file_));
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    private List<String> sortInMemory() throws Exception {
+        LinesList linesList = new LinesList();
+        new FileLoader().load(this.file_, linesList);
+        for (int i = linesList.count() - 1; i >= 0 && linesList.get(i).trim().isEmpty(); i--) {
+            linesList.remove(i);
+        }
+        linesList.sort();
+        return new ArrayList<>(linesList.getAll());
+    }
+
+    @Test
+    public void Sorting_a_file_that_fits_in_memory_sorts_its_lines() throws Exception {
+        writeFile("dolor\nLorem\nipsum\n\namet\n  \n\n");
+        new ExternalSorter(1 << 20).sort(this.file_);
+        assertThat(readFile(), equalTo(Arrays.asList("", "Lorem", "amet", "dolor", "ipsum")));
+    }
+
+    @Test
+    public void Sorting_in_many_runs_matches_sorting_in_memory() throws Exception {
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("line ").append(random.nextInt(2000)).append(i % 100 == 0 ? "\n\n" : "\n");
+        }
+        writeFile(content.toString());
+        List<String> expected = sortInMemory();
+
+        // A tiny budget and fan-in force dozens of runs and several merge passes
+        new ExternalSorter(2000, 3).sort(this.file_);
+
+        assertThat(readFile(), equalTo(expected));
+    }
+
+    @Test
+    public void Sorting_with_every_fan_in_keeps_all_lines() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 200; i > 0; i--) {
+            content.append(i % 17).append(' ').append(i).append('\n');
+        }
+        for (int fanIn = 2; fanIn <= 9; fanIn++) {
+            writeFile(content.toString());
+            List<String> expected = sortInMemory();
+            new ExternalSorter(300, fanIn).sort(this.file_);
+            assertThat(readFile(), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void Sorting_an_empty_file_leaves_it_empty() throws Exception {
+        writeFile("");
+        new ExternalSorter(1 << 20).sort(this.file_);
+        assertThat(this.file_.length(), is(0L));
+    }
+
+    @Test
+    public void Sorting_leaves_no_temporary_files_behind() throws Exception {
+        writeFile("b\na\nc\n");
+        new ExternalSorter(10, 2).sort(this.file_);
+
+        File directory = this.file_.getAbsoluteFile().getParentFile();
+        String[] leftovers = directory.list((dir, name) -> name.startsWith(this.file_.getName() + ".")
+                || (name.startsWith(this.file_.getName()) && name.endsWith(".run")));
+        assertThat(leftovers.length, is(0));
+        assertThat(readFile(), equalTo(Arrays.asList("a", "b", "c")));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileLoaderTest {
+    private File file_;
+    private LinesList linesList_;
+
+    @Before
+    public void setUp() {
+        this.file_ = new File("loader.txt");
+        this.linesList_ = new LinesList();
+    }
+
+    @After
+    public void tearDown() {
+        this.file_.delete();
+    }
+
+    private void writeFile(String content) throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_));
+        writer.write(content);
+        writer.close();
+    }
+
+    private List<String> readFile() throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(this.file_));
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    @Test
+    public void Loading_splits_lines_like_a_buffered_reader() throws Exception {
+        writeFile("lorem\nipsum\r\ndolor\rsit\n\namet");
+        new FileLoader().load(this.file_, this.linesList_);
+        assertThat(this.linesList_.getAll(), equalTo(readFile()));
+    }
+
+    @Test
+    public void Loading_in_small_chunks_keeps_every_line_in_order() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("line ").append(i).append(i % 7 == 0 ? " a much longer line than a chunk" : "")
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        writeFile(content.toString());
+
+        new FileLoader(16).load(this.file_, this.linesList_);
+
+        assertThat(this.linesList_.getAll(), equalTo(readFile()));
+        assertThat(this.linesList_.search("chunk").size(), is(143));
+        assertThat(this.linesList_.search("999"), hasItems(999));
+    }
+
+    @Test
+    public void Loading_appends_after_existing_lines() throws Exception {
+        writeFile("ipsum dolor\nlorem\n");
+        this.linesList_.add("lorem ipsum");
+
+        new FileLoader(4).load(this.file_, this.linesList_);
+
+        assertThat(this.linesList_.getAll(), equalTo(Arrays.asList("lorem ipsum", "ipsum dolor", "lorem")));
+        assertThat(this.linesList_.search("lorem").size(), is(2));
+        assertThat(this.linesList_.search("ipsum").size(), is(2));
+    }
+
+    @Test
+    public void Loading_an_empty_file_adds_nothing() throws Exception {
+        writeFile("");
+        new FileLoader().load(this.file_, this.linesList_);
+        assertThat(this.linesList_.count(), is(0));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LevenshteinAutomatonTest {
+
+    private static boolean accepts(LevenshteinAutomaton automaton, String word) {
+        int[] state = automaton.start();
+        for (int i = 0; i < word.length(); i++) {
+            state = automaton.step(state, word.charAt(i));
+        }
+        return automaton.isMatch(state);
+    }
+
+    private static int distance(String first, String second) {
+        int[] row = new int[second.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            int diagonal = row[0];
+            row[0] = i;
+            for (int j = 1; j <= second.length(); j++) {
+                int above = row[j];
+                int cost = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j] + 1, row[j - 1] + 1), diagonal + cost);
+                diagonal = above;
+            }
+        }
+        return row[second.length()];
+    }
+
+    @Test
+    public void Words_within_the_edit_distance_are_accepted() {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton("lorem", 1);
+        assertThat(accepts(automaton, "lorem"), is(true));
+        assertThat(accepts(automaton, "lorm"), is(true));
+        assertThat(accepts(automaton, "lorems"), is(true));
+        assertThat(accepts(automaton, "loram"), is(true));
+        assertThat(accepts(automaton, "lorme"), is(false));
+        assertThat(accepts(new LevenshteinAutomaton("lorem", 2), "lorme"), is(true));
+    }
+
+    @Test
+    public void Dead_states_cannot_match_any_more() {
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton("lorem", 1);
+        int[] state = automaton.step(automaton.step(automaton.start(), 'x'), 'y');
+        assertThat(automaton.canMatch(state), is(false));
+    }
+
+    @Test
+    public void Fuzzy_expansion_matches_brute_force_distances() {
+        Random random = new Random(7);
+        InvertedIndex index = new InvertedIndex();
+        Set<String> vocabulary = new HashSet<>();
+        for (int i = 0; i < 3000; i++) {
+            char[] chars = new char[1 + random.nextInt(7)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(4));
+            }
+            String word = new String(chars);
+            vocabulary.add(word);
+            index.add(i, word);
+        }
+
+        for (String word : new String[]{"abc", "dcba", "aaaaaa", "b", "abcdabcd"}) {
+            for (int maxEdits = 1; maxEdits <= 2; maxEdits++) {
+                Set<String> expected = new HashSet<>();
+                for (String term : vocabulary) {
+                    if (distance(word, term) <= maxEdits) {
+                        expected.add(term);
+                    }
+                }
+                Set<String> actual = new HashSet<>();
+                for (int termId : index.expandFuzzy(word, maxEdits)) {
+                    actual.add(index.termOf(termId));
+                }
+                assertThat(word + " ~" + maxEdits, actual, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void Fuzzy_expansion_ignores_case() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(0, "Lorem IPSUM");
+        int[] termIds = index.expandFuzzy("LOREN", 1);
+        assertThat(Arrays.stream(termIds).mapToObj(index::termOf).toArray(), equalTo(new Object[]{"lorem"}));
+    }
+}
@@ -1,9 +1,10 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -36,25 +37,107 @@ public class LinesListTest {
     public void Searching_returns_a_set_of_lines() {
         addLines("lorem ipsum\nDolor lorem\nSit amet".split("\n"));
 
-        Set<Integer> searchResults = this.linesList_.search("lorem");
+        SearchResults searchResults = this.linesList_.search("lorem");
         assertThat(searchResults, hasItems(0, 1));
     }
 
+    @Test
+    public void Searching_returns_line_numbers_in_line_order() {
+        addLines("dolor lorem\nipsum\nLorem\nsit\nlorem amet".split("\n"));
+        this.linesList_.remove(1);
+
+        SearchResults searchResults = this.linesList_.search("lorem");
+        assertThat(searchResults.toArray(), equalTo(new int[]{0, 1, 3}));
+        assertThat(searchResults.get(2), is(3));
+        assertThat(searchResults.contains(1), is(true));
+        assertThat(searchResults.contains(2), is(false));
+        assertThat(searchResults.stream().sum(), is(4));
+    }
+
     @Test
     public void Searching_is_case_insensitive() {
         addLines("Lorem ipsum\nDolor lorem\nSit amet".split("\n"));
 
-        Set<Integer> searchResults = this.linesList_.search("LOREM");
+        SearchResults searchResults = this.linesList_.search("LOREM");
         assertThat(searchResults, hasItems(0, 1));
     }
 
     @Test
     public void Searching_for_non_existent_word_returns_null() {
         this.linesList_.add("Lorem ipsum dolor sit amet");
-        Set<Integer> searchResults = this.linesList_.search("consectetur");
+        SearchResults searchResults = this.linesList_.search("consectetur");
         assertThat(searchResults, is(nullValue()));
     }
 
+    @Test
+    public void Searching_a_word_repeated_in_a_line_returns_the_line_once() {
+        addLines("lorem lorem ipsum\nipsum".split("\n"));
+        assertThat(this.linesList_.search("lorem").size(), is(1));
+        assertThat(this.linesList_.search("ipsum").size(), is(2));
+    }
+
+    @Test
+    public void Searching_for_a_word_whose_lines_were_all_removed_returns_null() {
+        addLines("Lorem ipsum\nDolor sit".split("\n"));
+        this.linesList_.remove(0);
+        assertThat(this.linesList_.search("lorem"), is(nullValue()));
+    }
+
+    @Test
+    public void Searching_several_words_returns_lines_containing_all_of_them() {
+        addLines("lorem ipsum dolor\nlorem dolor\nipsum dolor\nlorem ipsum".split("\n"));
+        assertThat(this.linesList_.search("lorem ipsum").toArray(), equalTo(new int[]{0, 3}));
+        assertThat(this.linesList_.search("lorem AND dolor AND ipsum").toArray(), equalTo(new int[]{0}));
+    }
+
+    @Test
+    public void Searching_with_or_returns_lines_containing_any_word() {
+        addLines("lorem\nipsum\ndolor\nlorem ipsum".split("\n"));
+        assertThat(this.linesList_.search("lorem OR dolor").toArray(), equalTo(new int[]{0, 2, 3}));
+    }
+
+    @Test
+    public void Searching_with_not_excludes_lines_containing_the_word() {
+        addLines("lorem\nipsum\ndolor\nlorem ipsum".split("\n"));
+        assertThat(this.linesList_.search("lorem NOT ipsum").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("lorem -ipsum").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("NOT lorem").toArray(), equalTo(new int[]{1, 2}));
+    }
+
+    @Test
+    public void Searching_for_words_starting_with_a_dash_alone_finds_them() {
+        addLines("grep -v error\nls -la\nsort --top".split("\n"));
+        assertThat(this.linesList_.search("-v").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("--top").toArray(), equalTo(new int[]{2}));
+        assertThat(this.linesList_.search("\"-la\"").toArray(), equalTo(new int[]{1}));
+        assertThat(this.linesList_.search("-v OR -la").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("grep -error"), is(nullValue()));
+    }
+
+    @Test
+    public void Searching_with_and_binds_tighter_than_or() {
+        addLines("lorem ipsum\ndolor\nlorem\nipsum".split("\n"));
+        assertThat(this.linesList_.search("lorem ipsum OR dolor").toArray(), equalTo(new int[]{0, 1}));
+    }
+
+    @Test
+    public void Searching_intersects_long_posting_lists() {
+        for (int i = 0; i < 10000; i++) {
+            this.linesList_.add((i % 2 == 0 ? "even " : "odd ") + (i % 3 == 0 ? "three" : "other"));
+        }
+        SearchResults searchResults = this.linesList_.search("three even");
+        assertThat(searchResults.size(), is(1667));
+        for (int lineNumber : searchResults) {
+            assertThat(lineNumber % 6, is(0));
+        }
+    }
+
+    @Test(expected = Error.class)
+    public void Searching_with_a_dangling_operator_throws_error() {
+        addLines("lorem ipsum".split("\n"));
+        this.linesList_.search("lorem OR");
+    }
+
     @Test
     public void Removing_a_line_returns_the_content_of_the_line() {
         String line = "Hello World!";
@@ -85,6 +168,52 @@ public class LinesListTest {
         assertThat(this.linesList_.search("ipsum"), not(hasItems(1)));
     }
 
+    @Test
+    public void Removing_a_line_renumbers_later_lines() {
+        addLines("Lorem ipsum\nDolor ipsum\nSit amet\nConsectetur ipsum".split("\n"));
+
+        this.linesList_.remove(0);
+        assertThat(this.linesList_.search("ipsum"), hasItems(0, 2));
+        assertThat(this.linesList_.get(1), equalTo("Sit amet"));
+        assertThat(this.linesList_.getLine(2).getContent(), equalTo("Consectetur ipsum"));
+    }
+
+    @Test
+    public void Removing_many_lines_keeps_positions_consistent() {
+        for (int i = 0; i < 5000; i++) {
+            this.linesList_.add("line " + i);
+        }
+        for (int i = 0; i < 4000; i++) {
+            this.linesList_.remove(0);
+        }
+
+        assertThat(this.linesList_.count(), is(1000));
+        assertThat(this.linesList_.get(0), equalTo("line 4000"));
+        assertThat(this.linesList_.search("4999"), hasItems(999));
+        assertThat(this.linesList_.add("line 5000"), is(1000));
+        assertThat(this.linesList_.getAll().get(1000), equalTo("line 5000"));
+    }
+
+    @Test
+    public void Getting_a_range_skips_removed_lines() {
+        for (int i = 0; i < 100; i++) {
+            this.linesList_.add("line " + i);
+        }
+        for (int i = 0; i < 50; i += 2) {
+            this.linesList_.remove(i / 2);
+        }
+
+        assertThat(this.linesList_.getRange(10, 14), equalTo(Arrays.asList("line 21", "line 23", "line 25", "line 27")));
+        assertThat(this.linesList_.getRange(74, 75), equalTo(Arrays.asList("line 99")));
+        assertThat(this.linesList_.getRange(3, 3).isEmpty(), is(true));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void Getting_a_range_beyond_the_end_throws_exception() {
+        addLines("Lorem\nipsum".split("\n"));
+        this.linesList_.getRange(1, 3);
+    }
+
     @Test
     public void Clearing_removes_all_lines_and_search_indices() {
         final String[] lines = "Lorem ipsum dolor sit amet".split(" ");
@@ -99,6 +228,137 @@ public class LinesListTest {
         assertThat(this.linesList_.search("ipsum"), is(nullValue()));
     }
 
+    @Test
+    public void Search_expands_prefixes_and_wildcards() {
+        addLines(new String[]{"error at boot", "Errno 2", "terror", "cat", "cut the rope", "coat"});
+        assertThat(this.linesList_.search("err*").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("*ror").toArray(), equalTo(new int[]{0, 2}));
+        assertThat(this.linesList_.search("c?t").toArray(), equalTo(new int[]{3, 4}));
+        assertThat(this.linesList_.search("c*t -cut").toArray(), equalTo(new int[]{3, 5}));
+        assertThat(this.linesList_.search("e*r*").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("x*"), is(nullValue()));
+    }
+
+    @Test
+    public void Search_expanding_to_many_terms_finds_every_line() {
+        for (int i = 0; i < 1000; i++) {
+            this.linesList_.add("word" + i + (i % 2 == 0 ? " even" : ""));
+        }
+        this.linesList_.add("another");
+        assertThat(this.linesList_.search("word*").size(), is(1000));
+        assertThat(this.linesList_.search("word* -even").size(), is(500));
+        assertThat(this.linesList_.search("*9?").toArray()[0], is(90));
+
+        this.linesList_.add("wordy");
+        assertThat(this.linesList_.search("word?").toArray(), equalTo(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 1001}));
+    }
+
+    @Test
+    public void Fuzzy_search_tolerates_typos() {
+        addLines(new String[]{"connection refused", "connection reset", "conection lost", "timeout"});
+        assertThat(this.linesList_.search("~connetion").toArray(), equalTo(new int[]{0, 1, 2}));
+        assertThat(this.linesList_.search("~timout").toArray(), equalTo(new int[]{3}));
+        assertThat(this.linesList_.search("~reset").toArray(), equalTo(new int[]{1}));
+        assertThat(this.linesList_.search("~connection -~lost").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("~xyz"), is(nullValue()));
+    }
+
+    @Test
+    public void Phrase_search_matches_adjacent_words_in_order() {
+        addLines(new String[]{"connection reset by peer", "reset connection", "connection was reset",
+                "Connection RESET now", "connection"});
+        assertThat(this.linesList_.search("\"connection reset\"").toArray(), equalTo(new int[]{0, 3}));
+        assertThat(this.linesList_.search("\"reset by peer\"").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("connection -\"connection reset\"").toArray(), equalTo(new int[]{1, 2, 4}));
+        assertThat(this.linesList_.search("\"connection lost\""), is(nullValue()));
+        assertThat(this.linesList_.search("\"peer connection\""), is(nullValue()));
+    }
+
+    @Test
+    public void Near_search_matches_words_within_the_distance() {
+        addLines(new String[]{"disk error", "error on the disk", "disk is fine but network error", "error error"});
+        assertThat(this.linesList_.search("error NEAR/1 disk").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("error NEAR/3 disk").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("error NEAR/1 error").toArray(), equalTo(new int[]{3}));
+        assertThat(this.linesList_.search("\"network error\" NEAR/5 disk").toArray(), equalTo(new int[]{2}));
+        assertThat(this.linesList_.search("disk -error NEAR/2 disk").toArray(), equalTo(new int[]{1, 2}));
+    }
+
+    @Test(expected = Error.class)
+    public void Near_search_with_a_wildcard_throws_error() {
+        addLines(new String[]{"disk error"});
+        this.linesList_.search("err* NEAR/2 disk");
+    }
+
+    @Test(expected = Error.class)
+    public void Searching_with_an_unterminated_quote_throws_error() {
+        addLines(new String[]{"disk error"});
+        this.linesList_.search("\"disk error");
+    }
+
+    @Test
+    public void Regex_search_matches_lines_against_the_expression() {
+        addLines(new String[]{"connection reset by peer", "connection refused", "reset connection",
+                "timeout after 30ms", "Timeout after 5 ms"});
+        assertThat(this.linesList_.search("/conn\\w+ re(set|fused)/").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("/^timeout after \\d+ ?ms$/").toArray(), equalTo(new int[]{3}));
+        assertThat(this.linesList_.search("/^timeout after \\d+ ?ms$/i").toArray(), equalTo(new int[]{3, 4}));
+        assertThat(this.linesList_.search("/connection$/").toArray(), equalTo(new int[]{2}));
+        assertThat(this.linesList_.search("/reset$/"), is(nullValue()));
+    }
+
+    @Test
+    public void Regex_search_sees_lines_changed_after_the_first_search() {
+        addLines(new String[]{"disk error", "network error"});
+        assertThat(this.linesList_.search("/(disk|network) error/").toArray(), equalTo(new int[]{0, 1}));
+
+        this.linesList_.add("disk error again");
+        this.linesList_.remove(0);
+        assertThat(this.linesList_.search("/disk error/").toArray(), equalTo(new int[]{1}));
+
+        List<String> added = new ArrayList<>();
+        added.add("an error on disk");
+        InvertedIndex addedIndex = new InvertedIndex();
+        addedIndex.add(0, added.get(0));
+        this.linesList_.addAll(added, addedIndex);
+        this.linesList_.sort();
+        assertThat(this.linesList_.search("/error.*disk/").toArray(), equalTo(new int[]{0}));
+        assertThat(this.linesList_.search("/disk error/").toArray(), equalTo(new int[]{1}));
+    }
+
+    @Test
+    public void Substring_search_matches_text_inside_words() {
+        addLines(new String[]{"java.net.SocketTimeoutException", "user=42 logged in", "no timeouts here"});
+        assertThat(this.linesList_.search("'timeout'").toArray(), equalTo(new int[]{0, 2}));
+        assertThat(this.linesList_.search("'User=42 '").toArray(), equalTo(new int[]{1}));
+        assertThat(this.linesList_.search("'timed out'"), is(nullValue()));
+    }
+
+    @Test
+    public void Substring_search_stays_correct_while_the_index_is_rebuilt() throws InterruptedException {
+        this.linesList_.enableSubstringIndex();
+        for (int i = 0; i < 3000; i++) {
+            this.linesList_.add("request " + i + (i % 1000 == 7 ? " ReadTimeoutException" : " ok"));
+        }
+        assertThat(this.linesList_.search("'timeout'").toArray(), equalTo(new int[]{7, 1007, 2007}));
+
+        this.linesList_.remove(7);
+        this.linesList_.add("WriteTimeout");
+        this.linesList_.sort();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            assertThat(this.linesList_.search("'timeout'").size(), is(3));
+            assertThat(this.linesList_.get(this.linesList_.search("'timeout'").toArray()[0]),
+                    equalTo("WriteTimeout"));
+            Thread.sleep(100);
+        }
+    }
+
+    @Test(expected = Error.class)
+    public void Searching_for_an_empty_substring_throws_error() {
+        addLines(new String[]{"lorem"});
+        this.linesList_.search("''");
+    }
+
     @Test
     public void Sorting_arranges_lines_in_alphabetical_order() {
         final String[] lines = "Lorem ipsum dolor sit amet".split(" ");
@@ -113,6 +373,46 @@ public class LinesListTest {
         }
     }
 
+    @Test
+    public void Sorting_many_lines_keeps_search_indices_consistent() {
+        for (int i = 200000; i > 0; i--) {
+            this.linesList_.add(String.format("%06d %s", i, i % 3 == 0 ? "fizz" : "buzz"));
+        }
+        this.linesList_.sort();
+
+        assertThat(this.linesList_.get(0), equalTo("000001 buzz"));
+        assertThat(this.linesList_.get(199999), equalTo("200000 buzz"));
+        SearchResults searchResults = this.linesList_.search("fizz");
+        assertThat(searchResults.size(), is(66666));
+        assertThat(searchResults.get(0), is(2));
+        assertThat(searchResults.get(66665), is(199997));
+        assertThat(this.linesList_.search("150000").toArray(), equalTo(new int[]{149999}));
+    }
+
+    @Test
+    public void Sorting_by_key_keeps_lines_with_equal_keys_in_order() {
+        addLines(new String[]{"10 b", "9 a", "Apple", "10 a", "banana"});
+        this.linesList_.sort(SortOrder.parse("-n"));
+        assertThat(this.linesList_.getAll(), equalTo(Arrays.asList("Apple", "banana", "9 a", "10 b", "10 a")));
+
+        this.linesList_.sort(SortOrder.parse("-i -k 2"));
+        assertThat(this.linesList_.getAll(), equalTo(Arrays.asList("Apple", "banana", "9 a", "10 a", "10 b")));
+        assertThat(this.linesList_.search("a").toArray(), equalTo(new int[]{2, 3}));
+    }
+
+    @Test
+    public void Sorting_many_lines_by_key_matches_sorting_by_comparator() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add((i * 7919 % 20000) + (i % 2 == 0 ? " Even" : " odd"));
+        }
+        addLines(lines.toArray(new String[lines.size()]));
+        this.linesList_.sort(SortOrder.parse("-n"));
+
+        lines.sort(Comparator.comparingInt(line -> Integer.parseInt(line.split(" ")[0])));
+        assertThat(this.linesList_.getAll(), equalTo(lines));
+    }
+
     @Test
     public void Sorting_also_alter_search_indices() {
         final String[] lines = "e d a c b a".split(" ");
@@ -121,4 +421,65 @@ public class LinesListTest {
         assertThat(this.linesList_.search("a"), hasItems(0, 1));
     }
 
+    @Test
+    public void Repeated_searches_are_served_from_the_query_cache() {
+        addLines("lorem ipsum\nDolor lorem\nSit amet".split("\n"));
+
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("LOREM").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.search("nothing"), is(nullValue()));
+        assertThat(this.linesList_.search("nothing"), is(nullValue()));
+        assertThat(this.linesList_.getQueryCache().getHitCount(), is(2L));
+        assertThat(this.linesList_.getQueryCache().getMissCount(), is(3L));
+    }
+
+    @Test
+    public void Adding_a_line_only_invalidates_the_queries_it_may_match() {
+        addLines("lorem ipsum\nDolor lorem\nSit amet".split("\n"));
+        this.linesList_.search("lorem");
+        this.linesList_.search("\"sit amet\" OR dolor");
+        this.linesList_.search("/amet/");
+
+        this.linesList_.add("Sit dolor");
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 1}));
+        assertThat(this.linesList_.getQueryCache().getHitCount(), is(1L));
+        assertThat(this.linesList_.search("\"sit amet\" OR dolor").toArray(), equalTo(new int[]{1, 2, 3}));
+        assertThat(this.linesList_.search("/amet/").toArray(), equalTo(new int[]{2}));
+        assertThat(this.linesList_.getQueryCache().getHitCount(), is(1L));
+    }
+
+    @Test
+    public void Removing_sorting_and_clearing_invalidate_all_queries() {
+        addLines("b lorem\na ipsum\nc lorem".split("\n"));
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 2}));
+
+        this.linesList_.sort(SortOrder.parse("-k 2"));
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{1, 2}));
+        this.linesList_.remove(0);
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 1}));
+        this.linesList_.add("a lorem");
+        this.linesList_.sort();
+        assertThat(this.linesList_.search("lorem").toArray(), equalTo(new int[]{0, 1, 2}));
+        this.linesList_.clear();
+        assertThat(this.linesList_.search("lorem"), is(nullValue()));
+        assertThat(this.linesList_.getQueryCache().getHitCount(), is(0L));
+    }
+
+    @Test
+    public void Ranked_searches_return_the_best_lines_first() {
+        addLines("timeout while reading\ntimeout\nreading done\nwrite timeout timeout".split("\n"));
+        this.linesList_.remove(1);
+
+        assertThat(this.linesList_.searchTop("timeout", 5), equalTo(new int[]{2, 0}));
+        assertThat(this.linesList_.searchTop("timeout OR reading", 1), equalTo(new int[]{0}));
+        assertThat(this.linesList_.searchTop("missing", 5), is(nullValue()));
+    }
+
+    @Test(expected = Error.class)
+    public void Ranking_a_regular_expression_throws_error() {
+        addLines("timeout".split("\n"));
+        this.linesList_.searchTop("/time.*/", 5);
+    }
+
 }
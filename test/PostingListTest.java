@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PostingListTest {
+
+    @Test
+    public void Appended_ids_are_read_back_in_order() {
+        PostingList postings = new PostingList();
+        int[] ids = new int[]{0, 1, 127, 128, 16384, 2000000000};
+        for (int id : ids) {
+            postings.append(id);
+        }
+
+        assertThat(postings.count(), is(ids.length));
+        assertThat(postings.toArray(), equalTo(ids));
+    }
+
+    @Test
+    public void Appending_the_last_id_again_is_ignored() {
+        PostingList postings = new PostingList();
+        postings.append(5);
+        postings.append(5);
+        assertThat(postings.count(), is(1));
+    }
+
+    @Test
+    public void Small_gaps_take_one_byte_each() {
+        PostingList postings = new PostingList();
+        for (int id = 0; id < 1000; id += 3) {
+            postings.append(id);
+        }
+        assertThat(postings.byteSize(), is(postings.count()));
+    }
+
+    @Test
+    public void Advancing_skips_to_the_first_id_not_smaller_than_the_target() {
+        PostingList postings = new PostingList();
+        for (int id = 0; id < 100000; id += 10) {
+            postings.append(id);
+        }
+
+        IdCursor cursor = postings.cursor();
+        assertThat(cursor.advance(0), is(0));
+        assertThat(cursor.advance(0), is(0));
+        assertThat(cursor.advance(12345), is(12350));
+        assertThat(cursor.next(), is(12360));
+        assertThat(cursor.advance(99990), is(99990));
+        assertThat(cursor.advance(99991), is(IdCursor.END));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Appending_a_smaller_id_is_rejected() {
+        PostingList postings = new PostingList();
+        postings.append(10);
+        postings.append(9);
+    }
+
+    @Test
+    public void Appending_another_list_shifts_its_ids_and_keeps_them_searchable() {
+        PostingList first = new PostingList();
+        PostingList second = new PostingList();
+        for (int id = 0; id < 1000; id += 3) {
+            first.append(id);
+            second.append(id);
+        }
+
+        first.appendAll(second, 5000);
+
+        assertThat(first.count(), is(2 * second.count()));
+        IdCursor cursor = first.cursor();
+        assertThat(cursor.advance(998), is(999));
+        assertThat(cursor.advance(1000), is(5000));
+        assertThat(cursor.advance(5500), is(5501));
+        assertThat(cursor.advance(6000), is(IdCursor.END));
+
+        first.append(7000);
+        assertThat(first.toArray()[first.count() - 1], is(7000));
+    }
+
+    @Test
+    public void Positions_are_read_back_for_the_current_id() {
+        PostingList postings = new PostingList();
+        for (int id = 0; id < 10000; id++) {
+            for (int position = id % 3; position < 10; position += 4) {
+                postings.append(id, position);
+            }
+        }
+
+        PostingList.Cursor cursor = postings.cursor();
+        assertThat(cursor.next(), is(0));
+        assertThat(cursor.loadPositions(), is(3));
+        assertThat(cursor.position(2), is(8));
+
+        // Positions of the ids skipped over stay in sync
+        assertThat(cursor.advance(7000), is(7000));
+        assertThat(cursor.loadPositions(), is(3));
+        assertThat(cursor.position(0), is(1));
+        assertThat(cursor.position(2), is(9));
+        assertThat(cursor.next(), is(7001));
+        assertThat(cursor.next(), is(7002));
+        assertThat(cursor.loadPositions(), is(3));
+        assertThat(cursor.position(0), is(0));
+    }
+
+    @Test
+    public void Appending_another_list_keeps_its_positions() {
+        PostingList first = new PostingList();
+        PostingList second = new PostingList();
+        for (int id = 0; id < 1000; id++) {
+            first.append(id, 1);
+            second.append(id, 2);
+            second.append(id, id + 3);
+        }
+
+        first.appendAll(second, 5000);
+
+        PostingList.Cursor cursor = first.cursor();
+        assertThat(cursor.advance(5700), is(5700));
+        assertThat(cursor.loadPositions(), is(2));
+        assertThat(cursor.position(0), is(2));
+        assertThat(cursor.position(1), is(703));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Appending_a_position_that_is_not_increasing_is_rejected() {
+        PostingList postings = new PostingList();
+        postings.append(3, 4);
+        postings.append(3, 4);
+    }
+
+    @Test
+    public void The_highest_number_of_positions_of_an_id_is_kept() {
+        PostingList postings = new PostingList();
+        postings.append(1, 0);
+        postings.append(1, 3);
+        postings.append(2, 1);
+        assertThat(postings.maxFrequency(), is(2));
+
+        PostingList other = new PostingList();
+        other.append(0, 0);
+        other.append(0, 1);
+        other.append(0, 2);
+        postings.appendAll(other, 10);
+        assertThat(postings.maxFrequency(), is(3));
+        assertThat(new PostingList().maxFrequency(), is(0));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryCacheTest {
+
+    private static final SearchResults RESULTS = new SearchResults(new int[]{1, 2}, 2);
+
+    private QueryCache cache_;
+
+    @Before
+    public void setUp() {
+        this.cache_ = new QueryCache(2);
+    }
+
+    @Test
+    public void Cached_results_are_returned_and_counted() {
+        assertThat(this.cache_.get("lorem"), is(nullValue()));
+        this.cache_.put("lorem", RESULTS, Collections.singleton("lorem"));
+        assertThat(this.cache_.get("lorem"), is(RESULTS));
+        assertThat(this.cache_.getHitCount(), is(1L));
+        assertThat(this.cache_.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void The_least_recently_used_query_is_evicted() {
+        this.cache_.put("lorem", RESULTS, Collections.singleton("lorem"));
+        this.cache_.put("ipsum", RESULTS, Collections.singleton("ipsum"));
+        this.cache_.get("lorem");
+        this.cache_.put("dolor", RESULTS, Collections.singleton("dolor"));
+
+        assertThat(this.cache_.get("ipsum"), is(nullValue()));
+        assertThat(this.cache_.get("lorem"), is(RESULTS));
+        assertThat(this.cache_.get("dolor"), is(RESULTS));
+    }
+
+    @Test
+    public void A_new_line_invalidates_the_queries_requiring_its_words() {
+        this.cache_.put("lorem OR ipsum", RESULTS, new HashSet<>(Arrays.asList("lorem", "ipsum")));
+        this.cache_.put("dolor", RESULTS, Collections.singleton("dolor"));
+
+        this.cache_.invalidateLine("Ipsum sit");
+        assertThat(this.cache_.get("lorem OR ipsum"), is(nullValue()));
+        assertThat(this.cache_.get("dolor"), is(RESULTS));
+    }
+
+    @Test
+    public void A_new_line_invalidates_the_queries_without_required_words() {
+        this.cache_.put("/l.rem/", RESULTS, null);
+        this.cache_.invalidateLine("");
+        assertThat(this.cache_.get("/l.rem/"), is(nullValue()));
+    }
+
+    @Test
+    public void Invalidating_all_drops_every_query() {
+        this.cache_.put("lorem", RESULTS, Collections.singleton("lorem"));
+        this.cache_.invalidateAll();
+        assertThat(this.cache_.get("lorem"), is(nullValue()));
+
+        this.cache_.put("lorem", RESULTS, Collections.singleton("lorem"));
+        assertThat(this.cache_.get("lorem"), is(RESULTS));
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RadixSorterTest {
+
+    private static Line[] toLines(String[] contents) {
+        Line[] lines = new Line[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            lines[i] = new Line(contents[i], i);
+        }
+        return lines;
+    }
+
+    private static void assertSortsLikeComparisons(Line[] lines) {
+        Line[] expected = lines.clone();
+        Arrays.sort(expected);
+        RadixSorter.sort(lines);
+        assertThat(lines, equalTo(expected));
+    }
+
+    @Test
+    public void Sorting_few_lines_orders_them_alphabetically() {
+        Line[] lines = toLines(new String[]{"dolor", "Lorem", "ipsum", "", "amet"});
+        RadixSorter.sort(lines);
+        assertThat(lines[0].getContent(), equalTo(""));
+        assertThat(lines[1].getContent(), equalTo("Lorem"));
+        assertThat(lines[4].getContent(), equalTo("ipsum"));
+    }
+
+    @Test
+    public void Sorting_lines_sharing_long_prefixes_matches_comparison_sort() {
+        Random random = new Random(17);
+        String[] contents = new String[50000];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = String.format("2016-02-%02d 12:%02d:%02d host-%d.example.com GET /%d",
+                    random.nextInt(3), random.nextInt(60), random.nextInt(60), random.nextInt(4), random.nextInt(1000));
+        }
+        assertSortsLikeComparisons(toLines(contents));
+    }
+
+    @Test
+    public void Sorting_prefixes_duplicates_and_unusual_characters_matches_comparison_sort() {
+        Random random = new Random(42);
+        char[] alphabet = {'a', 'b', '\0', ' ', '\u00e9', '\uffff', '\ud83d', 'A'};
+        String[] contents = new String[20000];
+        for (int i = 0; i < contents.length; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            contents[i] = new String(chars);
+        }
+        assertSortsLikeComparisons(toLines(contents));
+    }
+
+    @Test
+    public void Sorting_equal_lines_orders_them_by_id() {
+        String[] contents = new String[10000];
+        Arrays.fill(contents, "the same line");
+        Line[] lines = toLines(contents);
+        for (int i = 0; i < lines.length; i++) {
+            lines[i].setId(lines.length - i);
+        }
+        assertSortsLikeComparisons(lines);
+    }
+}
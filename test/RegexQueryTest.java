@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RegexQueryTest {
+
+    private static final String[] FRAGMENTS = new String[]{
+            "ab", "bca", "c", " ", ".", "[ab]", "[]c]", "[\\Q]ab\\E]", "\\d", "\\.", "\\Qa.b\\E", "(?:ab|ca)",
+            "(bc)", "(?=abc)", "(?!cab)", "(?i)", "\\b", "^", "$"
+    };
+    private static final String[] QUANTIFIERS = new String[]{"", "", "", "?", "*", "+", "{2}", "{0,2}", "+?"};
+
+    private static Set<Integer> candidatesOf(RegexQuery regex, TrigramIndex index, int slots) {
+        Set<Integer> ids = new HashSet<>();
+        IdCursor cursor = regex.candidates(index, slots);
+        int id;
+        while ((id = cursor.next()) != IdCursor.END) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void Regular_expressions_are_written_between_slashes() {
+        assertThat(RegexQuery.isRegex("/err(no|or)/"), is(true));
+        assertThat(RegexQuery.isRegex("/usr/bin/i"), is(true));
+        assertThat(RegexQuery.isRegex("/usr/bin"), is(false));
+        assertThat(RegexQuery.isRegex("error"), is(false));
+        assertThat(RegexQuery.isRegex("/"), is(false));
+    }
+
+    @Test(expected = Error.class)
+    public void Parsing_an_invalid_expression_throws_error() {
+        RegexQuery.parse("/err(or/");
+    }
+
+    @Test
+    public void Candidates_contain_the_required_literals() {
+        TrigramIndex index = new TrigramIndex();
+        String[] lines = new String[]{"connection reset", "connected", "Connection Refused", "reset link"};
+        for (int i = 0; i < lines.length; i++) {
+            index.add(i, lines[i]);
+        }
+
+        Set<Integer> expected = new HashSet<>();
+        expected.add(0);
+        expected.add(2);
+        assertThat(candidatesOf(RegexQuery.parse("/conn\\w+ (refused|reset)/"), index, lines.length),
+                equalTo(expected));
+        assertThat(candidatesOf(RegexQuery.parse("/\\w+/"), index, lines.length).size(), is(lines.length));
+    }
+
+    @Test
+    public void Quoted_brackets_do_not_close_a_class() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(0, "acd here");
+        assertThat(candidatesOf(RegexQuery.parse("/[\\Q]ab\\E]cd/"), index, 1).contains(0), is(true));
+    }
+
+    @Test
+    public void Candidates_include_every_matching_line() {
+        Random random = new Random(11);
+        String alphabet = "abc. ";
+        String[] lines = new String[500];
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < lines.length; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            lines[i] = random.nextBoolean() ? new String(chars) : new String(chars).toUpperCase();
+            index.add(i, lines[i]);
+        }
+
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder expression = new StringBuilder();
+            int atoms = 1 + random.nextInt(5);
+            for (int i = 0; i < atoms; i++) {
+                if (i > 0 && random.nextInt(8) == 0) {
+                    expression.append('|');
+                }
+                expression.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                if (expression.charAt(expression.length() - 1) != '$' && expression.charAt(0) != '^') {
+                    expression.append(QUANTIFIERS[random.nextInt(QUANTIFIERS.length)]);
+                }
+            }
+            String query = "/" + expression + (random.nextBoolean() ? "/i" : "/");
+
+            RegexQuery regex;
+            try {
+                regex = RegexQuery.parse(query);
+            } catch (Error e) {
+                continue;
+            }
+            Set<Integer> candidates = candidatesOf(regex, index, lines.length);
+            for (int i = 0; i < lines.length; i++) {
+                if (regex.matches(lines[i])) {
+                    assertThat(query + " on " + lines[i], candidates.contains(i), is(true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void Expressions_with_unsupported_flags_have_every_line_as_candidate() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(0, "abc");
+        index.add(1, "xyz");
+        assertThat(candidatesOf(RegexQuery.parse("/(?x) a b c /"), index, 2).size(), is(2));
+        assertThat(Pattern.compile("(?x) a b c ").matcher("abc").find(), is(true));
+    }
+}
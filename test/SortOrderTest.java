@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SortOrderTest {
+
+    private static int compareKeys(SortOrder order, String first, String second) {
+        return Integer.signum(order.keyOf(first).compareTo(order.keyOf(second)));
+    }
+
+    @Test
+    public void No_options_give_the_alphabetical_order() {
+        assertThat(SortOrder.parse(null).isAlphabetical(), is(true));
+        assertThat(SortOrder.parse("  ").isAlphabetical(), is(true));
+        assertThat(SortOrder.parse(null).describe(), equalTo("alphabetical order"));
+    }
+
+    @Test
+    public void Options_parse_back_from_their_canonical_form() {
+        String[] options = {"-i", "-n", "-l -k 2", "-ick3", "-k 1 -c"};
+        for (String option : options) {
+            SortOrder order = SortOrder.parse(option);
+            assertThat(SortOrder.parse(order.toOptions()).toOptions(), equalTo(order.toOptions()));
+        }
+        assertThat(SortOrder.parse("-ink2").toOptions(), equalTo("-i -n -k2"));
+        assertThat(SortOrder.parse("-i -k 3").describe(),
+                equalTo("case-insensitive alphabetical order from field 3"));
+    }
+
+    @Test
+    public void Invalid_or_conflicting_options_are_rejected() {
+        String[] invalidOptions = {"i", "-", "-x", "-k", "-k 0", "-k two", "-n -l", "-cn"};
+        for (String options : invalidOptions) {
+            try {
+                SortOrder.parse(options);
+                throw new AssertionError("Accepted " + options);
+            } catch (Error e) {
+                assertThat(e, is(not(instanceOf(AssertionError.class))));
+            }
+        }
+    }
+
+    @Test
+    public void Case_insensitive_keys_ignore_case() {
+        SortOrder order = SortOrder.parse("-i");
+        assertThat(compareKeys(order, "apple", "Banana"), is(-1));
+        assertThat(compareKeys(order, "APPLE", "apple"), is(0));
+    }
+
+    @Test
+    public void Numeric_keys_compare_leading_numbers() {
+        SortOrder order = SortOrder.parse("-n");
+        assertThat(compareKeys(order, "9 lives", "10 lives"), is(-1));
+        assertThat(compareKeys(order, "-2.5", "-2"), is(-1));
+        assertThat(compareKeys(order, "-0", "0"), is(0));
+        assertThat(compareKeys(order, "no number", "0"), is(0));
+        assertThat(compareKeys(order, "  3.75 apples", "3.5"), is(1));
+    }
+
+    @Test
+    public void Length_keys_compare_lengths() {
+        SortOrder order = SortOrder.parse("-l");
+        assertThat(compareKeys(order, "zz", "aaa"), is(-1));
+        assertThat(compareKeys(order, "abc", "xyz"), is(0));
+    }
+
+    @Test
+    public void Field_keys_start_at_the_field() {
+        SortOrder order = SortOrder.parse("-n -k 2");
+        assertThat(compareKeys(order, "b 10 x", "a 9 y"), is(1));
+        assertThat(compareKeys(order, "missing", "a 0"), is(0));
+        assertThat(SortOrder.parse("-k2").keyOf("a  b c"), equalTo("b c"));
+    }
+
+    @Test
+    public void Collated_keys_follow_the_collator() {
+        SortOrder order = SortOrder.parse("-c");
+        assertThat(compareKeys(order, "apple", "Banana"), is(-1));
+        assertThat(compareKeys(order, "a", "A"), is(-1));
+        assertThat(compareKeys(SortOrder.parse("-ci"), "a", "A"), is(0));
+    }
+}
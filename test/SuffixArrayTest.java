@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SuffixArrayTest {
+
+    private static List<Line> linesOf(String... contents) {
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            lines.add(contents[i] == null ? null : new Line(contents[i], i));
+        }
+        return lines;
+    }
+
+    @Test
+    public void Substrings_are_found_inside_words_and_across_words() {
+        SuffixArray suffixArray = new SuffixArray(linesOf(
+                "java.net.SocketTimeoutException: Read timed out", "user=42 logged in", "timeout", "user=421"));
+        assertThat(suffixArray.idsContaining("timeout"), equalTo(new int[]{0, 2}));
+        assertThat(suffixArray.idsContaining("user=42"), equalTo(new int[]{1, 3}));
+        assertThat(suffixArray.idsContaining("42 logged"), equalTo(new int[]{1}));
+        assertThat(suffixArray.idsContaining("timed outs"), equalTo(new int[0]));
+        assertThat(suffixArray.slots(), is(4));
+    }
+
+    @Test
+    public void Removed_lines_are_not_indexed() {
+        SuffixArray suffixArray = new SuffixArray(linesOf("abc", null, "xabcx"));
+        assertThat(suffixArray.idsContaining("abc"), equalTo(new int[]{0, 2}));
+        assertThat(new SuffixArray(linesOf()).idsContaining("abc"), equalTo(new int[0]));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void Cancelled_build_stops() {
+        new SuffixArray(linesOf("abc", "abd", "xabcx"), () -> true);
+    }
+
+    @Test
+    public void Lines_containing_a_substring_match_a_scan() {
+        Random random = new Random(3);
+        for (String alphabet : new String[]{"ab", "abcA B", "aaaaaab"}) {
+            String[] contents = new String[300];
+            for (int i = 0; i < contents.length; i++) {
+                char[] chars = new char[random.nextInt(20)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+                }
+                contents[i] = new String(chars);
+            }
+            SuffixArray suffixArray = new SuffixArray(linesOf(contents));
+
+            for (int n = 0; n < 200; n++) {
+                char[] chars = new char[1 + random.nextInt(6)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = Tokenizer.fold(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String substring = new String(chars);
+
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < contents.length; i++) {
+                    if (contents[i].toLowerCase().contains(substring)) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> actual = new ArrayList<>();
+                for (int id : suffixArray.idsContaining(substring)) {
+                    actual.add(id);
+                }
+                assertThat(substring, actual, equalTo(expected));
+            }
+        }
+    }
+}
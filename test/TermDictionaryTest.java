@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TermDictionaryTest {
+
+    private static List<String> termsIn(TermDictionary dictionary, InvertedIndex index, String affix) {
+        int[] range = dictionary.rangeOf(affix);
+        List<String> terms = new ArrayList<>();
+        for (int i = range[0]; i < range[1]; i++) {
+            terms.add(index.termOf(dictionary.termIdAt(i)));
+        }
+        return terms;
+    }
+
+    @Test
+    public void Ranges_hold_the_terms_with_the_prefix_in_order() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(0, "errno error Err terror e errors");
+        TermDictionary dictionary = new TermDictionary(index, false);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("err");
+        expected.add("errno");
+        expected.add("error");
+        expected.add("errors");
+        assertThat(termsIn(dictionary, index, "err"), equalTo(expected));
+        assertThat(termsIn(dictionary, index, "errz").isEmpty(), is(true));
+        assertThat(termsIn(dictionary, index, "").size(), is(6));
+    }
+
+    @Test
+    public void Reversed_ranges_hold_the_terms_with_the_suffix() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(0, "error terror or mirror orange");
+        TermDictionary dictionary = new TermDictionary(index, true);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("or");
+        expected.add("error");
+        expected.add("terror");
+        expected.add("mirror");
+        assertThat(termsIn(dictionary, index, "or"), equalTo(expected));
+    }
+
+    @Test
+    public void Terms_indexed_later_are_merged_in() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(0, "beta delta");
+        TermDictionary dictionary = new TermDictionary(index, false);
+        assertThat(termsIn(dictionary, index, "").size(), is(2));
+
+        index.add(1, "alpha gamma epsilon");
+        List<String> expected = new ArrayList<>();
+        expected.add("alpha");
+        expected.add("beta");
+        expected.add("delta");
+        expected.add("epsilon");
+        expected.add("gamma");
+        assertThat(termsIn(dictionary, index, ""), equalTo(expected));
+    }
+}
@@ -6,6 +6,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -24,13 +31,34 @@ public class TextFileTest {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws Exception {
+        if (this.textFile_ != null) {
+            this.textFile_.close();
+        }
+        Journal.fileFor(this.file_).delete();
         if (!this.file_.exists()) {
             return;
         }
         this.file_.delete();
     }
 
+    private void writeFile(String content) throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_));
+        writer.write(content);
+        writer.close();
+    }
+
+    private List<String> readFile() throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(this.file_));
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
     private void createTextFile() throws Exception {
         this.textFile_ = new TextFile(this.filePath_);
     }
@@ -80,6 +108,42 @@ public class TextFileTest {
         }
     }
 
+    @Test
+    public void Read_only_file_lines_are_read_from_the_mapping() throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_));
+        writer.write("Lorem ipsum\r\nDolor sit\n\nAmet, consectetur\n  \n\n");
+        writer.close();
+
+        this.textFile_ = new TextFile(this.filePath_, false, true);
+        assertThat(this.textFile_.getLinesCount(), is(4));
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Lorem ipsum", "Dolor sit", "", "Amet, consectetur")));
+        assertThat(this.textFile_.getLineAt(3).getContent(), equalTo("Amet, consectetur"));
+        assertThat(this.textFile_.searchFor("dolor OR amet,"), hasItems(1, 3));
+    }
+
+    @Test
+    public void Read_only_file_lines_end_at_lone_carriage_returns() throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(this.file_));
+        writer.write("Lorem\ripsum\r\ndolor\r\rsit\r");
+        writer.close();
+
+        this.textFile_ = new TextFile(this.filePath_, false, true);
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Lorem", "ipsum", "dolor", "", "sit")));
+        assertThat(this.textFile_.searchFor("sit"), hasItems(4));
+    }
+
+    @Test(expected = Error.class)
+    public void Read_only_file_cannot_be_modified() throws Exception {
+        this.file_.createNewFile();
+        this.textFile_ = new TextFile(this.filePath_, false, true);
+        this.textFile_.addLine("Hello World!");
+    }
+
+    @Test(expected = IOException.class)
+    public void Read_only_file_is_not_created_when_missing() throws Exception {
+        this.textFile_ = new TextFile(this.filePath_, false, true);
+    }
+
     @Test
     public void Add_line_returns_index_of_the_added_line() throws Exception {
         createDebugTextFile();
@@ -198,6 +262,228 @@ public class TextFileTest {
         reader.close();
     }
 
+    @Test
+    public void Saving_after_adding_appends_to_file_on_disk() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.addLine("Amet, consectetur");
+        this.textFile_.save();
+        this.textFile_.addLine("Adipiscing elit");
+        this.textFile_.save();
+
+        assertThat(readFile(), equalTo(Arrays.asList("Lorem ipsum", "Dolor sit", "Amet, consectetur", "Adipiscing elit")));
+    }
+
+    @Test
+    public void Saving_after_adding_to_file_without_final_line_break_keeps_lines_apart() throws Exception {
+        writeFile("Lorem ipsum\n\n\nDolor sit");
+
+        createTextFile();
+        this.textFile_.addLine("Amet");
+        this.textFile_.save();
+
+        assertThat(readFile(), equalTo(Arrays.asList("Lorem ipsum", "", "", "Dolor sit", "Amet")));
+    }
+
+    @Test
+    public void Saving_after_removing_a_saved_line_rewrites_file_on_disk() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.addLine("Amet");
+        this.textFile_.removeLine(0);
+        this.textFile_.save();
+
+        assertThat(readFile(), equalTo(Arrays.asList("Dolor sit", "Amet")));
+    }
+
+    @Test
+    public void Saving_after_removing_an_unsaved_line_only_appends_the_rest() throws Exception {
+        writeFile("Lorem ipsum\n");
+
+        createTextFile();
+        this.textFile_.addLine("Dolor");
+        this.textFile_.addLine("Sit");
+        this.textFile_.removeLine(1);
+        this.textFile_.save();
+
+        assertThat(readFile(), equalTo(Arrays.asList("Lorem ipsum", "Sit")));
+    }
+
+    @Test
+    public void Unsaved_modifications_are_recovered_from_journal() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.addLine("Amet");
+        this.textFile_.addLine("Consectetur");
+        this.textFile_.removeLine(0);
+        this.textFile_.sortLines();
+        this.textFile_.close();
+
+        createTextFile();
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Amet", "Consectetur", "Dolor sit")));
+
+        this.textFile_.save();
+        assertThat(Journal.fileFor(this.file_).exists(), is(false));
+        assertThat(readFile(), equalTo(Arrays.asList("Amet", "Consectetur", "Dolor sit")));
+    }
+
+    @Test
+    public void Sort_orders_are_recovered_from_journal() throws Exception {
+        writeFile("10 apples\n9 pears\n");
+
+        createTextFile();
+        this.textFile_.addLine("100 plums");
+        this.textFile_.sortLines(SortOrder.parse("-n"));
+        this.textFile_.close();
+
+        createTextFile();
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("9 pears", "10 apples", "100 plums")));
+    }
+
+    @Test
+    public void Torn_journal_records_are_ignored() throws Exception {
+        createTextFile();
+        this.textFile_.addLine("Lorem ipsum");
+        this.textFile_.close();
+
+        File journalFile = Journal.fileFor(this.file_);
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        journal.seek(journal.length());
+        journal.write(new byte[]{1, 0, 0, 0, 42, 'x'});
+        journal.close();
+
+        createTextFile();
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Lorem ipsum")));
+        this.textFile_.addLine("Dolor sit");
+        this.textFile_.close();
+
+        createTextFile();
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Lorem ipsum", "Dolor sit")));
+    }
+
+    @Test
+    public void Interrupted_append_is_rolled_back_before_replaying_journal() throws Exception {
+        writeFile("Lorem ipsum\n");
+
+        createTextFile();
+        this.textFile_.addLine("Dolor sit");
+        this.textFile_.close();
+
+        // Simulate a save that died after writing part of the new line
+        writeFile("Lorem ipsum\nDolo");
+
+        createTextFile();
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Lorem ipsum", "Dolor sit")));
+    }
+
+    @Test
+    public void Rewriting_replaces_file_without_leaving_temporary_file() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.setFsyncPolicy(FsyncPolicy.NEVER);
+        this.textFile_.sortLines();
+        this.textFile_.save();
+
+        assertThat(readFile(), equalTo(Arrays.asList("Dolor sit", "Lorem ipsum")));
+        assertThat(new File(this.filePath_ + ".saving").exists(), is(false));
+    }
+
+    @Test
+    public void Interrupted_rewrite_before_checkpoint_keeps_file_and_journal() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.sortLines();
+        this.textFile_.close();
+
+        // Simulate a save that died while writing the temporary file
+        File temporaryFile = new File(this.filePath_ + ".saving");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(temporaryFile));
+        writer.write("Dolor");
+        writer.close();
+
+        createTextFile();
+        assertThat(temporaryFile.exists(), is(false));
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Dolor sit", "Lorem ipsum")));
+    }
+
+    @Test
+    public void Interrupted_rewrite_after_checkpoint_is_moved_into_place() throws Exception {
+        writeFile("Lorem ipsum\nDolor sit\n");
+
+        createTextFile();
+        this.textFile_.sortLines();
+        this.textFile_.close();
+
+        // Simulate a save that died after checkpointing the journal, before the move
+        File temporaryFile = new File(this.filePath_ + ".saving");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(temporaryFile));
+        writer.write("Dolor sit\nLorem ipsum\n");
+        writer.close();
+        Journal journal = new Journal(Journal.fileFor(this.file_));
+        journal.recover();
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void add(String line) {
+            }
+
+            @Override
+            public void delete(int index) {
+            }
+
+            @Override
+            public void clear() {
+            }
+
+            @Override
+            public void sort(SortOrder order) {
+            }
+        });
+        journal.checkpoint();
+        assertThat(Journal.fileFor(this.file_).exists(), is(true));
+
+        createTextFile();
+        assertThat(temporaryFile.exists(), is(false));
+        assertThat(Journal.fileFor(this.file_).exists(), is(false));
+        assertThat(this.textFile_.getAllLines(), equalTo(Arrays.asList("Dolor sit", "Lorem ipsum")));
+        assertThat(readFile(), equalTo(Arrays.asList("Dolor sit", "Lorem ipsum")));
+    }
+
+    @Test
+    public void Interval_fsync_policy_only_forces_once_per_interval() {
+        FsyncPolicy policy = FsyncPolicy.parse("60000");
+        assertThat(policy.shouldForce(Long.MIN_VALUE, 1000), is(true));
+        assertThat(policy.shouldForce(1000, 2000), is(false));
+        assertThat(policy.shouldForce(1000, 61000), is(true));
+        assertThat(policy.deferredForceMillis(1000), is(61000L));
+        assertThat(FsyncPolicy.parse("never").shouldForce(Long.MIN_VALUE, 1000), is(false));
+        assertThat(FsyncPolicy.parse("never").deferredForceMillis(1000), is(-1L));
+        assertThat(FsyncPolicy.parse("save").shouldForce(1000, 1000), is(true));
+    }
+
+    @Test
+    public void Saves_within_the_fsync_interval_are_forced_once_it_runs_out() throws Exception {
+        createTextFile();
+        this.textFile_.setFsyncPolicy(FsyncPolicy.interval(200));
+        this.textFile_.addLine("Lorem ipsum");
+        this.textFile_.save();
+        assertThat(this.textFile_.isForceDeferred(), is(false));
+
+        this.textFile_.addLine("Dolor sit");
+        this.textFile_.save();
+        assertThat(this.textFile_.isForceDeferred(), is(true));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.textFile_.isForceDeferred() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(this.textFile_.isForceDeferred(), is(false));
+    }
+
     @Test
     public void Only_save_when_file_is_modified() throws Exception {
         createTextFile();
@@ -212,4 +498,33 @@ public class TextFileTest {
         assertThat(newLastModified, is(lastModified));
     }
 
+
+    @Test
+    public void Pristine_lines_are_only_available_until_the_file_is_modified() throws Exception {
+        writeFile("Lorem ipsum\ndolor\n");
+        createTextFile();
+
+        assertThat(this.textFile_.getPristineLines().size(), is(2));
+        this.textFile_.addLine("sit amet");
+        assertThat(this.textFile_.getPristineLines(), is(nullValue()));
+
+        this.textFile_.save();
+        assertThat(this.textFile_.getPristineLines().size(), is(3));
+    }
+
+    @Test
+    public void Encoding_writes_out_what_the_encoder_flushes_past_a_full_buffer() throws Exception {
+        // ISO-2022-JP only switches back to ASCII when flushed, which overflows this buffer
+        Charset charset = Charset.forName("ISO-2022-JP");
+        CharsetEncoder encoder = charset.newEncoder();
+        byte[] expected = "\u65e5\u672c".getBytes(charset);
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length - 3);
+
+        try (FileChannel channel = FileChannel.open(this.file_.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long position = TextFile.encode(encoder, "\u65e5\u672c", buffer, channel, 0);
+            buffer.flip();
+            channel.write(buffer, position);
+        }
+        assertThat(Files.readAllBytes(this.file_.toPath()), is(expected));
+    }
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2016 Mai Anh Vu
+ */
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TokenizerTest {
+
+    private static List<String> wordsOf(String text) {
+        List<String> words = new ArrayList<>();
+        Tokenizer tokenizer = new Tokenizer().reset(text);
+        while (tokenizer.next()) {
+            words.add(text.substring(tokenizer.start(), tokenizer.end()));
+        }
+        return words;
+    }
+
+    @Test
+    public void Words_are_separated_by_any_whitespace() {
+        assertThat(wordsOf("lorem ipsum\tdolor \r\n sit\u000Bamet\fconsectetur"),
+                equalTo(Arrays.asList("lorem", "ipsum", "dolor", "sit", "amet", "consectetur")));
+    }
+
+    @Test
+    public void Leading_and_trailing_whitespace_produce_no_words() {
+        assertThat(wordsOf("   lorem  ipsum   "), equalTo(Arrays.asList("lorem", "ipsum")));
+        assertThat(wordsOf("    ").isEmpty(), is(true));
+        assertThat(wordsOf("").isEmpty(), is(true));
+    }
+
+    @Test
+    public void Punctuation_stays_part_of_the_word() {
+        assertThat(wordsOf("Hello, world!"), equalTo(Arrays.asList("Hello,", "world!")));
+    }
+
+    @Test
+    public void Folding_lowers_the_case_of_every_character() {
+        assertThat(Tokenizer.fold("LoRem \u00C9COLE"), equalTo("lorem \u00E9cole"));
+    }
+
+    @Test
+    public void Index_interns_words_case_insensitively() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(0, "Lorem ipsum");
+        index.add(1, "LOREM dolor");
+
+        assertThat(index.termCount(), is(3));
+        assertThat(index.termIdOf("lOrEm"), is(index.intern("lorem")));
+        assertThat(index.get("lorem").count(), is(2));
+        assertThat(index.termIdOf("sit"), is(-1));
+    }
+
+    @Test
+    public void Index_finds_every_term_after_growing() {
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 10000; i++) {
+            index.add(i, "word" + i + " common");
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(index.termOf(index.termIdOf("WORD" + i)), equalTo("word" + i));
+        }
+        assertThat(index.get("common").count(), is(10000));
+    }
+}